@@ -0,0 +1,82 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pl.pomykalskimateusz.recruitmenttask.utils.IpAddressLiteral;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+
+// Address a request is rate limited and geolocated by. X-Forwarded-For is only believed when the request comes from a
+// trusted proxy and is read from the right: every proxy appends the address it got the request from, so the right-most
+// entry that is not a trusted proxy is the client, anything left of it was sent by the client itself.
+@Component
+class ClientIpAddress {
+  private final List<TrustedProxy> trustedProxies;
+
+  ClientIpAddress(@Value("${client-ip.trusted-proxies:}") List<String> trustedProxies) {
+    this.trustedProxies = trustedProxies.stream()
+      .map(String::trim)
+      .filter(proxy -> !proxy.isEmpty())
+      .map(TrustedProxy::parse)
+      .toList();
+  }
+
+  String of(HttpServletRequest request) {
+    var remoteAddress = request.getRemoteAddr();
+    if (!isTrustedProxy(remoteAddress)) {
+      return remoteAddress;
+    }
+    // a proxy may add its own header line instead of appending to an existing one
+    var entries = String.join(",", Collections.list(request.getHeaders("X-Forwarded-For"))).split(",");
+    var client = remoteAddress;
+    for (int i = entries.length - 1; i >= 0 && isTrustedProxy(client); i--) {
+      var entry = entries[i].trim();
+      if (!entry.isEmpty()) {
+        client = entry;
+      }
+    }
+    return client;
+  }
+
+  private boolean isTrustedProxy(String address) {
+    return IpAddressLiteral.parse(address)
+      .map(parsed -> trustedProxies.stream().anyMatch(proxy -> proxy.contains(parsed)))
+      .orElse(false);
+  }
+
+  // a single address or a CIDR range such as 10.0.0.0/8
+  private record TrustedProxy(byte[] network, int prefixLength) {
+    static TrustedProxy parse(String value) {
+      var separator = value.indexOf('/');
+      var address = IpAddressLiteral.parse(separator < 0 ? value : value.substring(0, separator))
+        .orElseThrow(() -> new IllegalArgumentException("Invalid trusted proxy: " + value));
+      var bits = address.getAddress().length * 8;
+      try {
+        var prefixLength = separator < 0 ? bits : Integer.parseInt(value.substring(separator + 1));
+        if (prefixLength < 0 || prefixLength > bits) {
+          throw new IllegalArgumentException("Invalid trusted proxy prefix length: " + value);
+        }
+        return new TrustedProxy(address.getAddress(), prefixLength);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid trusted proxy prefix length: " + value, e);
+      }
+    }
+
+    boolean contains(InetAddress address) {
+      var bytes = address.getAddress();
+      if (bytes.length != network.length) {
+        return false;
+      }
+      for (int bit = 0; bit < prefixLength; bit++) {
+        int mask = 0x80 >>> (bit % 8);
+        if ((bytes[bit / 8] & mask) != (network[bit / 8] & mask)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
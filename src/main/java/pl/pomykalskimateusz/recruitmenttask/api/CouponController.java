@@ -1,27 +1,58 @@
 package pl.pomykalskimateusz.recruitmenttask.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponBulkReport;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponBulkService;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponCodeGenerator;
 import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.coupon.GenerateCouponsBody;
 import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.idempotency.IdempotencyService;
 import pl.pomykalskimateusz.recruitmenttask.model.BasicCouponData;
 import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponPage;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponStats;
 import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
 import pl.pomykalskimateusz.recruitmenttask.model.RegisterCouponBody;
+import pl.pomykalskimateusz.recruitmenttask.ratelimit.RequestRateLimiter;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 @Controller
 @RequiredArgsConstructor
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 public class CouponController implements CouponsApi {
+  static MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+  static MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
   CouponService couponService;
+  CouponBulkService couponBulkService;
+  CouponCodeGenerator couponCodeGenerator;
+  RequestRateLimiter requestRateLimiter;
+  IdempotencyService idempotencyService;
+  ClientIpAddress clientIpAddress;
+  ObjectMapper objectMapper;
 
   @Override
   public ResponseEntity<List<CouponData>> getAllCoupons() {
@@ -29,27 +60,81 @@ public class CouponController implements CouponsApi {
   }
 
   @Override
-  public ResponseEntity<BasicCouponData> createCoupon(CreateCouponBody body) {
-    return couponService.createCoupon(body)
+  public ResponseEntity<CouponPage> getCouponsPage(String cursor, Integer limit) {
+    return ResponseEntity.ok(couponService.fetchCoupons(cursor, limit));
+  }
+
+  @Override
+  public ResponseEntity<CouponStats> getCouponStats(Integer limit) {
+    return ResponseEntity.ok(couponService.fetchCouponStats(limit));
+  }
+
+  // Not part of coupon-api.yml: the generator cannot express a streamed body, springdoc still documents this mapping
+  @GetMapping(value = "/coupons/stream", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> streamCoupons() {
+    StreamingResponseBody body = outputStream -> couponService.streamCoupons(coupon -> writeLine(outputStream, coupon));
+    return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+  }
+
+  @Override
+  public ResponseEntity<BasicCouponData> createCoupon(String idempotencyKey, CreateCouponBody body) {
+    return idempotencyService.execute("create_coupon", idempotencyKey, body, BasicCouponData.class, () -> couponService.createCoupon(body)
       .map(ResponseEntity::ok)
-      .orElseGet(() -> ResponseEntity.status(500).build());
+      .orElseGet(() -> ResponseEntity.status(500).build()));
+  }
+
+  // Not part of coupon-api.yml: the body is read as a stream (json array or csv) instead of being bound to a list
+  @PostMapping(value = "/coupons/bulk", consumes = {"application/json", "text/csv"}, produces = "application/json")
+  public ResponseEntity<CouponBulkReport> createCoupons(HttpServletRequest request) throws IOException {
+    var format = TEXT_CSV.isCompatibleWith(MediaType.parseMediaType(request.getContentType())) ? CouponBulkService.Format.CSV : CouponBulkService.Format.JSON;
+    return ResponseEntity.ok(couponBulkService.createCoupons(request.getInputStream(), format));
   }
 
+  // Not part of coupon-api.yml: the generated codes are streamed back as text, one per line
+  @PostMapping(value = "/coupons/generate", consumes = "application/json", produces = "text/plain")
+  public ResponseEntity<StreamingResponseBody> generateCoupons(@RequestBody GenerateCouponsBody body) {
+    var generated = couponCodeGenerator.generate(body);
+    StreamingResponseBody codes = outputStream -> {
+      var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+      generated.forEachCode(code -> writeLine(writer, code));
+      writer.flush();
+    };
+    return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(codes);
+  }
+
+  // RateLimitInterceptor takes an ip address token before the key is looked up, so replays count against the ip limit
+  // too. A replayed registration neither takes a token of the user's rate limit nor geolocates the client again.
   @Override
-  public ResponseEntity<Void> registerUserCoupon(String code, RegisterCouponBody body) {
-    couponService.registerCoupon(body.getUserId(), code, getClientIpAddress());
-    return ResponseEntity.ok().build();
+  public ResponseEntity<Void> registerUserCoupon(String code, String idempotencyKey, RegisterCouponBody body) {
+    return idempotencyService.execute("register_coupon", idempotencyKey, Arrays.asList(code, body), Void.class, () -> {
+      // a user hopping between addresses is limited here
+      requestRateLimiter.limitUser(body.getUserId());
+      couponService.registerCoupon(body.getUserId(), code, getClientIpAddress());
+      return ResponseEntity.ok().build();
+    });
+  }
+
+  private void writeLine(OutputStream outputStream, CouponData coupon) {
+    try {
+      outputStream.write(objectMapper.writeValueAsBytes(coupon));
+      outputStream.write('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeLine(Writer writer, String line) {
+    try {
+      writer.write(line);
+      writer.write('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   private String getClientIpAddress() {
     ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
     if (attributes == null) throw new BadRequestException("Incorrect headers, missing request attributes.");
-    HttpServletRequest request = attributes.getRequest();
-
-    String ipAddressHeader = request.getHeader("X-Forwarded-For");
-    if (ipAddressHeader != null && !ipAddressHeader.isBlank()) {
-      return ipAddressHeader.split(",")[0].trim();
-    }
-    return request.getRemoteAddr();
+    return clientIpAddress.of(attributes.getRequest());
   }
 }
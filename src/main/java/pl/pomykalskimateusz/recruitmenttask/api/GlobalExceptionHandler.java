@@ -1,11 +1,16 @@
 package pl.pomykalskimateusz.recruitmenttask.api;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.exception.ConflictException;
 import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+import pl.pomykalskimateusz.recruitmenttask.exception.TooManyRequestsException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -22,4 +27,24 @@ public class GlobalExceptionHandler {
   public ErrorResponse handleResourceNotFound(ResourceNotFoundException ex) {
     return new ErrorResponse(ex.getMessage());
   }
+
+  @ExceptionHandler(ConflictException.class)
+  @ResponseStatus(HttpStatus.CONFLICT)
+  public ErrorResponse handleConflict(ConflictException ex) {
+    return new ErrorResponse(ex.getMessage());
+  }
+
+  @ExceptionHandler(ServiceUnavailableException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public ErrorResponse handleServiceUnavailable(ServiceUnavailableException ex) {
+    return new ErrorResponse(ex.getMessage());
+  }
+
+  @ExceptionHandler(TooManyRequestsException.class)
+  public ResponseEntity<ErrorResponse> handleTooManyRequests(TooManyRequestsException ex) {
+    var retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+      .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+      .body(new ErrorResponse(ex.getMessage()));
+  }
 }
@@ -0,0 +1,25 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import pl.pomykalskimateusz.recruitmenttask.ratelimit.RequestRateLimiter;
+
+// Runs before the body is read or bound, so a throttled client costs neither a connection nor a geolocation call.
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class RateLimitInterceptor implements HandlerInterceptor {
+  RequestRateLimiter requestRateLimiter;
+  ClientIpAddress clientIpAddress;
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    requestRateLimiter.limitIpAddress(clientIpAddress.of(request));
+    return true;
+  }
+}
@@ -0,0 +1,32 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import pl.pomykalskimateusz.recruitmenttask.utils.SlowQueryLog;
+
+import java.util.List;
+
+// GET /actuator/slowqueries lists the captured statements newest first, DELETE clears them.
+// Plans show the literal values of the explained select, so the endpoint must stay on the admin network.
+@Component
+@Endpoint(id = "slowqueries")
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class SlowQueryEndpoint {
+  SlowQueryLog slowQueryLog;
+
+  @ReadOperation
+  public List<SlowQueryLog.SlowQuery> slowQueries() {
+    return slowQueryLog.snapshot();
+  }
+
+  @DeleteOperation
+  public void clear() {
+    slowQueryLog.clear();
+  }
+}
@@ -0,0 +1,74 @@
+package pl.pomykalskimateusz.recruitmenttask.conf;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import pl.pomykalskimateusz.recruitmenttask.utils.ReplicaDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// With replicas enabled the application DataSource hands out connections lazily: read-only transactions
+// (@Transactional(readOnly = true)) get a replica connection, everything else including connections taken
+// outside of a transaction gets one of the primary pool configured in spring.datasource.hikari.
+@Configuration
+@ConditionalOnProperty(name = "database.replica.enabled", havingValue = "true")
+public class DataSourceConf {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaDataSource replicaDataSource(
+        HikariDataSource primaryDataSource,
+        MeterRegistry meterRegistry,
+        @Value("${database.replica.urls}") String urls,
+        @Value("${database.replica.username}") String username,
+        @Value("${database.replica.password}") String password,
+        @Value("${database.replica.maximum-pool-size:20}") int maximumPoolSize,
+        @Value("${database.replica.minimum-idle:5}") int minimumIdle,
+        @Value("${database.replica.connection-timeout:2s}") Duration connectionTimeout,
+        @Value("${database.replica.max-lag:2s}") Duration maxLag,
+        @Value("${database.replica.check-interval:500ms}") Duration checkInterval
+    ) {
+        var replicas = new ArrayList<HikariDataSource>();
+        var jdbcUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        for (int i = 0; i < jdbcUrls.size(); i++) {
+            var replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setJdbcUrl(jdbcUrls.get(i));
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setMinimumIdle(minimumIdle);
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            // a replica that is down at startup must not keep the application from starting, reads use the primary
+            replica.setInitializationFailTimeout(-1);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(replica);
+        }
+        return new ReplicaDataSource(primaryDataSource, replicas, maxLag, checkInterval, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        var dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
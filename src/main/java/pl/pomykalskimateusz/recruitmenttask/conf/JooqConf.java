@@ -1,9 +1,13 @@
 package pl.pomykalskimateusz.recruitmenttask.conf;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.jooq.conf.RenderNameCase;
+import org.jooq.impl.DefaultExecuteListenerProvider;
 import org.springframework.boot.autoconfigure.jooq.DefaultConfigurationCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import pl.pomykalskimateusz.recruitmenttask.utils.QueryMetricsListener;
+import pl.pomykalskimateusz.recruitmenttask.utils.SlowQueryListener;
 
 @Configuration
 public class JooqConf {
@@ -11,4 +15,14 @@ public class JooqConf {
     public DefaultConfigurationCustomizer configurationCustomizerTest() {
         return configuration -> configuration.settings().withRenderNameCase(RenderNameCase.LOWER);
     }
+
+    @Bean
+    public DefaultExecuteListenerProvider queryMetricsListenerProvider(MeterRegistry meterRegistry) {
+        return new DefaultExecuteListenerProvider(new QueryMetricsListener(meterRegistry));
+    }
+
+    @Bean
+    public DefaultExecuteListenerProvider slowQueryListenerProvider(SlowQueryListener slowQueryListener) {
+        return new DefaultExecuteListenerProvider(slowQueryListener);
+    }
 }
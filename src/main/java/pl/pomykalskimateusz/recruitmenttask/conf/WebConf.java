@@ -0,0 +1,18 @@
+package pl.pomykalskimateusz.recruitmenttask.conf;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import pl.pomykalskimateusz.recruitmenttask.api.RateLimitInterceptor;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConf implements WebMvcConfigurer {
+    private final RateLimitInterceptor rateLimitInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/coupons", "/coupons/**");
+    }
+}
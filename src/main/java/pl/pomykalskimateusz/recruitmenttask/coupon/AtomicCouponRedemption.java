@@ -0,0 +1,33 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.util.UUID;
+
+// One round trip and no advisory lock: concurrent redemptions of the same code only serialize on the coupon row
+// for the duration of a single statement. Any result other than REGISTERED is thrown inside the transaction,
+// which rolls back a counter increment whose usage insert hit unique_coupon_usage.
+@Service
+@ConditionalOnProperty(name = "coupon.registration.mode", havingValue = "atomic")
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class AtomicCouponRedemption implements CouponRedemption {
+  CouponWriteRepository couponWriteRepository;
+  CouponValidateService couponValidateService;
+  TransactionTemplate transactionTemplate;
+  DatabaseBulkhead databaseBulkhead;
+
+  @Override
+  public void redeem(UUID userId, String code, String countryCode) {
+    databaseBulkhead.run(() -> transactionTemplate.executeWithoutResult(status -> {
+      var result = couponWriteRepository.redeemCouponUsage(userId, code, countryCode);
+      couponValidateService.validateRedemptionResult(result, code, countryCode);
+    }));
+  }
+}
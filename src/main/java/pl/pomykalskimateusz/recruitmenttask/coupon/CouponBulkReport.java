@@ -0,0 +1,8 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import java.util.List;
+
+// rows are numbered from 1 in the order they appear in the request, created rows are only counted
+public record CouponBulkReport(int total, int created, List<RejectedRow> rejected) {
+  public record RejectedRow(int row, String code, String message) {}
+}
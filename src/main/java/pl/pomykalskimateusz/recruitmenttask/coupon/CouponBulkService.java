@@ -0,0 +1,139 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.StreamSupport;
+
+// Creates coupons in bulk without per-code locks: rows are validated while the request body is read, streamed
+// into a staging table with COPY and merged in one statement, duplicates are left to unique_coupon_code.
+@Service
+public class CouponBulkService {
+  public enum Format { JSON, CSV }
+
+  private final CouponWriteRepository couponWriteRepository;
+  private final CouponValidateService couponValidateService;
+  private final TransactionTemplate transactionTemplate;
+  private final DatabaseBulkhead databaseBulkhead;
+  private final ObjectMapper objectMapper;
+  private final int maxRows;
+
+  public CouponBulkService(
+    CouponWriteRepository couponWriteRepository,
+    CouponValidateService couponValidateService,
+    TransactionTemplate transactionTemplate,
+    DatabaseBulkhead databaseBulkhead,
+    ObjectMapper objectMapper,
+    @Value("${coupon.bulk.max-rows:1000000}") int maxRows
+  ) {
+    this.couponWriteRepository = couponWriteRepository;
+    this.couponValidateService = couponValidateService;
+    this.transactionTemplate = transactionTemplate;
+    this.databaseBulkhead = databaseBulkhead;
+    this.objectMapper = objectMapper;
+    this.maxRows = maxRows;
+  }
+
+  public CouponBulkReport createCoupons(InputStream input, Format format) {
+    return databaseBulkhead.execute(() -> transactionTemplate.execute(status -> {
+      var rejected = new ArrayList<CouponBulkReport.RejectedRow>();
+      int total = 0;
+      try (var staging = couponWriteRepository.openCouponStaging()) {
+        var rows = format == Format.CSV ? readCsv(input) : readJson(input);
+        while (rows.hasNext()) {
+          if (++total > maxRows) {
+            throw new BadRequestException(String.format("Too many coupons, at most %s can be created at once", maxRows));
+          }
+          var row = rows.next();
+          try {
+            couponValidateService.validateCreateCoupon(row);
+            staging.write(total, row);
+          } catch (BadRequestException e) {
+            rejected.add(new CouponBulkReport.RejectedRow(total, row.getCode(), e.getMessage()));
+          }
+        }
+      }
+
+      for (var duplicate : couponWriteRepository.mergeCouponStaging()) {
+        rejected.add(new CouponBulkReport.RejectedRow(duplicate.rowNumber(), duplicate.code(), String.format("Duplicated coupon code found: %s", duplicate.code())));
+      }
+      rejected.sort((first, second) -> Integer.compare(first.row(), second.row()));
+      return new CouponBulkReport(total, total - rejected.size(), rejected);
+    }));
+  }
+
+  private Iterator<CreateCouponBody> readJson(InputStream input) {
+    try {
+      var rows = objectMapper.readerFor(CreateCouponBody.class).<CreateCouponBody>readValues(input);
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          try {
+            return rows.hasNextValue();
+          } catch (IOException e) {
+            throw malformedBody(e);
+          }
+        }
+
+        @Override
+        public CreateCouponBody next() {
+          try {
+            return rows.nextValue();
+          } catch (IOException e) {
+            throw malformedBody(e);
+          }
+        }
+      };
+    } catch (IOException e) {
+      throw malformedBody(e);
+    }
+  }
+
+  // "code,countryCode,usageLimit" records (RFC 4180) with an optional header, rows with a wrong number of columns end up
+  // as rejected rows, malformed quoting rejects the whole body
+  private Iterator<CreateCouponBody> readCsv(InputStream input) {
+    var records = new CsvRecordReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    var header = new AtomicBoolean(true);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED), false)
+      .filter(columns -> !(columns.size() == 1 && columns.getFirst().isBlank()))
+      .filter(columns -> !(header.getAndSet(false) && columns.getFirst().trim().equalsIgnoreCase("code")))
+      .map(CouponBulkService::parseCsvRecord)
+      .iterator();
+  }
+
+  private static CreateCouponBody parseCsvRecord(List<String> columns) {
+    var body = new CreateCouponBody().code(columns.getFirst().trim());
+    if (columns.size() == 3) {
+      body.countryCode(columns.get(1).trim());
+      try {
+        body.usageLimit(Integer.valueOf(columns.get(2).trim()));
+      } catch (NumberFormatException e) {
+        // left empty, rejected by the usage limit validation
+      }
+    }
+    return body;
+  }
+
+  private static RuntimeException malformedBody(IOException e) {
+    return e instanceof JsonProcessingException jsonException
+      ? new BadRequestException(String.format("Malformed request body: %s", jsonException.getOriginalMessage()))
+      : new UncheckedIOException(e);
+  }
+}
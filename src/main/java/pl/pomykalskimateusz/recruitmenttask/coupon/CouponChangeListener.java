@@ -0,0 +1,106 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Keeps one connection listening on the coupon_changed channel (see triggers.sql), invalidates CouponMetadataCache,
+// adds codes created on other nodes to CouponCodeFilter and reschedules their expiry. Notifications sent while the
+// connection is down are lost, so the whole cache is dropped, the filter rebuilt and expiries reloaded on every (re)connect.
+@Slf4j
+@Component
+public class CouponChangeListener {
+  static String CHANNEL = "coupon_changed";
+  static String ALL_COUPONS = "*";
+  static int POLL_TIMEOUT_MILLIS = 500;
+  static long RECONNECT_DELAY_MILLIS = 1000;
+
+  private final DataSource dataSource;
+  private final CouponMetadataCache couponMetadataCache;
+  private final CouponCodeFilter couponCodeFilter;
+  private final CouponExpiryScheduler couponExpiryScheduler;
+  private final Thread listener;
+  private volatile boolean running = true;
+
+  public CouponChangeListener(DataSource dataSource, CouponMetadataCache couponMetadataCache, CouponCodeFilter couponCodeFilter, CouponExpiryScheduler couponExpiryScheduler) {
+    this.dataSource = dataSource;
+    this.couponMetadataCache = couponMetadataCache;
+    this.couponCodeFilter = couponCodeFilter;
+    this.couponExpiryScheduler = couponExpiryScheduler;
+    this.listener = Thread.ofPlatform().name("coupon-change-listener").daemon().start(this::run);
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    listener.join(POLL_TIMEOUT_MILLIS * 4L);
+  }
+
+  private void run() {
+    while (running) {
+      try (var connection = dataSource.getConnection()) {
+        try {
+          listen(connection);
+        } finally {
+          unlisten(connection);
+        }
+      } catch (SQLException | RuntimeException e) {
+        // a failing handler ends up here too, the reconnect drops whatever state it left behind
+        if (running) {
+          log.warn("Lost coupon change notifications, reconnecting", e);
+          couponMetadataCache.invalidateAll();
+          sleep(RECONNECT_DELAY_MILLIS);
+        }
+      }
+    }
+  }
+
+  private void listen(Connection connection) throws SQLException {
+    try (var statement = connection.createStatement()) {
+      statement.execute("LISTEN " + CHANNEL);
+    }
+    invalidateAll();
+    var pgConnection = connection.unwrap(PGConnection.class);
+    while (running) {
+      for (var notification : pgConnection.getNotifications(POLL_TIMEOUT_MILLIS)) {
+        if (ALL_COUPONS.equals(notification.getParameter())) {
+          invalidateAll();
+        } else {
+          couponMetadataCache.invalidate(notification.getParameter());
+          // updates and deletes notify too, an extra code in the filter only costs a false positive
+          couponCodeFilter.put(notification.getParameter());
+          couponExpiryScheduler.reload(notification.getParameter());
+        }
+      }
+    }
+  }
+
+  // the connection goes back to the pool, the next borrower must not keep receiving notifications
+  private static void unlisten(Connection connection) {
+    try (var statement = connection.createStatement()) {
+      statement.execute("UNLISTEN *");
+    } catch (SQLException e) {
+      // a broken connection is evicted by the pool, its registrations are gone with it
+      log.debug("Could not unlisten before returning connection", e);
+    }
+  }
+
+  private void invalidateAll() {
+    couponMetadataCache.invalidateAll();
+    couponCodeFilter.rebuild();
+    couponExpiryScheduler.reloadAll();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
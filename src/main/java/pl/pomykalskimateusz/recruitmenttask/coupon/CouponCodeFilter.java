@@ -0,0 +1,121 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.utils.BloomFilter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Per-node Bloom filter over every code_normalized, so registrations of codes that definitely do not exist are
+// rejected without any database or geolocation work. It may only ever answer "absent" wrongly never: codes are
+// added before their insert commits (CouponWriteRepository) and again on the coupon_changed notification, and
+// until the first scan finishes every code is let through.
+@Slf4j
+@Service
+public class CouponCodeFilter {
+  private final CouponReadRepository couponReadRepository;
+  private final boolean enabled;
+  private final long expectedInsertions;
+  private final double falsePositiveRate;
+  private final Counter rejections;
+  private final ExecutorService rebuilder;
+  private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+  private volatile BloomFilter filter;
+  // filled by the running rebuild, puts go to both so codes committed after its scan started are not lost
+  private volatile BloomFilter building;
+
+  public CouponCodeFilter(
+    CouponReadRepository couponReadRepository,
+    MeterRegistry meterRegistry,
+    @Value("${coupon.code-filter.enabled:true}") boolean enabled,
+    @Value("${coupon.code-filter.expected-insertions:1000000}") long expectedInsertions,
+    @Value("${coupon.code-filter.false-positive-rate:0.01}") double falsePositiveRate
+  ) {
+    this.couponReadRepository = couponReadRepository;
+    this.enabled = enabled;
+    this.expectedInsertions = expectedInsertions;
+    this.falsePositiveRate = falsePositiveRate;
+    this.rejections = Counter.builder("coupon.code.filter.rejections")
+      .description("Registrations rejected because the code is definitely unknown")
+      .register(meterRegistry);
+    Gauge.builder("coupon.code.filter.false.positive.rate", () -> falsePositiveRate)
+      .tag("type", "configured")
+      .register(meterRegistry);
+    Gauge.builder("coupon.code.filter.false.positive.rate", this, CouponCodeFilter::expectedFalsePositiveRate)
+      .tag("type", "expected")
+      .description("False positive rate estimated from the codes added so far")
+      .register(meterRegistry);
+    this.rebuilder = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("coupon-code-filter-rebuilder").daemon().factory());
+  }
+
+  public boolean mightContain(String code) {
+    var current = filter;
+    if (current == null || current.mightContain(code.toUpperCase())) {
+      return true;
+    }
+    rejections.increment();
+    return false;
+  }
+
+  public void put(String code) {
+    var codeNormalized = code.toUpperCase();
+    // building is read first: when it is already cleared the swapped filter is the one read below
+    var next = building;
+    if (next != null) {
+      next.put(codeNormalized);
+    }
+    var current = filter;
+    if (current != null) {
+      current.put(codeNormalized);
+    }
+  }
+
+  // Codes are never removed from a Bloom filter, a rebuild drops deleted ones and resizes it for the current
+  // table. Requests arriving while one is queued are coalesced into it.
+  public void rebuild() {
+    if (enabled && rebuildQueued.compareAndSet(false, true)) {
+      rebuilder.execute(this::rebuildNow);
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void buildOnStartup() {
+    rebuild();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    rebuilder.shutdownNow();
+  }
+
+  double expectedFalsePositiveRate() {
+    var current = filter;
+    return current == null ? 1 : current.expectedFalsePositiveRate();
+  }
+
+  void rebuildNow() {
+    rebuildQueued.set(false);
+    try {
+      var start = System.nanoTime();
+      var count = couponReadRepository.countCoupons();
+      var next = BloomFilter.create(Math.max(expectedInsertions, 2 * count), falsePositiveRate);
+      building = next;
+      couponReadRepository.streamCodes(next::put);
+      filter = next;
+      log.info("Built coupon code filter over {} codes ({} bits) in {} ms", count, next.bitCount(), (System.nanoTime() - start) / 1_000_000);
+    } catch (Exception e) {
+      log.warn("Could not build coupon code filter, keeping the previous one", e);
+    } finally {
+      building = null;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+import pl.pomykalskimateusz.recruitmenttask.utils.FeistelPermutation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+// Mints codes as prefix + the keyed permutation of a per-generator sequence value written in the alphabet. The
+// permutation is a bijection, so codes of one generator never repeat and are not guessable from each other without
+// the secret. Only codes created some other way can collide, unique_coupon_code skips them and the batch is topped up.
+@Service
+public class CouponCodeGenerator {
+  static String DEFAULT_ALPHABET = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789";
+  static int DEFAULT_LENGTH = 10;
+
+  private final CouponWriteRepository couponWriteRepository;
+  private final CouponValidateService couponValidateService;
+  private final TransactionTemplate transactionTemplate;
+  private final DatabaseBulkhead databaseBulkhead;
+  private final String secret;
+
+  public CouponCodeGenerator(
+    CouponWriteRepository couponWriteRepository,
+    CouponValidateService couponValidateService,
+    TransactionTemplate transactionTemplate,
+    DatabaseBulkhead databaseBulkhead,
+    @Value("${coupon.generator.secret}") String secret
+  ) {
+    this.couponWriteRepository = couponWriteRepository;
+    this.couponValidateService = couponValidateService;
+    this.transactionTemplate = transactionTemplate;
+    this.databaseBulkhead = databaseBulkhead;
+    this.secret = secret;
+  }
+
+  public GeneratedCoupons generate(GenerateCouponsBody body) {
+    couponValidateService.validateGenerateCoupons(body);
+    var prefix = body.prefixOrEmpty();
+    var alphabet = body.alphabetOrDefault();
+    var length = body.lengthOrDefault();
+    var size = domainSize(alphabet.length(), length);
+    var generatorKey = String.join("|", prefix.toUpperCase(), alphabet.toUpperCase(), String.valueOf(length));
+    var permutation = new FeistelPermutation(size, permutationKey(generatorKey));
+    var template = new CreateCouponBody().countryCode(body.countryCode()).usageLimit(body.usageLimit());
+
+    // one transaction for every batch, a top-up running out of codes must not leave the earlier batches committed
+    return databaseBulkhead.execute(() -> transactionTemplate.execute(status -> {
+      var batches = new ArrayList<GeneratedCoupons.Batch>();
+      int created = 0;
+      int missing = body.count();
+      while (missing > 0) {
+        int count = missing;
+        var start = couponWriteRepository.reserveCodeSequence(generatorKey, count, size)
+          .orElseThrow(() -> new BadRequestException(String.format("Not enough unused codes left for prefix: %s, alphabet: %s and length: %s", prefix, alphabet, length)));
+
+        try (var staging = couponWriteRepository.openCouponStaging()) {
+          for (int row = 1; row <= count; row++) {
+            staging.write(row, template.code(code(prefix, alphabet, length, permutation.apply(start + row - 1))));
+          }
+        }
+        var skippedRows = couponWriteRepository.mergeCouponStaging().stream()
+          .map(CouponWriteRepository.StagedCoupon::rowNumber)
+          .collect(Collectors.toCollection(HashSet::new));
+
+        batches.add(new GeneratedCoupons.Batch(start, count, skippedRows));
+        created += count - skippedRows.size();
+        missing = skippedRows.size();
+      }
+      return new GeneratedCoupons(created, batches, value -> code(prefix, alphabet, length, permutation.apply(value)));
+    }));
+  }
+
+  static long domainSize(int alphabetSize, int length) {
+    long size = 1;
+    for (int i = 0; i < length; i++) {
+      if (size > (1L << 62) / alphabetSize) {
+        return 1L << 62;
+      }
+      size *= alphabetSize;
+    }
+    return size;
+  }
+
+  static String code(String prefix, String alphabet, int length, long value) {
+    var code = new char[length];
+    for (int position = length - 1; position >= 0; position--) {
+      code[position] = alphabet.charAt((int) (value % alphabet.length()));
+      value /= alphabet.length();
+    }
+    return prefix + new String(code);
+  }
+
+  private byte[] permutationKey(String generatorKey) {
+    try {
+      return MessageDigest.getInstance("SHA-512").digest((secret + ":" + generatorKey).getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-512 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+public record CouponCursor(LocalDateTime createDate, UUID id) {
+  private static final String SEPARATOR = "|";
+
+  public String encode() {
+    var value = createDate + SEPARATOR + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static CouponCursor decode(String cursor) {
+    try {
+      var value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      var separatorIndex = value.indexOf(SEPARATOR);
+      return new CouponCursor(LocalDateTime.parse(value.substring(0, separatorIndex)), UUID.fromString(value.substring(separatorIndex + 1)));
+    } catch (RuntimeException e) {
+      throw new BadRequestException(String.format("Invalid cursor: %s", cursor));
+    }
+  }
+}
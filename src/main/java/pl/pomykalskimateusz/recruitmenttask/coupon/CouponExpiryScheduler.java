@@ -0,0 +1,140 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.utils.TimingWheel;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Evicts coupons from CouponMetadataCache and from the registration mode's leases when their valid_until is reached.
+// Pending expiries live in a timing wheel: they are read once from the coupon_valid_until index (future expiries only),
+// coupons created or changed later are rescheduled one by one from the coupon_changed notifications, and the whole set
+// is reloaded only when notifications may have been lost. Registrations check the validity window against the current
+// time on their own, the wheel only makes sure no node keeps serving an expired coupon from memory.
+@Slf4j
+@Service
+public class CouponExpiryScheduler {
+  private final CouponReadRepository couponReadRepository;
+  private final CouponMetadataCache couponMetadataCache;
+  private final CouponRedemption couponRedemption;
+  private final MeterRegistry meterRegistry;
+  private final ExecutorService worker;
+  private final TimingWheel timingWheel;
+  private final ConcurrentHashMap<String, ScheduledExpiry> expiries = new ConcurrentHashMap<>();
+  private final AtomicBoolean reloadQueued = new AtomicBoolean();
+
+  private record ScheduledExpiry(LocalDateTime validUntil, TimingWheel.Timeout timeout) {}
+
+  public CouponExpiryScheduler(
+    CouponReadRepository couponReadRepository,
+    CouponMetadataCache couponMetadataCache,
+    CouponRedemption couponRedemption,
+    MeterRegistry meterRegistry,
+    @Value("${coupon.expiry.tick:100ms}") Duration tick,
+    @Value("${coupon.expiry.wheel-size:64}") int wheelSize
+  ) {
+    this.couponReadRepository = couponReadRepository;
+    this.couponMetadataCache = couponMetadataCache;
+    this.couponRedemption = couponRedemption;
+    this.meterRegistry = meterRegistry;
+    // reloads and expirations share one thread, so an expiration never races a reload of the same code
+    this.worker = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("coupon-expiry").daemon().factory());
+    this.timingWheel = new TimingWheel("coupon-expiry-wheel", tick, wheelSize, worker);
+    meterRegistry.gaugeMapSize("coupon.expiry.scheduled", Tags.empty(), expiries);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadOnStartup() {
+    reloadAll();
+  }
+
+  // requests arriving while a reload is queued are coalesced into it
+  public void reloadAll() {
+    if (reloadQueued.compareAndSet(false, true)) {
+      worker.execute(this::reloadAllNow);
+    }
+  }
+
+  public void reload(String codeNormalized) {
+    worker.execute(() -> reloadNow(codeNormalized));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    timingWheel.close();
+    worker.shutdownNow();
+  }
+
+  void reloadAllNow() {
+    reloadQueued.set(false);
+    try {
+      var now = LocalDateTime.now();
+      var loaded = new HashSet<String>();
+      couponReadRepository.streamExpiries(now, (code, validUntil) -> {
+        loaded.add(code);
+        schedule(code, validUntil);
+      });
+      // deleted coupons and coupons whose expiry was removed, already due ones are left to their timeout
+      expiries.forEach((code, expiry) -> {
+        if (!loaded.contains(code) && expiry.validUntil().isAfter(now)) {
+          schedule(code, null);
+        }
+      });
+      log.debug("Scheduled expiry of {} coupons", loaded.size());
+    } catch (Exception e) {
+      log.warn("Could not load coupon expiries, keeping the scheduled ones", e);
+    }
+  }
+
+  void reloadNow(String codeNormalized) {
+    try {
+      var validUntil = couponReadRepository.findCouponMetadata(codeNormalized)
+        .map(CouponReadRepository.CouponMetadata::validUntil)
+        .orElse(null);
+      schedule(codeNormalized, validUntil);
+    } catch (Exception e) {
+      log.warn("Could not load expiry of coupon {}", codeNormalized, e);
+    }
+  }
+
+  // a valid_until already reached expires the coupon right away
+  private void schedule(String codeNormalized, LocalDateTime validUntil) {
+    expiries.compute(codeNormalized, (code, current) -> {
+      if (current != null && current.validUntil().equals(validUntil)) {
+        return current;
+      }
+      if (current != null) {
+        current.timeout().cancel();
+      }
+      if (validUntil == null) {
+        return null;
+      }
+      var delay = Duration.between(LocalDateTime.now(), validUntil);
+      return new ScheduledExpiry(validUntil, timingWheel.schedule(delay, () -> expire(code, validUntil)));
+    });
+  }
+
+  private void expire(String codeNormalized, LocalDateTime validUntil) {
+    expiries.computeIfPresent(codeNormalized, (code, current) -> current.validUntil().equals(validUntil) ? null : current);
+    try {
+      couponMetadataCache.invalidate(codeNormalized);
+      couponRedemption.onCouponExpired(codeNormalized);
+      meterRegistry.counter("coupon.expired").increment();
+      log.debug("Coupon {} expired at {}", codeNormalized, validUntil);
+    } catch (Exception e) {
+      log.warn("Could not expire coupon {}", codeNormalized, e);
+    }
+  }
+}
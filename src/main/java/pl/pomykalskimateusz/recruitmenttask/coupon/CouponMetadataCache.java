@@ -0,0 +1,76 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.utils.AsyncCacheLoader;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Per-node cache of coupon definitions keyed by normalized code, unknown codes are cached as empty entries.
+// CouponChangeListener invalidates entries when the coupon_changed notification arrives, the ttls only bound
+// how long an entry can survive a notification lost while the listener was reconnecting.
+@Service
+public class CouponMetadataCache {
+  private final CouponReadRepository couponReadRepository;
+  private final DatabaseBulkhead databaseBulkhead;
+  private final AsyncCache<String, Optional<CouponReadRepository.CouponMetadata>> cache;
+
+  public CouponMetadataCache(
+    CouponReadRepository couponReadRepository,
+    DatabaseBulkhead databaseBulkhead,
+    MeterRegistry meterRegistry,
+    @Value("${coupon.metadata-cache.maximum-size:100000}") long maximumSize,
+    @Value("${coupon.metadata-cache.ttl:10m}") Duration ttl,
+    @Value("${coupon.metadata-cache.negative-ttl:1m}") Duration negativeTtl
+  ) {
+    this.couponReadRepository = couponReadRepository;
+    this.databaseBulkhead = databaseBulkhead;
+    this.cache = Caffeine.newBuilder()
+      .maximumSize(maximumSize)
+      .expireAfter(new MetadataExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+      .recordStats()
+      .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "coupon_metadata");
+  }
+
+  public Optional<CouponReadRepository.CouponMetadata> find(String code) {
+    return AsyncCacheLoader.get(cache, code.toUpperCase(), it -> databaseBulkhead.execute(() -> couponReadRepository.findCouponMetadata(it)));
+  }
+
+  public void invalidate(String codeNormalized) {
+    cache.synchronous().invalidate(codeNormalized);
+  }
+
+  public void invalidateAll() {
+    cache.synchronous().invalidateAll();
+  }
+
+  public CacheStats getCacheStats() {
+    return cache.synchronous().stats();
+  }
+
+  private record MetadataExpiry(long ttlNanos, long negativeTtlNanos) implements Expiry<String, Optional<CouponReadRepository.CouponMetadata>> {
+    @Override
+    public long expireAfterCreate(String code, Optional<CouponReadRepository.CouponMetadata> metadata, long currentTime) {
+      return metadata.isPresent() ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(String code, Optional<CouponReadRepository.CouponMetadata> metadata, long currentTime, long currentDuration) {
+      return expireAfterCreate(code, metadata, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String code, Optional<CouponReadRepository.CouponMetadata> metadata, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Redemption quota leased by this node. Remaining units are split over stripes padded to separate cache lines,
+// so concurrent redemptions of a hot coupon mostly CAS different counters.
+final class CouponQuotaLease {
+  private static final int PADDING = 16;
+
+  private final UUID leaseId;
+  private final UUID couponId;
+  private final String country;
+  private final long expiresAtNanos;
+  private final int stripes;
+  private final AtomicIntegerArray remaining;
+  private volatile boolean closed;
+
+  CouponQuotaLease(UUID leaseId, UUID couponId, String country, int granted, int stripes, long expiresAtNanos) {
+    this.leaseId = leaseId;
+    this.couponId = couponId;
+    this.country = country;
+    this.expiresAtNanos = expiresAtNanos;
+    this.stripes = Math.max(1, Math.min(stripes, granted));
+    this.remaining = new AtomicIntegerArray(this.stripes * PADDING);
+    for (int stripe = 0; stripe < this.stripes; stripe++) {
+      remaining.set(stripe * PADDING, granted / this.stripes + (stripe < granted % this.stripes ? 1 : 0));
+    }
+  }
+
+  UUID leaseId() {
+    return leaseId;
+  }
+
+  UUID couponId() {
+    return couponId;
+  }
+
+  String country() {
+    return country;
+  }
+
+  boolean isExpired(long nowNanos) {
+    return nowNanos - expiresAtNanos >= 0;
+  }
+
+  boolean tryAcquire() {
+    int start = ThreadLocalRandom.current().nextInt(stripes);
+    for (int offset = 0; offset < stripes; offset++) {
+      int index = ((start + offset) % stripes) * PADDING;
+      int value;
+      while ((value = remaining.get(index)) > 0) {
+        if (remaining.compareAndSet(index, value, value - 1)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // Returns false when the lease was already drained and the unit has to be released in the database by the caller.
+  boolean giveBack() {
+    int index = ThreadLocalRandom.current().nextInt(stripes) * PADDING;
+    remaining.incrementAndGet(index);
+    if (!closed) {
+      // drain() sets closed before reading the stripes, so it is guaranteed to see this unit
+      return true;
+    }
+    int value;
+    while ((value = remaining.get(index)) > 0) {
+      if (remaining.compareAndSet(index, value, value - 1)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Takes every unit that was not redeemed, later give backs go straight to the database.
+  int drain() {
+    closed = true;
+    int drained = 0;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      drained += remaining.getAndSet(stripe * PADDING, 0);
+    }
+    return drained;
+  }
+}
@@ -1,8 +1,10 @@
 package pl.pomykalskimateusz.recruitmenttask.coupon;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record;
@@ -13,84 +15,196 @@ import pl.pomykalskimateusz.recruitmenttask.jooq.entity.tables.Coupon;
 import pl.pomykalskimateusz.recruitmenttask.jooq.entity.tables.CouponUsage;
 import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
 import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.tables.CouponUsage.COUPON_USAGE;
 
 @Service
+@Timed("coupon.repository")
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 @RequiredArgsConstructor
 public class CouponReadRepository {
-  static Field<Integer> CURRENT_USAGE_FIELD = DSL.field("current_usage", Integer.class);
   static Field<Boolean> COUPON_EXISTS_FIELD = DSL.field("exists", Boolean.class);
   static Field<Integer> COUPON_TOTAL_USAGE_FIELD = DSL.field("total_usage", Integer.class);
   static Field<Integer> COUPON_USER_USAGE_FIELD = DSL.field("user_usage", Integer.class);
 
   static Coupon COUPON_ALIAS = COUPON.as("coupon_alias");
-  static CouponUsage COUPON_USAGE_ALIAS = COUPON_USAGE.as("coupon_usage_alias");
   static CouponUsage USER_COUPON_USAGE_ALIAS = COUPON_USAGE.as("user_coupon_usage_alias");
 
-  static List<Field<?>> COUPON_USAGE_SELECT_FIELDS = List.of(
-    COUPON_ALIAS.ID, COUPON_ALIAS.COUNTRY, COUPON_ALIAS.USAGE_LIMIT, COUPON_ALIAS.ID.isNotNull().as(COUPON_EXISTS_FIELD), DSL.count(COUPON_USAGE_ALIAS.ID).as(COUPON_TOTAL_USAGE_FIELD), DSL.count(USER_COUPON_USAGE_ALIAS.ID).as(COUPON_USER_USAGE_FIELD)
-  );
   static List<Field<?>> COUPON_DATA_SELECT_FIELDS = List.of(
-    COUPON.ID, COUPON.CODE, COUPON.USAGE_LIMIT, COUPON.COUNTRY, COUPON.CREATED_DATE_TIMESTAMP, DSL.count(COUPON_USAGE.ID).as(CURRENT_USAGE_FIELD)
+    COUPON.ID, COUPON.CODE, COUPON.USAGE_LIMIT, COUPON.COUNTRY, COUPON.CREATED_DATE_TIMESTAMP, COUPON.CURRENT_USAGE,
+    COUPON.VALID_FROM, COUPON.VALID_UNTIL
   );
 
+  static int STREAM_FETCH_SIZE = 500;
+  static int CODE_STREAM_FETCH_SIZE = 10_000;
+
   DSLContext dslContext;
 
-  @Transactional
+  @Transactional(readOnly = true)
   public List<CouponData> findAll() {
     return dslContext.select(COUPON_DATA_SELECT_FIELDS)
       .from(COUPON)
-      .leftJoin(COUPON_USAGE).on(COUPON.ID.eq(COUPON_USAGE.COUPON_ID))
-      .groupBy(COUPON.ID)
+      .where(notExpired())
+      .fetch()
+      .map(this::buildCouponData);
+  }
+
+  @Transactional(readOnly = true)
+  public List<CouponData> findPage(CouponCursor after, int limit) {
+    var seekCondition = after == null
+      ? DSL.noCondition()
+      : DSL.row(COUPON.CREATED_DATE_TIMESTAMP, COUPON.ID).gt(after.createDate(), after.id());
+
+    return dslContext.select(COUPON_DATA_SELECT_FIELDS)
+      .from(COUPON)
+      .where(seekCondition)
+      .and(notExpired())
+      .orderBy(COUPON.CREATED_DATE_TIMESTAMP, COUPON.ID)
+      .limit(limit)
       .fetch()
       .map(this::buildCouponData);
   }
 
+  // pgjdbc only honours the fetch size inside a transaction, otherwise the whole result set is buffered in memory
+  @Transactional(readOnly = true)
+  public void streamAll(Consumer<CouponData> consumer) {
+    try (var cursor = dslContext.select(COUPON_DATA_SELECT_FIELDS)
+      .from(COUPON)
+      .orderBy(COUPON.CREATED_DATE_TIMESTAMP, COUPON.ID)
+      .fetchSize(STREAM_FETCH_SIZE)
+      .fetchLazy()) {
+      cursor.forEach(dbRecord -> consumer.accept(buildCouponData(dbRecord)));
+    }
+  }
+
+  // range scan over coupon_valid_until, coupons without an expiry are never read. Kept on the primary: an expiry
+  // missing from a lagging replica would be dropped from the wheel until the next reload.
+  @Transactional
+  public void streamExpiries(LocalDateTime after, BiConsumer<String, LocalDateTime> consumer) {
+    try (var cursor = dslContext.select(COUPON.CODE_NORMALIZED, COUPON.VALID_UNTIL)
+      .from(COUPON)
+      .where(COUPON.VALID_UNTIL.gt(after))
+      .fetchSize(CODE_STREAM_FETCH_SIZE)
+      .fetchLazy()) {
+      cursor.forEach(dbRecord -> consumer.accept(dbRecord.value1(), dbRecord.value2()));
+    }
+  }
+
+  // codes of the filter are read from the primary, a code committed before the rebuild must never be missing
+  @Transactional
+  public long countCoupons() {
+    return dslContext.fetchCount(COUPON);
+  }
+
+  @Transactional
+  public void streamCodes(Consumer<String> consumer) {
+    try (var cursor = dslContext.select(COUPON.CODE_NORMALIZED)
+      .from(COUPON)
+      .fetchSize(CODE_STREAM_FETCH_SIZE)
+      .fetchLazy()) {
+      cursor.forEach(dbRecord -> consumer.accept(dbRecord.value1()));
+    }
+  }
+
+  // served by coupon_usage_created_date, only the requested days of usages are read
+  @Transactional(readOnly = true)
+  public Map<LocalDate, Long> countDailyUsages(LocalDate from) {
+    var day = COUPON_USAGE.CREATED_DATE_TIMESTAMP.cast(LocalDate.class);
+    return dslContext.select(day, DSL.count())
+      .from(COUPON_USAGE)
+      .where(COUPON_USAGE.CREATED_DATE_TIMESTAMP.ge(from.atStartOfDay()))
+      .groupBy(day)
+      .fetchMap(dbRecord -> dbRecord.value1(), dbRecord -> dbRecord.value2().longValue());
+  }
+
+  // Exhausted coupons without a lease whose counters did not change since exhaustedBefore and that still have usages.
+  // No registration can succeed for them any more, so their usages are only needed for the history.
+  @Transactional(readOnly = true)
+  public List<UUID> findArchivableCouponIds(LocalDateTime exhaustedBefore, int limit) {
+    return dslContext.select(COUPON.ID)
+      .from(COUPON)
+      .where(COUPON.CURRENT_USAGE.ge(COUPON.USAGE_LIMIT))
+      .and(COUPON.LEASED_USAGE.eq(0))
+      .and(COUPON.MODIFIED_DATE_TIMESTAMP.lt(exhaustedBefore))
+      .andExists(DSL.selectOne().from(COUPON_USAGE).where(COUPON_USAGE.COUPON_ID.eq(COUPON.ID)))
+      .limit(limit)
+      .fetch(COUPON.ID);
+  }
+
   @Transactional
   public boolean existsByCode(String code) {
     var query = dslContext.selectOne().from(COUPON).where(COUPON.CODE_NORMALIZED.eq(code.toUpperCase()));
     return dslContext.fetchExists(query);
   }
 
-  public record CouponUsageData(UUID couponId, String country, boolean couponExists, int usageLimit, int totalUsage, int userUsage) {}
+  public record CouponUsageData(UUID couponId, String country, boolean couponExists, int usageLimit, int totalUsage, int userUsage, LocalDateTime validFrom, LocalDateTime validUntil) {}
+
+  public record CouponMetadata(UUID id, String codeNormalized, String country, int usageLimit, LocalDateTime validFrom, LocalDateTime validUntil) {}
 
+  // Kept on the primary, registrations must find a coupon right after it was created. A miss read from a lagging
+  // replica would also stay in CouponMetadataCache for the whole negative-ttl.
+  @Transactional
+  public Optional<CouponMetadata> findCouponMetadata(String codeNormalized) {
+    return dslContext
+      .select(COUPON.ID, COUPON.CODE_NORMALIZED, COUPON.COUNTRY, COUPON.USAGE_LIMIT, COUPON.VALID_FROM, COUPON.VALID_UNTIL)
+      .from(COUPON)
+      .where(COUPON.CODE_NORMALIZED.eq(codeNormalized))
+      .fetchOptional()
+      .map(dbRecord -> new CouponMetadata(dbRecord.value1(), dbRecord.value2(), dbRecord.value3(), dbRecord.value4(), dbRecord.value5(), dbRecord.value6()));
+  }
+
+  // total usage comes from the denormalized counters (leased units included), so the cost no longer grows with the popularity of the coupon
   @Transactional
   public Optional<CouponUsageData> findCouponUsageByCode(String code, UUID userId) {
+    var userUsage = DSL.selectCount()
+      .from(USER_COUPON_USAGE_ALIAS)
+      .where(USER_COUPON_USAGE_ALIAS.COUPON_ID.eq(COUPON_ALIAS.ID).and(USER_COUPON_USAGE_ALIAS.USER_ID.eq(userId)))
+      .asField(COUPON_USER_USAGE_FIELD.getName());
+
     return dslContext
-      .select(COUPON_USAGE_SELECT_FIELDS)
+      .select(COUPON_ALIAS.ID, COUPON_ALIAS.COUNTRY, COUPON_ALIAS.USAGE_LIMIT, COUPON_ALIAS.ID.isNotNull().as(COUPON_EXISTS_FIELD), COUPON_ALIAS.CURRENT_USAGE.plus(COUPON_ALIAS.LEASED_USAGE).as(COUPON_TOTAL_USAGE_FIELD), userUsage, COUPON_ALIAS.VALID_FROM, COUPON_ALIAS.VALID_UNTIL)
       .from(COUPON_ALIAS)
-      .leftJoin(COUPON_USAGE_ALIAS).on(COUPON_USAGE_ALIAS.COUPON_ID.eq(COUPON_ALIAS.ID))
-      .leftJoin(USER_COUPON_USAGE_ALIAS).on(USER_COUPON_USAGE_ALIAS.COUPON_ID.eq(COUPON_ALIAS.ID).and(USER_COUPON_USAGE_ALIAS.USER_ID.eq(userId)))
       .where(COUPON_ALIAS.CODE_NORMALIZED.eq(code.toUpperCase()))
-      .groupBy(COUPON_ALIAS.ID)
       .fetchOptional()
       .map(this::buildCouponUsageData);
   }
 
-  private CouponUsageData buildCouponUsageData(Record dbRecord) {
+  CouponUsageData buildCouponUsageData(Record dbRecord) {
     var couponId = dbRecord.get(COUPON_ALIAS.ID);
     var country = dbRecord.get(COUPON_ALIAS.COUNTRY);
     var exists = dbRecord.get(COUPON_EXISTS_FIELD);
     var totalUsage = dbRecord.get(COUPON_TOTAL_USAGE_FIELD);
     var userUsage = dbRecord.get(COUPON_USER_USAGE_FIELD);
     var usageLimit = dbRecord.get(COUPON_ALIAS.USAGE_LIMIT);
+    var validFrom = dbRecord.get(COUPON_ALIAS.VALID_FROM);
+    var validUntil = dbRecord.get(COUPON_ALIAS.VALID_UNTIL);
 
-    return new CouponUsageData(couponId, country, exists, usageLimit, totalUsage, userUsage);
+    return new CouponUsageData(couponId, country, exists, usageLimit, totalUsage, userUsage, validFrom, validUntil);
   }
 
-  private CouponData buildCouponData(Record dbRecord) {
+  CouponData buildCouponData(Record dbRecord) {
     return new CouponData()
       .id(dbRecord.getValue(COUPON.ID))
       .code(dbRecord.getValue(COUPON.CODE))
       .usageLimit(dbRecord.getValue(COUPON.USAGE_LIMIT))
       .countryCode(dbRecord.getValue(COUPON.COUNTRY))
-      .currentUsage(dbRecord.get(CURRENT_USAGE_FIELD))
-      .createDate(dbRecord.get(COUPON.CREATED_DATE_TIMESTAMP));
+      .currentUsage(dbRecord.get(COUPON.CURRENT_USAGE))
+      .createDate(dbRecord.get(COUPON.CREATED_DATE_TIMESTAMP))
+      .validFrom(dbRecord.get(COUPON.VALID_FROM))
+      .validUntil(dbRecord.get(COUPON.VALID_UNTIL));
+  }
+
+  // pgjdbc sets the session time zone to the default one of the jvm, so the local time here matches localtimestamp
+  private static Condition notExpired() {
+    return COUPON.VALID_UNTIL.isNull().or(COUPON.VALID_UNTIL.gt(LocalDateTime.now()));
   }
 }
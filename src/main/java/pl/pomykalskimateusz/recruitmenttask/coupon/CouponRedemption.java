@@ -0,0 +1,10 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import java.util.UUID;
+
+public interface CouponRedemption {
+  void redeem(UUID userId, String code, String countryCode);
+
+  // called by CouponExpiryScheduler when a coupon's validity ends, state kept per code has to be dropped
+  default void onCouponExpired(String codeNormalized) {}
+}
@@ -0,0 +1,11 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+public enum CouponRedemptionResult {
+  REGISTERED,
+  COUPON_NOT_FOUND,
+  COUNTRY_MISMATCH,
+  COUPON_NOT_ACTIVE,
+  COUPON_EXPIRED,
+  USAGE_LIMIT_EXCEEDED,
+  USER_USAGE_LIMIT_EXCEEDED
+}
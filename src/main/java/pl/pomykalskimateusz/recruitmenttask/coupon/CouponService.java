@@ -1,72 +1,114 @@
 package pl.pomykalskimateusz.recruitmenttask.coupon;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import org.jooq.DSLContext;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
 import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
 import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
 import pl.pomykalskimateusz.recruitmenttask.model.BasicCouponData;
 import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponPage;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponStats;
 import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
 import pl.pomykalskimateusz.recruitmenttask.utils.DistributedDatabaseLock;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Service
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 @RequiredArgsConstructor
 public class CouponService {
-  DSLContext dslContext;
   CouponWriteRepository couponWriteRepository;
   CouponReadRepository couponReadRepository;
   CouponValidateService couponValidateService;
   LocalizationService localizationService;
+  CouponMetadataCache couponMetadataCache;
+  CouponCodeFilter couponCodeFilter;
+  CouponRedemption couponRedemption;
+  CouponUsageStatistics couponUsageStatistics;
+  TransactionTemplate transactionTemplate;
+  DistributedDatabaseLock distributedDatabaseLock;
+  DatabaseBulkhead databaseBulkhead;
 
-  @Transactional
   public List<CouponData> fetchCoupons() {
-    return couponReadRepository.findAll();
+    return databaseBulkhead.execute(couponReadRepository::findAll);
   }
 
-  @Transactional
+  public CouponPage fetchCoupons(String cursor, Integer limit) {
+    couponValidateService.validatePageLimit(limit);
+    var after = cursor == null || cursor.isEmpty() ? null : CouponCursor.decode(cursor);
+
+    // one extra row tells whether there is a next page without a separate count query
+    var coupons = databaseBulkhead.execute(() -> couponReadRepository.findPage(after, limit + 1));
+    if (coupons.size() <= limit) {
+      return new CouponPage().items(coupons);
+    }
+
+    var page = coupons.subList(0, limit);
+    var last = page.getLast();
+    return new CouponPage()
+      .items(page)
+      .nextCursor(new CouponCursor(last.getCreateDate(), last.getId()).encode());
+  }
+
+  // served from memory, no database work and therefore no bulkhead permit
+  public CouponStats fetchCouponStats(Integer limit) {
+    couponValidateService.validateStatsLimit(limit);
+    return couponUsageStatistics.snapshot(limit);
+  }
+
+  public void streamCoupons(Consumer<CouponData> consumer) {
+    databaseBulkhead.run(() -> couponReadRepository.streamAll(consumer));
+  }
+
+  @Timed(value = "coupon.creation", histogram = true)
   public Optional<BasicCouponData> createCoupon(CreateCouponBody createCouponBody) {
     couponValidateService.validateCreateCoupon(createCouponBody);
-    DistributedDatabaseLock.lockCouponCreation(dslContext, createCouponBody.getCode());
 
-    if(couponReadRepository.existsByCode(createCouponBody.getCode())) {
-      throw new BadRequestException(String.format("Duplicated coupon code found: %s", createCouponBody.getCode()));
-    }
+    var coupon = databaseBulkhead.execute(() -> transactionTemplate.execute(status -> {
+      distributedDatabaseLock.lockCouponCreation(createCouponBody.getCode());
+
+      if(couponReadRepository.existsByCode(createCouponBody.getCode())) {
+        throw new BadRequestException(String.format("Duplicated coupon code found: %s", createCouponBody.getCode()));
+      }
 
-    return couponWriteRepository.insert(createCouponBody);
+      return couponWriteRepository.insert(createCouponBody);
+    }));
+    // other nodes learn about the coupon from the coupon_changed notification, this one must not wait for it
+    couponMetadataCache.invalidate(createCouponBody.getCode().toUpperCase());
+    return coupon;
   }
 
-  @Transactional
+  // Not transactional on purpose: validation and the external geolocation call run without a bound connection,
+  // only the redemption itself holds one (and a bulkhead permit) for the duration of a short transaction.
+  @Timed(value = "coupon.registration", histogram = true)
   public void registerCoupon(UUID userId, String code, String ipAddress) {
     couponValidateService.validateRegisterCoupon(userId, code);
+    // guessed codes are mostly rejected by the in-memory filter, the remaining false positives by the metadata cache
+    couponValidateService.validateCouponMightExist(couponCodeFilter.mightContain(code), code);
+    // unknown codes are rejected from the per-node metadata cache before paying for geolocation and a transaction
+    var coupon = couponValidateService.validateCouponExists(couponMetadataCache.find(code), code);
+    couponValidateService.validateCouponActive(coupon, code);
 
-    var optionalCountryCode = localizationService.getCountryCodeByIp(ipAddress);
-    if(optionalCountryCode.isEmpty()) {
-      throw new ResourceNotFoundException(String.format("Not found country code for ip address: %s", ipAddress));
-    }
-
-    DistributedDatabaseLock.lockCouponRegistration(dslContext, code);
+    var countryCode = fetchCountryCode(ipAddress);
+    couponValidateService.validateCouponCountry(coupon, code, countryCode);
 
-    couponWriteRepository.insertCouponUsage(userId, fetchCouponUsageByCode(userId, code, optionalCountryCode.get()).couponId());
+    couponRedemption.redeem(userId, code, countryCode);
   }
 
-  private CouponReadRepository.CouponUsageData fetchCouponUsageByCode(UUID userId, String code, String countryCode) {
-    var optionalCouponUsage = couponReadRepository.findCouponUsageByCode(code, userId);
-    if(optionalCouponUsage.isEmpty()) {
-      throw new ResourceNotFoundException(String.format("Not found coupon code: %s", code));
+  private String fetchCountryCode(String ipAddress) {
+    var optionalCountryCode = localizationService.getCountryCodeByIp(ipAddress);
+    if(optionalCountryCode.isEmpty()) {
+      throw new ResourceNotFoundException(String.format("Not found country code for ip address: %s", ipAddress));
     }
-
-    couponValidateService.validateCouponUsage(optionalCouponUsage.get(), code, countryCode);
-
-    return optionalCouponUsage.get();
+    return optionalCountryCode.get();
   }
 }
@@ -0,0 +1,58 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+// Streams validated rows into the coupon_staging table with COPY ... FROM STDIN (csv). Nothing else may run on
+// the connection until the writer is closed. Every staged code is also passed to onCode, rows rejected by the
+// merge included.
+public class CouponStagingWriter implements AutoCloseable {
+  static String COPY_SQL = "COPY coupon_staging (row_number, code, country, usage_limit, valid_from, valid_until) FROM STDIN WITH (FORMAT csv)";
+  static int BUFFER_SIZE = 64 * 1024;
+
+  private final PGCopyOutputStream output;
+  private final Consumer<String> onCode;
+  private final StringBuilder line = new StringBuilder();
+
+  CouponStagingWriter(PGConnection connection, Consumer<String> onCode) throws SQLException {
+    this.output = new PGCopyOutputStream(connection, COPY_SQL, BUFFER_SIZE);
+    this.onCode = onCode;
+  }
+
+  void write(int rowNumber, CreateCouponBody body) {
+    onCode.accept(body.getCode());
+    line.setLength(0);
+    line.append(rowNumber).append(",\"").append(body.getCode().replace("\"", "\"\"")).append("\",")
+      .append(body.getCountryCode().toUpperCase()).append(',')
+      .append(body.getUsageLimit()).append(',');
+    // an unquoted empty value is null in csv format
+    appendTimestamp(body.getValidFrom()).append(',');
+    appendTimestamp(body.getValidUntil()).append('\n');
+    try {
+      output.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private StringBuilder appendTimestamp(LocalDateTime timestamp) {
+    return timestamp == null ? line : line.append(timestamp);
+  }
+
+  @Override
+  public void close() {
+    try {
+      output.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
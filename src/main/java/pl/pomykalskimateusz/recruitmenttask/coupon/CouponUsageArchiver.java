@@ -0,0 +1,147 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.pomykalskimateusz.recruitmenttask.utils.DistributedDatabaseLock;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Moves the usages of coupons exhausted for longer than retention out of coupon_usage into gzipped csv files, one per
+// batch of coupons. The file is fsynced and moved into place before the delete commits, so a failed commit leaves
+// the rows in the table and they are archived again (twice on disk) by the next run, never lost.
+// coupon.current_usage keeps counting the archived usages, statistics and usage limits are not affected.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "coupon.archive.enabled", havingValue = "true")
+public class CouponUsageArchiver {
+  static DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'");
+
+  private final CouponReadRepository couponReadRepository;
+  private final CouponWriteRepository couponWriteRepository;
+  private final DistributedDatabaseLock distributedDatabaseLock;
+  private final TransactionTemplate transactionTemplate;
+  private final Path directory;
+  private final Duration retention;
+  private final Duration interval;
+  private final int batchSize;
+  private final Counter archivedUsages;
+  private final ScheduledExecutorService scheduler;
+
+  public CouponUsageArchiver(
+    CouponReadRepository couponReadRepository,
+    CouponWriteRepository couponWriteRepository,
+    DistributedDatabaseLock distributedDatabaseLock,
+    TransactionTemplate transactionTemplate,
+    MeterRegistry meterRegistry,
+    @Value("${coupon.archive.directory:archive}") Path directory,
+    @Value("${coupon.archive.retention:90d}") Duration retention,
+    @Value("${coupon.archive.interval:1h}") Duration interval,
+    @Value("${coupon.archive.batch-size:1000}") int batchSize
+  ) {
+    this.couponReadRepository = couponReadRepository;
+    this.couponWriteRepository = couponWriteRepository;
+    this.distributedDatabaseLock = distributedDatabaseLock;
+    this.transactionTemplate = transactionTemplate;
+    this.directory = directory;
+    this.retention = retention;
+    this.interval = interval;
+    this.batchSize = batchSize;
+    this.archivedUsages = Counter.builder("coupon.usage.archived")
+      .description("Coupon usages moved from coupon_usage to archive files")
+      .register(meterRegistry);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("coupon-usage-archiver").daemon().factory());
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    scheduler.scheduleWithFixedDelay(this::archive, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  void archive() {
+    try {
+      Files.createDirectories(directory);
+      long archived;
+      do {
+        archived = archiveBatch();
+      } while (archived > 0);
+    } catch (Exception e) {
+      log.warn("Could not archive coupon usages", e);
+    }
+  }
+
+  // returns the number of archived usages, 0 when nothing is left or another node holds the archival lock
+  long archiveBatch() {
+    var archived = transactionTemplate.execute(status -> {
+      if (!distributedDatabaseLock.tryLockCouponArchival()) {
+        return 0L;
+      }
+      var couponIds = couponReadRepository.findArchivableCouponIds(LocalDateTime.now().minus(retention), batchSize);
+      if (couponIds.isEmpty()) {
+        return 0L;
+      }
+      var target = directory.resolve("coupon_usage-" + FILE_TIMESTAMP.format(LocalDateTime.now(ZoneOffset.UTC)) + "-" + couponIds.getFirst() + ".csv.gz");
+      var count = writeArchive(target, output -> couponWriteRepository.moveCouponUsages(couponIds, output));
+      log.info("Archived {} usages of {} coupons to {}", count, couponIds.size(), target);
+      return count;
+    });
+    archivedUsages.increment(archived);
+    return archived;
+  }
+
+  private interface ArchiveWriter {
+    long write(GZIPOutputStream output) throws IOException;
+  }
+
+  private long writeArchive(Path target, ArchiveWriter writer) {
+    try {
+      var temporary = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+      try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        var output = new GZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        var count = writer.write(output);
+        output.finish();
+        output.flush();
+        channel.force(true);
+        output.close();
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        // the rename lives in the directory, without syncing it a crash after the commit could lose the archive
+        try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+          directoryChannel.force(true);
+        }
+        return count;
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Groups concurrently submitted coupon usages into multi-row inserts. A batch is flushed once it reaches max-batch-size
+// or max-delay after its first usage arrived; usages arriving while a flush runs form the next batch, so under load
+// one round trip and one commit serve many redemptions. Every usage completes with true when it was inserted
+// or false when it hit unique_coupon_usage, usages whose lease expired without room left fail with 503.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "coupon.registration.mode", havingValue = "leased")
+public class CouponUsageInsertPipeline {
+  private static final long IDLE_POLL_MILLIS = 100;
+
+  private final CouponWriteRepository couponWriteRepository;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final LinkedBlockingQueue<PendingUsage> queue;
+  private final DistributionSummary batchSize;
+  private final Thread flusher;
+  private volatile boolean running = true;
+
+  public CouponUsageInsertPipeline(
+    CouponWriteRepository couponWriteRepository,
+    MeterRegistry meterRegistry,
+    @Value("${coupon.usage-insert.max-batch-size:500}") int maxBatchSize,
+    @Value("${coupon.usage-insert.max-delay:500us}") Duration maxDelay,
+    @Value("${coupon.usage-insert.queue-capacity:10000}") int queueCapacity
+  ) {
+    this.couponWriteRepository = couponWriteRepository;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelay.toNanos();
+    this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    this.batchSize = DistributionSummary.builder("coupon.usage.insert.batch.size")
+      .description("Number of coupon usages inserted by one statement")
+      .publishPercentileHistogram()
+      .register(meterRegistry);
+    Gauge.builder("coupon.usage.insert.queue.depth", queue, LinkedBlockingQueue::size)
+      .description("Coupon usages waiting for the next batch")
+      .register(meterRegistry);
+    this.flusher = Thread.ofPlatform().name("coupon-usage-insert-pipeline").daemon().start(this::run);
+  }
+
+  public CompletableFuture<Boolean> submit(UUID leaseId, UUID couponId, UUID userId) {
+    var pending = new PendingUsage(new CouponWriteRepository.NewCouponUsage(UUID.randomUUID(), leaseId, couponId, userId), new CompletableFuture<>());
+    if (!running) {
+      throw new ServiceUnavailableException("Coupon registrations are shutting down, try again later");
+    }
+    if (!queue.offer(pending)) {
+      throw new ServiceUnavailableException("Too many pending coupon registrations, try again later");
+    }
+    // shutdown may have drained the queue between the check and the offer, a usage nobody took back would never complete
+    if (!running && queue.remove(pending)) {
+      throw new ServiceUnavailableException("Coupon registrations are shutting down, try again later");
+    }
+    return pending.result();
+  }
+
+  // Takes a usage back while it is still queued and fails it with the given exception. Returns false once the usage
+  // is part of a batch, its result then only depends on that batch.
+  public boolean withdraw(CompletableFuture<Boolean> result, RuntimeException cause) {
+    if (!queue.removeIf(it -> it.result() == result)) {
+      return false;
+    }
+    result.completeExceptionally(cause);
+    return true;
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    // the flusher finishes its current batch, whatever is still queued is flushed here, submits from now on are rejected
+    running = false;
+    flusher.join(TimeUnit.SECONDS.toMillis(10));
+    var remaining = new ArrayList<PendingUsage>();
+    while (queue.drainTo(remaining, maxBatchSize) > 0) {
+      if (flusher.isAlive()) {
+        // the flusher is stuck in a statement, the rest is failed rather than written next to it
+        var shutdown = new ServiceUnavailableException("Coupon registrations are shutting down, try again later");
+        remaining.forEach(it -> it.result().completeExceptionally(shutdown));
+      } else {
+        flush(remaining);
+      }
+      remaining.clear();
+    }
+  }
+
+  private void run() {
+    var batch = new ArrayList<PendingUsage>(maxBatchSize);
+    while (running) {
+      try {
+        var first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        var deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+          if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+            continue;
+          }
+          var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (!batch.isEmpty()) {
+        flush(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(List<PendingUsage> batch) {
+    batchSize.record(batch.size());
+    try {
+      var inserted = couponWriteRepository.insertLeasedCouponUsages(batch.stream().map(PendingUsage::usage).toList());
+      for (var pending : batch) {
+        if (inserted.leaseExpired().contains(pending.usage().id())) {
+          pending.result().completeExceptionally(new ServiceUnavailableException("Coupon lease expired before its registrations were written, try again later"));
+        } else {
+          pending.result().complete(inserted.inserted().contains(pending.usage().id()));
+        }
+      }
+    } catch (Exception e) {
+      log.warn("Could not insert batch of {} coupon usages", batch.size(), e);
+      batch.forEach(it -> it.result().completeExceptionally(e));
+    }
+  }
+
+  private record PendingUsage(CouponWriteRepository.NewCouponUsage usage, CompletableFuture<Boolean> result) {}
+}
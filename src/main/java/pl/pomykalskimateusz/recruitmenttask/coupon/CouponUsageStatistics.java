@@ -0,0 +1,193 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.pomykalskimateusz.recruitmenttask.model.CountryUsageStats;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponStats;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponUsageStats;
+import pl.pomykalskimateusz.recruitmenttask.model.DailyUsageStats;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-node usage statistics served without touching coupon_usage. They are loaded from the coupon.current_usage counters
+// and the last histogram-days of usages, then kept up to date with deltas applied after every committed usage insert of
+// this node. A periodic refresh reloads the counters (O(coupons)) and today's usages, which brings in the registrations
+// of other nodes and corrects a delta lost or counted twice because it committed while a refresh was reading.
+@Slf4j
+@Service
+public class CouponUsageStatistics {
+  private final CouponReadRepository couponReadRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final int histogramDays;
+  private final Duration refreshInterval;
+  private final Clock clock;
+  private final ScheduledExecutorService refresher;
+  private final AtomicBoolean refreshQueued = new AtomicBoolean();
+  private volatile Statistics statistics = Statistics.empty();
+
+  private record CouponCounter(UUID id, String code, String countryCode, int usageLimit, LongAdder usage) {}
+
+  private record Statistics(Map<UUID, CouponCounter> coupons, Map<String, LongAdder> countries, ConcurrentSkipListMap<LocalDate, LongAdder> days) {
+    static Statistics empty() {
+      return new Statistics(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentSkipListMap<>());
+    }
+  }
+
+  public CouponUsageStatistics(
+    CouponReadRepository couponReadRepository,
+    TransactionTemplate transactionTemplate,
+    @Value("${coupon.stats.histogram-days:90}") int histogramDays,
+    @Value("${coupon.stats.refresh-interval:1m}") Duration refreshInterval
+  ) {
+    this.couponReadRepository = couponReadRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.histogramDays = histogramDays;
+    this.refreshInterval = refreshInterval;
+    // created_date_timestamp is written in the session time zone, which pgjdbc sets to the default one of the jvm
+    this.clock = Clock.systemDefaultZone();
+    this.refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("coupon-usage-statistics-refresher").daemon().factory());
+  }
+
+  // Applied once the surrounding transaction commits, a rolled back registration is never counted
+  public void recordUsage(UUID couponId, long count) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      apply(couponId, count);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        apply(couponId, count);
+      }
+    });
+  }
+
+  public CouponStats snapshot(int limit) {
+    var current = statistics;
+    var mostUsed = new PriorityQueue<CouponUsageStats>(Comparator.comparingLong(CouponUsageStats::getCurrentUsage));
+    var totalUsage = 0L;
+    for (var counter : current.coupons().values()) {
+      var usage = counter.usage().sum();
+      totalUsage += usage;
+      if (limit == 0) {
+        continue;
+      }
+      if (mostUsed.size() < limit) {
+        mostUsed.add(buildCouponUsageStats(counter, usage));
+      } else if (mostUsed.peek().getCurrentUsage() < usage) {
+        mostUsed.poll();
+        mostUsed.add(buildCouponUsageStats(counter, usage));
+      }
+    }
+
+    return new CouponStats()
+      .totalUsage(totalUsage)
+      .coupons(mostUsed.stream()
+        .sorted(Comparator.comparingLong(CouponUsageStats::getCurrentUsage).reversed())
+        .toList())
+      .countries(current.countries().entrySet().stream()
+        .map(entry -> new CountryUsageStats().countryCode(entry.getKey()).usage(entry.getValue().sum()))
+        .sorted(Comparator.comparingLong(CountryUsageStats::getUsage).reversed())
+        .toList())
+      .days(current.days().tailMap(firstHistogramDay()).entrySet().stream()
+        .map(entry -> new DailyUsageStats().date(entry.getKey()).usage(entry.getValue().sum()))
+        .toList());
+  }
+
+  // Coupons created after the last refresh are unknown until the next one, their first usage brings it forward.
+  // Requests arriving while one is queued are coalesced into it.
+  public void refresh() {
+    if (refreshQueued.compareAndSet(false, true)) {
+      refresher.execute(() -> refreshNow(false));
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadOnStartup() {
+    refreshQueued.set(true);
+    refresher.execute(() -> refreshNow(true));
+    refresher.scheduleWithFixedDelay(() -> refreshNow(false), refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  void refreshNow(boolean fullHistogram) {
+    refreshQueued.set(false);
+    try {
+      var start = System.nanoTime();
+      var previous = statistics;
+      var next = Statistics.empty();
+      // A read-write transaction keeps both reads on the primary, the read-only repository methods join it. Counters
+      // of a lagging replica miss usages whose deltas this node already applied, the refresh would drop them.
+      transactionTemplate.executeWithoutResult(status -> {
+        couponReadRepository.streamAll(coupon -> {
+          var usage = new LongAdder();
+          usage.add(coupon.getCurrentUsage());
+          next.coupons().put(coupon.getId(), new CouponCounter(coupon.getId(), coupon.getCode(), coupon.getCountryCode(), coupon.getUsageLimit(), usage));
+          next.countries().computeIfAbsent(coupon.getCountryCode(), it -> new LongAdder()).add(coupon.getCurrentUsage());
+        });
+
+        // past days do not change any more, only today is read again unless the histogram was never loaded
+        var today = LocalDate.now(clock);
+        var from = fullHistogram || previous.days().isEmpty() ? firstHistogramDay() : today;
+        next.days().putAll(previous.days().headMap(from));
+        couponReadRepository.countDailyUsages(from).forEach((day, usage) -> next.days().computeIfAbsent(day, it -> new LongAdder()).add(usage));
+      });
+      next.days().headMap(firstHistogramDay()).clear();
+
+      statistics = next;
+      log.debug("Refreshed usage statistics of {} coupons in {} ms", next.coupons().size(), (System.nanoTime() - start) / 1_000_000);
+    } catch (Exception e) {
+      log.warn("Could not refresh coupon usage statistics, keeping the previous ones", e);
+    }
+  }
+
+  private void apply(UUID couponId, long count) {
+    var current = statistics;
+    var counter = current.coupons().get(couponId);
+    if (counter == null) {
+      // the refresh reads the committed counter, so this usage is included there
+      refresh();
+      return;
+    }
+    counter.usage().add(count);
+    current.countries().computeIfAbsent(counter.countryCode(), it -> new LongAdder()).add(count);
+    current.days().computeIfAbsent(LocalDate.now(clock), it -> new LongAdder()).add(count);
+  }
+
+  private LocalDate firstHistogramDay() {
+    return LocalDate.now(clock).minusDays(histogramDays - 1);
+  }
+
+  private static CouponUsageStats buildCouponUsageStats(CouponCounter counter, long usage) {
+    return new CouponUsageStats()
+      .id(counter.id())
+      .code(counter.code())
+      .countryCode(counter.countryCode())
+      .usageLimit(counter.usageLimit())
+      .currentUsage(usage);
+  }
+}
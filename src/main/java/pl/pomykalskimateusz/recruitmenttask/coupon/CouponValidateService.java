@@ -1,5 +1,6 @@
 package pl.pomykalskimateusz.recruitmenttask.coupon;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -8,8 +9,10 @@ import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
 import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
 import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -18,45 +21,170 @@ import java.util.stream.Collectors;
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 @RequiredArgsConstructor
 public class CouponValidateService {
+  static int MAX_PAGE_LIMIT = 1000;
+  static int MAX_GENERATE_COUNT = 1_000_000;
+  static int MAX_PREFIX_LENGTH = 32;
   static Set<String> ISO_COUNTRIES = Arrays.stream(Locale.getISOCountries()).collect(Collectors.toSet());
 
+  MeterRegistry meterRegistry;
+
   public void validateCreateCoupon(CreateCouponBody createCouponBody) {
     if(isEmptyOrNull(createCouponBody.getCode())) {
-      throw new BadRequestException("Invalid code: cannot be empty/null");
+      throw reject("invalid_code", new BadRequestException("Invalid code: cannot be empty/null"));
     }
     if(isCountryCodeNotValid(createCouponBody.getCountryCode())) {
-      throw new BadRequestException(String.format("Invalid country code: %s", createCouponBody.getCountryCode()));
+      throw reject("invalid_country_code", new BadRequestException(String.format("Invalid country code: %s", createCouponBody.getCountryCode())));
     }
     if(isUsageLimitNotValid(createCouponBody.getUsageLimit())) {
-      throw new BadRequestException(String.format("Invalid usage limit: %s, value should be positive", createCouponBody.getUsageLimit()));
+      throw reject("invalid_usage_limit", new BadRequestException(String.format("Invalid usage limit: %s, value should be positive", createCouponBody.getUsageLimit())));
+    }
+    if(isValidityNotValid(createCouponBody.getValidFrom(), createCouponBody.getValidUntil())) {
+      throw reject("invalid_validity", new BadRequestException(String.format("Invalid validity: %s - %s, valid until should be in the future and after valid from", createCouponBody.getValidFrom(), createCouponBody.getValidUntil())));
     }
   }
 
   public void validateRegisterCoupon(UUID userId, String code) {
     if(isUserIdNotValid(userId)) {
-      throw new BadRequestException("Invalid user id");
+      throw reject("invalid_user_id", new BadRequestException("Invalid user id"));
     }
     if(isEmptyOrNull(code)) {
-      throw new BadRequestException("Invalid code: cannot be empty/null");
+      throw reject("invalid_code", new BadRequestException("Invalid code: cannot be empty/null"));
+    }
+  }
+
+  public void validateGenerateCoupons(GenerateCouponsBody body) {
+    if(isCountryCodeNotValid(body.countryCode())) {
+      throw reject("invalid_country_code", new BadRequestException(String.format("Invalid country code: %s", body.countryCode())));
+    }
+    if(isUsageLimitNotValid(body.usageLimit())) {
+      throw reject("invalid_usage_limit", new BadRequestException(String.format("Invalid usage limit: %s, value should be positive", body.usageLimit())));
+    }
+    if(body.count() == null || body.count() < 1 || body.count() > MAX_GENERATE_COUNT) {
+      throw reject("invalid_count", new BadRequestException(String.format("Invalid count: %s, value should be between 1 and %s", body.count(), MAX_GENERATE_COUNT)));
+    }
+    if(body.lengthOrDefault() < 4 || body.lengthOrDefault() > 32) {
+      throw reject("invalid_length", new BadRequestException(String.format("Invalid length: %s, value should be between 4 and 32", body.length())));
+    }
+    if(body.prefixOrEmpty().length() > MAX_PREFIX_LENGTH) {
+      throw reject("invalid_prefix", new BadRequestException(String.format("Invalid prefix: %s, at most %s characters", body.prefix(), MAX_PREFIX_LENGTH)));
+    }
+    if(isAlphabetNotValid(body.alphabetOrDefault())) {
+      throw reject("invalid_alphabet", new BadRequestException(String.format("Invalid alphabet: %s, expected 2 to 64 characters distinct regardless of case", body.alphabet())));
+    }
+  }
+
+  public void validatePageLimit(Integer limit) {
+    if(limit == null || limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw reject("invalid_page_limit", new BadRequestException(String.format("Invalid limit: %s, value should be between 1 and %s", limit, MAX_PAGE_LIMIT)));
     }
   }
 
+  public void validateStatsLimit(Integer limit) {
+    if(limit == null || limit < 0 || limit > MAX_PAGE_LIMIT) {
+      throw reject("invalid_stats_limit", new BadRequestException(String.format("Invalid limit: %s, value should be between 0 and %s", limit, MAX_PAGE_LIMIT)));
+    }
+  }
+
+  public void validateCouponMightExist(boolean mightExist, String code) {
+    if(!mightExist) {
+      throw couponNotFound(code);
+    }
+  }
+
+  public CouponReadRepository.CouponMetadata validateCouponExists(Optional<CouponReadRepository.CouponMetadata> metadata, String code) {
+    return metadata.orElseThrow(() -> couponNotFound(code));
+  }
+
+  public void validateCouponCountry(CouponReadRepository.CouponMetadata metadata, String code, String countryCode) {
+    if(!countryCode.equalsIgnoreCase(metadata.country())) {
+      throw countryMismatch(code, countryCode);
+    }
+  }
+
+  public void validateCouponActive(CouponReadRepository.CouponMetadata metadata, String code) {
+    validateValidity(metadata.validFrom(), metadata.validUntil(), code);
+  }
+
   public void validateCouponUsage(CouponReadRepository.CouponUsageData couponUsage, String code, String countryCode) {
     if(!countryCode.equalsIgnoreCase(couponUsage.country())) {
-      throw new ResourceNotFoundException(String.format("Not found coupon code: %s for country: %s", code, countryCode));
+      throw countryMismatch(code, countryCode);
     }
-    if(couponUsage.usageLimit() == couponUsage.totalUsage()) {
-      throw new BadRequestException(String.format("Code not available. Usage limit exceeded for code: %s", code));
+    validateValidity(couponUsage.validFrom(), couponUsage.validUntil(), code);
+    if(couponUsage.totalUsage() >= couponUsage.usageLimit()) {
+      throw usageLimitExceeded(code);
     }
     if(couponUsage.userUsage() > 0) {
-      throw new BadRequestException(String.format("User usage limit exceeded for code: %s and country: %s", code, countryCode));
+      throw userUsageLimitExceeded(code, countryCode);
     }
   }
 
+  public void validateRedemptionResult(CouponRedemptionResult result, String code, String countryCode) {
+    switch (result) {
+      case REGISTERED -> {}
+      case COUPON_NOT_FOUND -> throw couponNotFound(code);
+      case COUNTRY_MISMATCH -> throw countryMismatch(code, countryCode);
+      case COUPON_NOT_ACTIVE -> throw couponNotActive(code);
+      case COUPON_EXPIRED -> throw couponExpired(code);
+      case USAGE_LIMIT_EXCEEDED -> throw usageLimitExceeded(code);
+      case USER_USAGE_LIMIT_EXCEEDED -> throw userUsageLimitExceeded(code, countryCode);
+    }
+  }
+
+  public BadRequestException usageLimitExceeded(String code) {
+    return reject("usage_limit_exceeded", new BadRequestException(String.format("Code not available. Usage limit exceeded for code: %s", code)));
+  }
+
+  public ResourceNotFoundException couponNotFound(String code) {
+    return reject("coupon_not_found", new ResourceNotFoundException(String.format("Not found coupon code: %s", code)));
+  }
+
+  public ResourceNotFoundException countryMismatch(String code, String countryCode) {
+    return reject("country_mismatch", new ResourceNotFoundException(String.format("Not found coupon code: %s for country: %s", code, countryCode)));
+  }
+
+  public BadRequestException couponNotActive(String code) {
+    return reject("coupon_not_active", new BadRequestException(String.format("Coupon code: %s is not active yet", code)));
+  }
+
+  public BadRequestException couponExpired(String code) {
+    return reject("coupon_expired", new BadRequestException(String.format("Coupon code: %s has expired", code)));
+  }
+
+  public BadRequestException userUsageLimitExceeded(String code, String countryCode) {
+    return reject("user_usage_limit_exceeded", new BadRequestException(String.format("User usage limit exceeded for code: %s and country: %s", code, countryCode)));
+  }
+
+  // every rejection is counted by reason only, codes and user ids would make the tag unbounded
+  private <T extends RuntimeException> T reject(String reason, T exception) {
+    meterRegistry.counter("coupon.rejections", "reason", reason).increment();
+    return exception;
+  }
+
+  private void validateValidity(LocalDateTime validFrom, LocalDateTime validUntil, String code) {
+    var now = LocalDateTime.now();
+    if(validFrom != null && validFrom.isAfter(now)) {
+      throw couponNotActive(code);
+    }
+    if(validUntil != null && !validUntil.isAfter(now)) {
+      throw couponExpired(code);
+    }
+  }
+
+  private boolean isValidityNotValid(LocalDateTime validFrom, LocalDateTime validUntil) {
+    return validUntil != null && (!validUntil.isAfter(LocalDateTime.now()) || validFrom != null && !validUntil.isAfter(validFrom));
+  }
+
   private boolean isCountryCodeNotValid(String countryCode) {
     return isEmptyOrNull(countryCode) || !ISO_COUNTRIES.contains(countryCode.toUpperCase());
   }
 
+  // codes are unique regardless of case, so 'a' and 'A' would produce clashing codes
+  private boolean isAlphabetNotValid(String alphabet) {
+    var upperCase = alphabet.toUpperCase();
+    return alphabet.length() < 2 || alphabet.length() > 64 || upperCase.length() != alphabet.length()
+      || upperCase.chars().distinct().count() != alphabet.length() || upperCase.chars().anyMatch(Character::isWhitespace);
+  }
+
   private boolean isUsageLimitNotValid(Integer usageLimit) {
     return usageLimit == null || usageLimit <= 0;
   }
@@ -1,40 +1,240 @@
 package pl.pomykalskimateusz.recruitmenttask.coupon;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.jooq.DSLContext;
 import org.jooq.Record;
+import org.jooq.impl.DSL;
+import org.postgresql.PGConnection;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import pl.pomykalskimateusz.recruitmenttask.model.BasicCouponData;
 import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
 
 import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON_CODE_SEQUENCE;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON_LEASE;
 import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.tables.CouponUsage.COUPON_USAGE;
 
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
+@Timed("coupon.repository")
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 @RequiredArgsConstructor
 public class CouponWriteRepository {
+  // Limit check, per-user check and insert in one statement. The conditional update takes the coupon row lock and
+  // re-checks current_usage < usage_limit against the latest row version, so the limit holds under concurrency.
+  // A usage insert losing a race on unique_coupon_usage leaves "claimed" without "inserted", reported as a user conflict.
+  // The validity window is checked against localtimestamp, the clock created_date_timestamp is written in.
+  static String REDEEM_COUPON_USAGE_SQL = """
+    with target as (
+        select id, country, usage_limit, current_usage, leased_usage, valid_from, valid_until from coupon where code_normalized = ?
+    ), claimed as (
+        update coupon set current_usage = current_usage + 1
+        where id = (select id from target)
+          and country = ?
+          and (valid_from is null or valid_from <= localtimestamp)
+          and (valid_until is null or valid_until > localtimestamp)
+          and current_usage + leased_usage < usage_limit
+          and not exists (select 1 from coupon_usage where coupon_id = coupon.id and user_id = ?)
+        returning id
+    ), inserted as (
+        insert into coupon_usage (id, coupon_id, user_id, version)
+        select ?, id, ?, 1 from claimed
+        on conflict (coupon_id, user_id) do nothing
+        returning id
+    )
+    select (select id from claimed), case
+        when not exists (select 1 from target) then 'COUPON_NOT_FOUND'
+        when (select country from target) <> ? then 'COUNTRY_MISMATCH'
+        when (select valid_from > localtimestamp from target) then 'COUPON_NOT_ACTIVE'
+        when (select valid_until <= localtimestamp from target) then 'COUPON_EXPIRED'
+        when exists (select 1 from inserted) then 'REGISTERED'
+        when exists (select 1 from claimed) then 'USER_USAGE_LIMIT_EXCEEDED'
+        when (select current_usage + leased_usage >= usage_limit from target) then 'USAGE_LIMIT_EXCEEDED'
+        when exists (select 1 from coupon_usage where coupon_id = (select id from target) and user_id = ?) then 'USER_USAGE_LIMIT_EXCEEDED'
+        else 'USAGE_LIMIT_EXCEEDED'
+    end
+    """;
+
+  // Reserves up to a block of redemptions for one node in a coupon_lease row. Leased units count against usage_limit
+  // in every mode, and move to current_usage as their usages are inserted. Units of expired leases, e.g. of a node that
+  // crashed, are given back by the same statement, under the same coupon row lock. Coupons outside their validity
+  // window or of another country get no lease.
+  static String LEASE_COUPON_USAGE_SQL = """
+    with target as (
+        select id, usage_limit - current_usage - leased_usage as available
+        from coupon
+        where code_normalized = ?
+          and country = ?
+          and (valid_from is null or valid_from <= localtimestamp)
+          and (valid_until is null or valid_until > localtimestamp)
+        for update
+    ), reclaimed as (
+        delete from coupon_lease
+        where coupon_id = (select id from target) and expires_at <= localtimestamp
+        returning remaining
+    ), granted as (
+        select id, (select coalesce(sum(remaining), 0) from reclaimed) as reclaimed,
+               least(?, available + (select coalesce(sum(remaining), 0) from reclaimed)) as granted
+        from target
+    ), leased as (
+        insert into coupon_lease (id, coupon_id, node_id, remaining, expires_at)
+        select ?, id, ?, granted, localtimestamp + cast(? as bigint) * interval '1 millisecond'
+        from granted
+        where granted > 0
+    )
+    update coupon set leased_usage = leased_usage - granted.reclaimed + granted.granted
+    from granted
+    where coupon.id = granted.id and (granted.granted > 0 or granted.reclaimed > 0)
+    returning coupon.id, coupon.country, granted.granted
+    """;
+
+  static String CREATE_COUPON_STAGING_SQL = """
+    create temporary table if not exists coupon_staging (
+        row_number  integer not null,
+        code        varchar not null,
+        country     char(2) not null,
+        usage_limit integer not null,
+        valid_from  timestamp,
+        valid_until timestamp
+    ) on commit drop
+    """;
+
+  // The first row of every code is inserted, later rows with the same code and codes that already exist are skipped
+  // by unique_coupon_code. Returns every staged row that did not create a coupon.
+  static String MERGE_COUPON_STAGING_SQL = """
+    with candidates as (
+        select distinct on (upper(code)) row_number, code, country, usage_limit, valid_from, valid_until
+        from coupon_staging
+        order by upper(code), row_number
+    ), inserted as (
+        insert into coupon (id, code, usage_limit, country, valid_from, valid_until, version)
+        select gen_random_uuid(), code, usage_limit, country, valid_from, valid_until, 1 from candidates
+        on conflict (code_normalized) do nothing
+        returning code_normalized
+    )
+    select staging.row_number, staging.code
+    from coupon_staging staging
+    left join candidates on candidates.row_number = staging.row_number
+    left join inserted on inserted.code_normalized = upper(candidates.code)
+    where inserted.code_normalized is null
+    order by staging.row_number
+    """;
+
   DSLContext dslContext;
+  CouponCodeFilter couponCodeFilter;
+  CouponUsageStatistics couponUsageStatistics;
 
   @Transactional
   public Optional<BasicCouponData> insert(CreateCouponBody body) {
+    // before the commit, so no registration after it can be rejected by the filter, a rolled back code only costs a false positive
+    couponCodeFilter.put(body.getCode());
     return dslContext.insertInto(COUPON)
       .set(COUPON.ID, UUID.randomUUID())
       .set(COUPON.CODE, body.getCode())
       .set(COUPON.USAGE_LIMIT, body.getUsageLimit())
       .set(COUPON.COUNTRY, body.getCountryCode().toUpperCase())
+      .set(COUPON.VALID_FROM, body.getValidFrom())
+      .set(COUPON.VALID_UNTIL, body.getValidUntil())
       .set(COUPON.VERSION, 1)
       .returningResult(COUPON.asterisk())
       .fetchOptional()
       .map(this::buildBasicCouponData);
   }
 
+  // the limit check and the increment are one atomic statement, concurrent redemptions cannot both take the last usage
+  @Transactional
+  public boolean incrementUsage(UUID couponId) {
+    return dslContext.update(COUPON)
+      .set(COUPON.CURRENT_USAGE, COUPON.CURRENT_USAGE.plus(1))
+      .where(COUPON.ID.eq(couponId))
+      .and(COUPON.CURRENT_USAGE.plus(COUPON.LEASED_USAGE).lt(COUPON.USAGE_LIMIT))
+      .execute() == 1;
+  }
+
+  @Transactional
+  public Optional<CouponLease> leaseUsage(UUID leaseId, String nodeId, String code, String countryCode, int blockSize, Duration duration) {
+    return dslContext.fetchOptional(LEASE_COUPON_USAGE_SQL, code.toUpperCase(), countryCode.toUpperCase(), blockSize, leaseId, nodeId, duration.toMillis())
+      .map(dbRecord -> new CouponLease(leaseId, dbRecord.get(0, UUID.class), dbRecord.get(1, String.class), dbRecord.get(2, Integer.class)))
+      .filter(lease -> lease.granted() > 0);
+  }
+
+  // A lease that expired and was reclaimed by another node already gave its units back, nothing is released twice.
+  @Transactional
+  public void releaseLeasedUsage(UUID leaseId, UUID couponId, int count) {
+    lockCouponCounters(couponId);
+    if (takeFromLease(leaseId, count)) {
+      dslContext.update(COUPON)
+        .set(COUPON.LEASED_USAGE, COUPON.LEASED_USAGE.minus(count))
+        .where(COUPON.ID.eq(couponId))
+        .execute();
+      deleteUsedUpLeases(Set.of(leaseId));
+    }
+  }
+
+  // One multi-row insert for the whole batch, rows hitting unique_coupon_usage are skipped. Counters are updated
+  // in coupon id order so flushes of different nodes cannot deadlock on coupon rows. Usages whose lease was already
+  // reclaimed are only counted if the coupon still has room for them, otherwise their rows are deleted again and
+  // returned as lease expired; usages of other leases and coupons in the batch are not affected.
+  @Transactional
+  public InsertedCouponUsages insertLeasedCouponUsages(List<NewCouponUsage> usages) {
+    var insert = dslContext.insertInto(COUPON_USAGE, COUPON_USAGE.ID, COUPON_USAGE.COUPON_ID, COUPON_USAGE.USER_ID, COUPON_USAGE.VERSION);
+    for (var usage : usages) {
+      insert = insert.values(usage.id(), usage.couponId(), usage.userId(), 1);
+    }
+    var inserted = insert.onConflictDoNothing()
+      .returningResult(COUPON_USAGE.ID)
+      .fetchSet(COUPON_USAGE.ID);
+
+    var insertedByCoupon = usages.stream()
+      .filter(usage -> inserted.contains(usage.id()))
+      .collect(Collectors.groupingBy(NewCouponUsage::couponId, TreeMap::new, Collectors.groupingBy(NewCouponUsage::leaseId, Collectors.toList())));
+    var leaseExpired = new HashSet<UUID>();
+    for (var coupon : insertedByCoupon.entrySet()) {
+      var room = lockCouponCounters(coupon.getKey());
+      long leased = 0;
+      long unleased = 0;
+      for (var lease : coupon.getValue().entrySet()) {
+        var count = lease.getValue().size();
+        if (takeFromLease(lease.getKey(), count)) {
+          leased += count;
+        } else if (unleased + count <= room) {
+          unleased += count;
+        } else {
+          lease.getValue().forEach(usage -> leaseExpired.add(usage.id()));
+        }
+      }
+      if (leased + unleased > 0) {
+        dslContext.update(COUPON)
+          .set(COUPON.CURRENT_USAGE, COUPON.CURRENT_USAGE.plus(leased + unleased))
+          .set(COUPON.LEASED_USAGE, COUPON.LEASED_USAGE.minus(leased))
+          .where(COUPON.ID.eq(coupon.getKey()))
+          .execute();
+        couponUsageStatistics.recordUsage(coupon.getKey(), leased + unleased);
+      }
+      deleteUsedUpLeases(coupon.getValue().keySet());
+    }
+    if (!leaseExpired.isEmpty()) {
+      dslContext.deleteFrom(COUPON_USAGE).where(COUPON_USAGE.ID.in(leaseExpired)).execute();
+      inserted.removeAll(leaseExpired);
+    }
+
+    return new InsertedCouponUsages(inserted, leaseExpired);
+  }
+
   @Transactional
   public void insertCouponUsage(UUID userId, UUID couponId) {
     dslContext.insertInto(COUPON_USAGE)
@@ -43,14 +243,109 @@ public class CouponWriteRepository {
       .set(COUPON_USAGE.USER_ID, userId)
       .set(COUPON.VERSION, 1)
       .execute();
+    couponUsageStatistics.recordUsage(couponId, 1);
+  }
+
+  @Transactional
+  public CouponRedemptionResult redeemCouponUsage(UUID userId, String code, String countryCode) {
+    var normalizedCountryCode = countryCode.toUpperCase();
+    var dbRecord = dslContext.fetchSingle(
+      REDEEM_COUPON_USAGE_SQL,
+      code.toUpperCase(), normalizedCountryCode, userId, UUID.randomUUID(), userId, normalizedCountryCode, userId
+    );
+    var result = CouponRedemptionResult.valueOf(dbRecord.get(1, String.class));
+    if (result == CouponRedemptionResult.REGISTERED) {
+      couponUsageStatistics.recordUsage(dbRecord.get(0, UUID.class), 1);
+    }
+    return result;
+  }
+
+  // staging table and writer belong to the current transaction, mergeCouponStaging has to run in the same one
+  @Transactional(propagation = Propagation.MANDATORY)
+  public CouponStagingWriter openCouponStaging() {
+    dslContext.execute(CREATE_COUPON_STAGING_SQL);
+    dslContext.truncate(DSL.table("coupon_staging")).execute();
+    return dslContext.connectionResult(connection -> new CouponStagingWriter(connection.unwrap(PGConnection.class), couponCodeFilter::put));
+  }
+
+  @Transactional(propagation = Propagation.MANDATORY)
+  public List<StagedCoupon> mergeCouponStaging() {
+    return dslContext.fetch(MERGE_COUPON_STAGING_SQL)
+      .map(dbRecord -> new StagedCoupon(dbRecord.get(0, Integer.class), dbRecord.get(1, String.class)));
+  }
+
+  // Deletes the usages of the given coupons and streams the deleted rows to output as csv with a header, in one
+  // statement. The rows are gone only once the surrounding transaction commits.
+  @Transactional(propagation = Propagation.MANDATORY)
+  public long moveCouponUsages(List<UUID> couponIds, OutputStream output) {
+    var delete = dslContext.deleteFrom(COUPON_USAGE)
+      .where(COUPON_USAGE.COUPON_ID.in(couponIds))
+      .returning(COUPON_USAGE.ID, COUPON_USAGE.COUPON_ID, COUPON_USAGE.USER_ID, COUPON_USAGE.CREATED_DATE_TIMESTAMP);
+    // COPY does not take bind values, the ids are uuids rendered as literals
+    var copySql = "COPY (" + dslContext.renderInlined(delete) + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+    return dslContext.connectionResult(connection -> connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copySql, output));
+  }
+
+  // Reserves the next count values of a code generator, or returns empty when fewer than count are left.
+  // Runs in its own short transaction, values of a failed generation are simply never used.
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public Optional<Long> reserveCodeSequence(String generatorKey, int count, long size) {
+    dslContext.insertInto(COUPON_CODE_SEQUENCE)
+      .set(COUPON_CODE_SEQUENCE.GENERATOR_KEY, generatorKey)
+      .set(COUPON_CODE_SEQUENCE.NEXT_VALUE, 0L)
+      .onConflictDoNothing()
+      .execute();
+    return dslContext.update(COUPON_CODE_SEQUENCE)
+      .set(COUPON_CODE_SEQUENCE.NEXT_VALUE, COUPON_CODE_SEQUENCE.NEXT_VALUE.plus(count))
+      .where(COUPON_CODE_SEQUENCE.GENERATOR_KEY.eq(generatorKey))
+      .and(COUPON_CODE_SEQUENCE.NEXT_VALUE.plus(count).le(size))
+      .returningResult(COUPON_CODE_SEQUENCE.NEXT_VALUE)
+      .fetchOptional()
+      .map(dbRecord -> dbRecord.value1() - count);
   }
 
+  public record StagedCoupon(int rowNumber, String code) {}
+
+  // the coupon row is locked before any of its lease rows, the order in which leases are granted and reclaimed
+  // returns the usages the coupon still has room for, neither redeemed nor leased
+  private int lockCouponCounters(UUID couponId) {
+    return dslContext.select(COUPON.USAGE_LIMIT.minus(COUPON.CURRENT_USAGE).minus(COUPON.LEASED_USAGE))
+      .from(COUPON)
+      .where(COUPON.ID.eq(couponId))
+      .forNoKeyUpdate()
+      .fetchOptional(0, Integer.class)
+      .orElse(0);
+  }
+
+  private boolean takeFromLease(UUID leaseId, int count) {
+    return dslContext.update(COUPON_LEASE)
+      .set(COUPON_LEASE.REMAINING, COUPON_LEASE.REMAINING.minus(count))
+      .where(COUPON_LEASE.ID.eq(leaseId))
+      .and(COUPON_LEASE.REMAINING.ge(count))
+      .execute() == 1;
+  }
+
+  private void deleteUsedUpLeases(Set<UUID> leaseIds) {
+    dslContext.deleteFrom(COUPON_LEASE)
+      .where(COUPON_LEASE.ID.in(leaseIds))
+      .and(COUPON_LEASE.REMAINING.eq(0))
+      .execute();
+  }
+
+  public record CouponLease(UUID leaseId, UUID couponId, String country, int granted) {}
+
+  public record NewCouponUsage(UUID id, UUID leaseId, UUID couponId, UUID userId) {}
+
+  public record InsertedCouponUsages(Set<UUID> inserted, Set<UUID> leaseExpired) {}
+
   private BasicCouponData buildBasicCouponData(Record dbRecord) {
     return new BasicCouponData()
       .id(dbRecord.getValue(COUPON.ID))
       .code(dbRecord.getValue(COUPON.CODE))
       .usageLimit(dbRecord.getValue(COUPON.USAGE_LIMIT))
       .countryCode(dbRecord.getValue(COUPON.COUNTRY))
-      .createDate(dbRecord.get(COUPON.CREATED_DATE_TIMESTAMP));
+      .createDate(dbRecord.get(COUPON.CREATED_DATE_TIMESTAMP))
+      .validFrom(dbRecord.get(COUPON.VALID_FROM))
+      .validUntil(dbRecord.get(COUPON.VALID_UNTIL));
   }
 }
@@ -0,0 +1,120 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// RFC 4180 records read one at a time: fields in double quotes may contain commas, line breaks and doubled quotes,
+// the quoting CouponStagingWriter produces. Records end with CRLF or LF. A quote inside an unquoted field, text after
+// a closing quote or an unterminated quoted field makes the whole body malformed, records after it cannot be told apart.
+final class CsvRecordReader implements Iterator<List<String>> {
+  private static final int EOF = -1;
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private final StringBuilder field = new StringBuilder();
+  private int position;
+  private int limit;
+  private int record;
+  private List<String> next;
+
+  CsvRecordReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = readRecord();
+    }
+    return next != null;
+  }
+
+  @Override
+  public List<String> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    var current = next;
+    next = null;
+    return current;
+  }
+
+  private List<String> readRecord() {
+    int c = read();
+    if (c == EOF) {
+      return null;
+    }
+    record++;
+    var fields = new ArrayList<String>();
+    while (true) {
+      field.setLength(0);
+      if (c == '"') {
+        c = readQuoted();
+      } else {
+        while (c != ',' && c != '\n' && c != '\r' && c != EOF) {
+          if (c == '"') {
+            throw malformed("quote inside an unquoted field");
+          }
+          field.append((char) c);
+          c = read();
+        }
+      }
+      fields.add(field.toString());
+      if (c == ',') {
+        c = read();
+        continue;
+      }
+      if (c == '\r' && (c = read()) != '\n' && c != EOF) {
+        throw malformed("carriage return without line feed");
+      }
+      return fields;
+    }
+  }
+
+  // returns the character following the closing quote
+  private int readQuoted() {
+    while (true) {
+      int c = read();
+      if (c == EOF) {
+        throw malformed("unterminated quoted field");
+      }
+      if (c == '"') {
+        c = read();
+        if (c != '"') {
+          if (c != ',' && c != '\n' && c != '\r' && c != EOF) {
+            throw malformed("text after a closing quote");
+          }
+          return c;
+        }
+      }
+      field.append((char) c);
+    }
+  }
+
+  private int read() {
+    if (position == limit) {
+      try {
+        limit = reader.read(buffer);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return EOF;
+      }
+    }
+    return buffer[position++];
+  }
+
+  private BadRequestException malformed(String reason) {
+    return new BadRequestException(String.format("Malformed csv record %s: %s", record, reason));
+  }
+}
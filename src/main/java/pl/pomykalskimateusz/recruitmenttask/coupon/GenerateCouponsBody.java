@@ -0,0 +1,16 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+// alphabet and length are optional and default to CouponCodeGenerator.DEFAULT_ALPHABET and DEFAULT_LENGTH
+public record GenerateCouponsBody(String prefix, String alphabet, Integer length, Integer count, String countryCode, Integer usageLimit) {
+  public String prefixOrEmpty() {
+    return prefix == null ? "" : prefix;
+  }
+
+  public String alphabetOrDefault() {
+    return alphabet == null || alphabet.isEmpty() ? CouponCodeGenerator.DEFAULT_ALPHABET : alphabet;
+  }
+
+  public int lengthOrDefault() {
+    return length == null ? CouponCodeGenerator.DEFAULT_LENGTH : length;
+  }
+}
@@ -0,0 +1,22 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+// Codes are not kept in memory: every batch is a range of generator values minus the rows that hit an existing code,
+// the codes are derived again while they are written out.
+public record GeneratedCoupons(int created, List<Batch> batches, LongFunction<String> codeOf) {
+  public record Batch(long start, int count, Set<Integer> skippedRows) {}
+
+  public void forEachCode(Consumer<String> consumer) {
+    for (var batch : batches) {
+      for (int row = 1; row <= batch.count(); row++) {
+        if (!batch.skippedRows().contains(row)) {
+          consumer.accept(codeOf.apply(batch.start() + row - 1));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// High-throughput mode for coupons with large usage limits. The node leases a block of quota into a coupon_lease row
+// (counted in coupon.leased_usage), serves redemptions from an in-memory striped counter and inserts usages through the
+// batching CouponUsageInsertPipeline. A redemption still waits for its own insert, so unique_coupon_usage is reported to
+// the caller and a conflicting unit goes back to the lease. Unused quota is released when a lease expires and on shutdown.
+// The row outlives the in-memory lease by the write timeout, once it expired any node leasing the coupon reclaims it,
+// so quota of a node that crashed comes back without manual steps.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "coupon.registration.mode", havingValue = "leased")
+public class LeasedCouponRedemption implements CouponRedemption {
+  private final CouponWriteRepository couponWriteRepository;
+  private final CouponReadRepository couponReadRepository;
+  private final CouponValidateService couponValidateService;
+  private final CouponUsageInsertPipeline couponUsageInsertPipeline;
+  private final DatabaseBulkhead databaseBulkhead;
+  private final int blockSize;
+  private final int stripes;
+  private final String nodeId;
+  private final long leaseDurationNanos;
+  private final Duration storedLeaseDuration;
+  private final long writeTimeoutNanos;
+  private final ConcurrentHashMap<String, CouponQuotaLease> leases = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ReentrantLock> renewLocks = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService reaper;
+
+  public LeasedCouponRedemption(
+    CouponWriteRepository couponWriteRepository,
+    CouponReadRepository couponReadRepository,
+    CouponValidateService couponValidateService,
+    CouponUsageInsertPipeline couponUsageInsertPipeline,
+    DatabaseBulkhead databaseBulkhead,
+    @Value("${coupon.registration.lease.block-size:100}") int blockSize,
+    @Value("${coupon.registration.lease.duration:30s}") Duration leaseDuration,
+    @Value("${coupon.registration.lease.write-timeout:5s}") Duration writeTimeout
+  ) {
+    this.couponWriteRepository = couponWriteRepository;
+    this.couponReadRepository = couponReadRepository;
+    this.couponValidateService = couponValidateService;
+    this.couponUsageInsertPipeline = couponUsageInsertPipeline;
+    this.databaseBulkhead = databaseBulkhead;
+    this.blockSize = blockSize;
+    this.stripes = Runtime.getRuntime().availableProcessors();
+    // pid@hostname, tells operators which node holds a lease
+    this.nodeId = ManagementFactory.getRuntimeMXBean().getName();
+    this.leaseDurationNanos = leaseDuration.toNanos();
+    this.storedLeaseDuration = leaseDuration.plus(writeTimeout);
+    this.writeTimeoutNanos = writeTimeout.toNanos();
+
+    var reapInterval = Math.min(leaseDurationNanos, TimeUnit.SECONDS.toNanos(1));
+    this.reaper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("coupon-lease-reaper").daemon().factory());
+    this.reaper.scheduleWithFixedDelay(this::releaseExpiredLeases, reapInterval, reapInterval, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void redeem(UUID userId, String code, String countryCode) {
+    var lease = acquire(userId, code, countryCode);
+    var submitted = couponUsageInsertPipeline.submit(lease.leaseId(), lease.couponId(), userId);
+    var inserted = submitted.whenComplete((result, error) -> {
+      if (error != null || !result) {
+        giveBack(lease);
+      }
+    });
+
+    try {
+      if (!awaitInsert(submitted, inserted)) {
+        throw couponValidateService.userUsageLimitExceeded(code, countryCode);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while registering coupon");
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(e.getCause());
+    }
+  }
+
+  // the unused quota goes back right away, the lease would otherwise keep serving the expired code until it times out
+  @Override
+  public void onCouponExpired(String codeNormalized) {
+    var lease = leases.get(codeNormalized);
+    if (lease != null) {
+      release(codeNormalized, lease);
+    }
+  }
+
+  // A usage still queued after the write timeout is withdrawn, the 503 then means it was not registered. One that is
+  // already part of a batch is waited for, so the caller gets the outcome of the statement that writes it.
+  private boolean awaitInsert(CompletableFuture<Boolean> submitted, CompletableFuture<Boolean> inserted) throws InterruptedException, ExecutionException {
+    try {
+      return inserted.get(writeTimeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      var timeout = new ServiceUnavailableException("Coupon registration is taking too long, try again later");
+      if (couponUsageInsertPipeline.withdraw(submitted, timeout)) {
+        throw timeout;
+      }
+      return inserted.get();
+    }
+  }
+
+  @PreDestroy
+  public void releaseLeases() {
+    reaper.shutdownNow();
+    leases.forEach((code, lease) -> release(code, lease));
+  }
+
+  private CouponQuotaLease acquire(UUID userId, String code, String countryCode) {
+    var key = code.toUpperCase();
+    while (true) {
+      var lease = leases.get(key);
+      if (lease != null && !lease.isExpired(System.nanoTime())) {
+        if (!countryCode.equalsIgnoreCase(lease.country())) {
+          throw couponValidateService.countryMismatch(code, countryCode);
+        }
+        if (lease.tryAcquire()) {
+          return lease;
+        }
+      }
+      renew(key, lease, userId, code, countryCode);
+    }
+  }
+
+  // one renewal per code at a time, callers that waited for it retry on the lease it installed
+  private void renew(String key, CouponQuotaLease exhausted, UUID userId, String code, String countryCode) {
+    var lock = renewLocks.computeIfAbsent(key, it -> new ReentrantLock());
+    lock.lock();
+    try {
+      if (leases.get(key) != exhausted) {
+        return;
+      }
+      var granted = databaseBulkhead.execute(() -> couponWriteRepository.leaseUsage(UUID.randomUUID(), nodeId, code, countryCode, blockSize, storedLeaseDuration));
+      if (granted.isEmpty()) {
+        // no quota left to lease or the coupon cannot be redeemed from this country, the regular checks tell which error applies
+        validateCouponUsage(userId, code, countryCode);
+        return;
+      }
+      var lease = new CouponQuotaLease(granted.get().leaseId(), granted.get().couponId(), granted.get().country(), granted.get().granted(), stripes, System.nanoTime() + leaseDurationNanos);
+      if (exhausted != null) {
+        release(key, exhausted);
+      }
+      leases.put(key, lease);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void validateCouponUsage(UUID userId, String code, String countryCode) {
+    var couponUsage = databaseBulkhead.execute(() -> couponReadRepository.findCouponUsageByCode(code, userId))
+      .orElseThrow(() -> new ResourceNotFoundException(String.format("Not found coupon code: %s", code)));
+    couponValidateService.validateCouponUsage(couponUsage, code, countryCode);
+  }
+
+  private void giveBack(CouponQuotaLease lease) {
+    if (!lease.giveBack()) {
+      releaseInDatabase(lease, 1);
+    }
+  }
+
+  private void releaseExpiredLeases() {
+    var now = System.nanoTime();
+    leases.forEach((code, lease) -> {
+      if (lease.isExpired(now)) {
+        release(code, lease);
+      }
+    });
+  }
+
+  private void release(String code, CouponQuotaLease lease) {
+    leases.remove(code, lease);
+    var unused = lease.drain();
+    if (unused > 0) {
+      releaseInDatabase(lease, unused);
+    }
+  }
+
+  private void releaseInDatabase(CouponQuotaLease lease, int count) {
+    try {
+      couponWriteRepository.releaseLeasedUsage(lease.leaseId(), lease.couponId(), count);
+    } catch (Exception e) {
+      // the units stay reserved until the lease row expires and is reclaimed
+      log.error("Could not release {} leased usages of coupon {}", count, lease.couponId(), e);
+    }
+  }
+}
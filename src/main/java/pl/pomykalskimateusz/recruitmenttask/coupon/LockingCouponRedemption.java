@@ -0,0 +1,50 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+import pl.pomykalskimateusz.recruitmenttask.utils.DistributedDatabaseLock;
+
+import java.util.UUID;
+
+@Service
+@ConditionalOnProperty(name = "coupon.registration.mode", havingValue = "locking", matchIfMissing = true)
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class LockingCouponRedemption implements CouponRedemption {
+  CouponWriteRepository couponWriteRepository;
+  CouponReadRepository couponReadRepository;
+  CouponValidateService couponValidateService;
+  TransactionTemplate transactionTemplate;
+  DatabaseBulkhead databaseBulkhead;
+  DistributedDatabaseLock distributedDatabaseLock;
+
+  @Override
+  public void redeem(UUID userId, String code, String countryCode) {
+    databaseBulkhead.run(() -> transactionTemplate.executeWithoutResult(status -> {
+      distributedDatabaseLock.lockCouponRegistration(code);
+
+      var couponId = fetchCouponUsageByCode(userId, code, countryCode).couponId();
+      if(!couponWriteRepository.incrementUsage(couponId)) {
+        throw couponValidateService.usageLimitExceeded(code);
+      }
+      couponWriteRepository.insertCouponUsage(userId, couponId);
+    }));
+  }
+
+  private CouponReadRepository.CouponUsageData fetchCouponUsageByCode(UUID userId, String code, String countryCode) {
+    var optionalCouponUsage = couponReadRepository.findCouponUsageByCode(code, userId);
+    if(optionalCouponUsage.isEmpty()) {
+      throw new ResourceNotFoundException(String.format("Not found coupon code: %s", code));
+    }
+
+    couponValidateService.validateCouponUsage(optionalCouponUsage.get(), code, countryCode);
+
+    return optionalCouponUsage.get();
+  }
+}
@@ -1,4 +1,7 @@
 package pl.pomykalskimateusz.recruitmenttask.exception;
 
 public class ConflictException extends RuntimeException {
+  public ConflictException(String message) {
+    super(message);
+  }
 }
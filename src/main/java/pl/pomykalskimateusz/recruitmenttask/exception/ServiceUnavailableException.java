@@ -0,0 +1,7 @@
+package pl.pomykalskimateusz.recruitmenttask.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+  public ServiceUnavailableException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,110 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Records shared by all nodes in the idempotency_key table, so a retry is answered whichever node it reaches. Costs
+// one upsert per request carrying a key and one update once it completes, requests without a key are not affected.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "idempotency.mode", havingValue = "database")
+public class DatabaseIdempotencyStore implements IdempotencyStore {
+  // The upsert only takes over an expired row, the previous row is read in the same snapshot. A key claimed by a
+  // concurrent transaction is invisible to that snapshot and comes back as neither claimed nor previous.
+  static String CLAIM_SQL = """
+    with previous as (
+      select fingerprint, status, body from idempotency_key where idempotency_key = ? and expires_at > ?
+    ), claimed as (
+      insert into idempotency_key as record (idempotency_key, fingerprint, expires_at)
+      values (?, ?, ?)
+      on conflict (idempotency_key) do update
+        set fingerprint = excluded.fingerprint, status = null, body = null, expires_at = excluded.expires_at
+        where record.expires_at <= ?
+      returning 1
+    )
+    select exists (select 1 from claimed), (select fingerprint from previous), (select status from previous), (select body from previous)
+    """;
+  static String COMPLETE_SQL = """
+    update idempotency_key set status = ?, body = ?, expires_at = ?
+    where idempotency_key = ? and fingerprint = ? and status is null
+    """;
+  static String RELEASE_SQL = "delete from idempotency_key where idempotency_key = ? and fingerprint = ? and status is null";
+  static String DELETE_EXPIRED_SQL = "delete from idempotency_key where expires_at <= ?";
+
+  private final DSLContext dslContext;
+  private final DatabaseBulkhead databaseBulkhead;
+  private final Duration ttl;
+  private final Duration inProgressTimeout;
+  private final ScheduledExecutorService cleaner;
+
+  public DatabaseIdempotencyStore(
+    DSLContext dslContext,
+    DatabaseBulkhead databaseBulkhead,
+    @Value("${idempotency.ttl:24h}") Duration ttl,
+    @Value("${idempotency.in-progress-timeout:30s}") Duration inProgressTimeout,
+    @Value("${idempotency.database.cleanup-interval:1m}") Duration cleanupInterval
+  ) {
+    this.dslContext = dslContext;
+    this.databaseBulkhead = databaseBulkhead;
+    this.ttl = ttl;
+    this.inProgressTimeout = inProgressTimeout;
+    this.cleaner = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("idempotency-key-cleaner").daemon().factory());
+    this.cleaner.scheduleWithFixedDelay(this::deleteExpiredKeys, cleanupInterval.toMillis(), cleanupInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Optional<IdempotencyRecord> claim(String key, String fingerprint) {
+    var now = LocalDateTime.now();
+    var result = databaseBulkhead.execute(() -> dslContext.fetchSingle(
+      CLAIM_SQL,
+      key, now, key, fingerprint, now.plus(inProgressTimeout), now
+    ));
+    if (result.get(0, Boolean.class)) {
+      return Optional.empty();
+    }
+    var previousFingerprint = result.get(1, String.class);
+    // claimed concurrently by another node, reported like any other request still in progress
+    return Optional.of(previousFingerprint == null
+      ? IdempotencyRecord.inProgress(fingerprint)
+      : new IdempotencyRecord(previousFingerprint, result.get(2, Integer.class), result.get(3, String.class)));
+  }
+
+  @Override
+  public void complete(String key, IdempotencyRecord record) {
+    databaseBulkhead.run(() -> dslContext.execute(
+      COMPLETE_SQL,
+      record.status(), record.body(), LocalDateTime.now().plus(ttl), key, record.fingerprint()
+    ));
+  }
+
+  @Override
+  public void release(String key, String fingerprint) {
+    databaseBulkhead.run(() -> dslContext.execute(RELEASE_SQL, key, fingerprint));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    cleaner.shutdownNow();
+  }
+
+  void deleteExpiredKeys() {
+    try {
+      var deleted = dslContext.execute(DELETE_EXPIRED_SQL, LocalDateTime.now());
+      log.debug("Deleted {} expired idempotency keys", deleted);
+    } catch (Exception e) {
+      log.warn("Could not delete expired idempotency keys", e);
+    }
+  }
+}
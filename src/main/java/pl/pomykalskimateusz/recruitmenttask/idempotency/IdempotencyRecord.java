@@ -0,0 +1,13 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+// Result of the first request sent with a key, without a status while that request is still running. The body is the
+// serialized response for a success and the error message otherwise.
+public record IdempotencyRecord(String fingerprint, Integer status, String body) {
+  public static IdempotencyRecord inProgress(String fingerprint) {
+    return new IdempotencyRecord(fingerprint, null, null);
+  }
+
+  public boolean isInProgress() {
+    return status == null;
+  }
+}
@@ -0,0 +1,143 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.exception.ConflictException;
+import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+// Runs a request at most once per Idempotency-Key. The first request claims the key, its success or rejection (400,
+// 404) is stored and returned to every retry with the same key and body without running anything again. Failures worth
+// retrying (429, 5xx) release the key instead. Keys are scoped per operation, the fingerprint of the request body tells
+// a retry from a different request reusing the key.
+@Slf4j
+@Service
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class IdempotencyService {
+  static int MAX_KEY_LENGTH = 255;
+
+  IdempotencyStore idempotencyStore;
+  ObjectMapper objectMapper;
+  MeterRegistry meterRegistry;
+
+  public <T> ResponseEntity<T> execute(String operation, String idempotencyKey, Object request, Class<T> responseType, Supplier<ResponseEntity<T>> action) {
+    if (idempotencyKey == null) {
+      return action.get();
+    }
+    if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+      throw new BadRequestException(String.format("Invalid idempotency key, expected 1 to %s characters", MAX_KEY_LENGTH));
+    }
+    var key = operation + ":" + idempotencyKey;
+    var fingerprint = fingerprint(request);
+
+    var previous = idempotencyStore.claim(key, fingerprint);
+    if (previous.isPresent()) {
+      return replay(operation, previous.get(), fingerprint, responseType);
+    }
+    count(operation, "executed");
+
+    ResponseEntity<T> response;
+    try {
+      response = action.get();
+    } catch (BadRequestException e) {
+      complete(key, () -> new IdempotencyRecord(fingerprint, HttpStatus.BAD_REQUEST.value(), e.getMessage()));
+      throw e;
+    } catch (ResourceNotFoundException e) {
+      complete(key, () -> new IdempotencyRecord(fingerprint, HttpStatus.NOT_FOUND.value(), e.getMessage()));
+      throw e;
+    } catch (RuntimeException e) {
+      release(key, fingerprint);
+      throw e;
+    }
+
+    if (response.getStatusCode().is2xxSuccessful()) {
+      complete(key, () -> new IdempotencyRecord(fingerprint, response.getStatusCode().value(), serialize(response.getBody())));
+    } else {
+      release(key, fingerprint);
+    }
+    return response;
+  }
+
+  private <T> ResponseEntity<T> replay(String operation, IdempotencyRecord record, String fingerprint, Class<T> responseType) {
+    if (!record.fingerprint().equals(fingerprint)) {
+      count(operation, "mismatch");
+      throw new ConflictException("Idempotency key was already used with a different request");
+    }
+    if (record.isInProgress()) {
+      count(operation, "in_progress");
+      throw new ConflictException("Request with this idempotency key is still in progress, try again later");
+    }
+    count(operation, "replayed");
+    return switch (record.status()) {
+      case 400 -> throw new BadRequestException(record.body());
+      case 404 -> throw new ResourceNotFoundException(record.body());
+      default -> ResponseEntity.status(record.status()).body(deserialize(record.body(), responseType));
+    };
+  }
+
+  // The request has already run, a store failure here must not turn its result into an error. The claim then expires
+  // after idempotency.in-progress-timeout and a retry runs the request again.
+  private void complete(String key, Supplier<IdempotencyRecord> record) {
+    try {
+      idempotencyStore.complete(key, record.get());
+    } catch (Exception e) {
+      log.warn("Could not store result of idempotency key {}", key, e);
+    }
+  }
+
+  private void release(String key, String fingerprint) {
+    try {
+      idempotencyStore.release(key, fingerprint);
+    } catch (Exception e) {
+      log.warn("Could not release idempotency key {}", key, e);
+    }
+  }
+
+  private void count(String operation, String result) {
+    meterRegistry.counter("idempotency.requests", "operation", operation, "result", result).increment();
+  }
+
+  // first 128 bits of sha-256, enough to tell requests sharing a key apart
+  private String fingerprint(Object request) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String serialize(Object body) {
+    try {
+      return body == null ? null : objectMapper.writeValueAsString(body);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private <T> T deserialize(String body, Class<T> responseType) {
+    try {
+      return body == null ? null : objectMapper.readValue(body, responseType);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
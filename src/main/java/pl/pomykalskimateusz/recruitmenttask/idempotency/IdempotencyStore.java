@@ -0,0 +1,15 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+import java.util.Optional;
+
+public interface IdempotencyStore {
+  // Claims the key for a new request. Returns empty when the caller owns the key now, otherwise the record of the
+  // request that claimed it first. An in-progress claim expires after idempotency.in-progress-timeout.
+  Optional<IdempotencyRecord> claim(String key, String fingerprint);
+
+  // Stores the result of the owned claim for idempotency.ttl.
+  void complete(String key, IdempotencyRecord record);
+
+  // Gives up the owned claim after a failure worth retrying, the next request with the key runs again.
+  void release(String key, String fingerprint);
+}
@@ -0,0 +1,75 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Per-node records in a bounded Caffeine cache, a retry reaching another node runs the request again. Responses are
+// kept small (a status and the serialized body), so maximum-keys bounds the memory rather than the ttl.
+@Service
+@ConditionalOnProperty(name = "idempotency.mode", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+  private final Cache<String, IdempotencyRecord> records;
+
+  @Autowired
+  public InMemoryIdempotencyStore(
+    @Value("${idempotency.memory.maximum-keys:100000}") long maximumKeys,
+    @Value("${idempotency.ttl:24h}") Duration ttl,
+    @Value("${idempotency.in-progress-timeout:30s}") Duration inProgressTimeout
+  ) {
+    this(maximumKeys, ttl, inProgressTimeout, Ticker.systemTicker());
+  }
+
+  InMemoryIdempotencyStore(long maximumKeys, Duration ttl, Duration inProgressTimeout, Ticker ticker) {
+    this.records = Caffeine.newBuilder()
+      .maximumSize(maximumKeys)
+      .expireAfter(new RecordExpiry(ttl.toNanos(), inProgressTimeout.toNanos()))
+      .ticker(ticker)
+      .build();
+  }
+
+  @Override
+  public Optional<IdempotencyRecord> claim(String key, String fingerprint) {
+    return Optional.ofNullable(records.asMap().putIfAbsent(key, IdempotencyRecord.inProgress(fingerprint)));
+  }
+
+  // a claim that expired in the meantime may belong to another request by now, which must keep it
+  @Override
+  public void complete(String key, IdempotencyRecord record) {
+    records.asMap().computeIfPresent(key, (it, current) -> isClaimOf(current, record.fingerprint()) ? record : current);
+  }
+
+  @Override
+  public void release(String key, String fingerprint) {
+    records.asMap().computeIfPresent(key, (it, current) -> isClaimOf(current, fingerprint) ? null : current);
+  }
+
+  private static boolean isClaimOf(IdempotencyRecord current, String fingerprint) {
+    return current.isInProgress() && current.fingerprint().equals(fingerprint);
+  }
+
+  private record RecordExpiry(long ttlNanos, long inProgressTimeoutNanos) implements Expiry<String, IdempotencyRecord> {
+    @Override
+    public long expireAfterCreate(String key, IdempotencyRecord record, long currentTime) {
+      return record.isInProgress() ? inProgressTimeoutNanos : ttlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, IdempotencyRecord record, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, record, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, IdempotencyRecord record, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
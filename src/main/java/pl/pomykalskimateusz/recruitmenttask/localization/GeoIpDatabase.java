@@ -0,0 +1,128 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+/*
+ * Read-only view over a memory-mapped ip-range table, layout (big-endian):
+ *   magic "GEOIPDB1" | int ipv4Count | int ipv6Count
+ *   ipv4Count x (int start, int end, 2 bytes country)
+ *   ipv6Count x (long startHigh, long startLow, long endHigh, long endLow, 2 bytes country)
+ * Ranges of each family are sorted by start address and do not overlap.
+ */
+public final class GeoIpDatabase {
+  static final byte[] MAGIC = "GEOIPDB1".getBytes(StandardCharsets.US_ASCII);
+  static final int HEADER_SIZE = MAGIC.length + 2 * Integer.BYTES;
+  static final int IPV4_ENTRY_SIZE = 2 * Integer.BYTES + 2;
+  static final int IPV6_ENTRY_SIZE = 4 * Long.BYTES + 2;
+
+  private final ByteBuffer buffer;
+  private final int ipv4Count;
+  private final int ipv6Count;
+  private final int ipv6Offset;
+
+  private GeoIpDatabase(ByteBuffer buffer) {
+    if (buffer.capacity() < HEADER_SIZE) {
+      throw new IllegalArgumentException("Invalid geoip database file: unexpected size " + buffer.capacity());
+    }
+    var magic = new byte[MAGIC.length];
+    buffer.get(0, magic);
+    if (!Arrays.equals(MAGIC, magic)) {
+      throw new IllegalArgumentException("Invalid geoip database file: unknown header");
+    }
+    this.buffer = buffer;
+    this.ipv4Count = buffer.getInt(MAGIC.length);
+    this.ipv6Count = buffer.getInt(MAGIC.length + Integer.BYTES);
+    var expectedSize = HEADER_SIZE + (long) ipv4Count * IPV4_ENTRY_SIZE + (long) ipv6Count * IPV6_ENTRY_SIZE;
+    if (ipv4Count < 0 || ipv6Count < 0 || buffer.capacity() != expectedSize) {
+      throw new IllegalArgumentException("Invalid geoip database file: unexpected size " + buffer.capacity());
+    }
+    this.ipv6Offset = HEADER_SIZE + ipv4Count * IPV4_ENTRY_SIZE;
+  }
+
+  public static GeoIpDatabase open(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed and is released together with the buffer
+      return new GeoIpDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public int size() {
+    return ipv4Count + ipv6Count;
+  }
+
+  public Optional<String> findCountryCode(InetAddress address) {
+    var bytes = ByteBuffer.wrap(address.getAddress());
+    return address instanceof Inet4Address
+      ? findIpv4(bytes.getInt(0))
+      : findIpv6(bytes.getLong(0), bytes.getLong(Long.BYTES));
+  }
+
+  private Optional<String> findIpv4(int address) {
+    int low = 0;
+    int high = ipv4Count - 1;
+    int candidate = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (Integer.compareUnsigned(buffer.getInt(ipv4Entry(middle)), address) <= 0) {
+        candidate = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    if (candidate < 0 || Integer.compareUnsigned(address, buffer.getInt(ipv4Entry(candidate) + Integer.BYTES)) > 0) {
+      return Optional.empty();
+    }
+    return Optional.of(readCountry(ipv4Entry(candidate) + 2 * Integer.BYTES));
+  }
+
+  private Optional<String> findIpv6(long high, long low) {
+    int from = 0;
+    int to = ipv6Count - 1;
+    int candidate = -1;
+    while (from <= to) {
+      int middle = (from + to) >>> 1;
+      int entry = ipv6Entry(middle);
+      if (compareIpv6(buffer.getLong(entry), buffer.getLong(entry + Long.BYTES), high, low) <= 0) {
+        candidate = middle;
+        from = middle + 1;
+      } else {
+        to = middle - 1;
+      }
+    }
+    if (candidate < 0) {
+      return Optional.empty();
+    }
+    int entry = ipv6Entry(candidate);
+    if (compareIpv6(high, low, buffer.getLong(entry + 2 * Long.BYTES), buffer.getLong(entry + 3 * Long.BYTES)) > 0) {
+      return Optional.empty();
+    }
+    return Optional.of(readCountry(entry + 4 * Long.BYTES));
+  }
+
+  static int compareIpv6(long firstHigh, long firstLow, long secondHigh, long secondLow) {
+    int result = Long.compareUnsigned(firstHigh, secondHigh);
+    return result != 0 ? result : Long.compareUnsigned(firstLow, secondLow);
+  }
+
+  private int ipv4Entry(int index) {
+    return HEADER_SIZE + index * IPV4_ENTRY_SIZE;
+  }
+
+  private int ipv6Entry(int index) {
+    return ipv6Offset + index * IPV6_ENTRY_SIZE;
+  }
+
+  private String readCountry(int offset) {
+    return new String(new char[] {(char) buffer.get(offset), (char) buffer.get(offset + 1)});
+  }
+}
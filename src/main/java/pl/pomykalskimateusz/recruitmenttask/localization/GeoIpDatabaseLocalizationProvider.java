@@ -0,0 +1,68 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.utils.IpAddressLiteral;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "localization.provider", havingValue = "geoip-database")
+public class GeoIpDatabaseLocalizationProvider implements LocalizationProvider {
+  private final Path path;
+  private final ScheduledExecutorService reloader;
+  private volatile GeoIpDatabase database;
+  private volatile FileTime loadedModificationTime;
+
+  public GeoIpDatabaseLocalizationProvider(
+    @Value("${localization.geoip-database.path}") Path path,
+    @Value("${localization.geoip-database.refresh-interval:1m}") Duration refreshInterval
+  ) throws IOException {
+    this.path = path;
+    this.loadedModificationTime = Files.getLastModifiedTime(path);
+    this.database = GeoIpDatabase.open(path);
+    log.info("Loaded geoip database {} with {} ranges", path, database.size());
+
+    this.reloader = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("geoip-database-reloader").daemon().factory());
+    this.reloader.scheduleWithFixedDelay(this::reloadIfModified, refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Optional<String> findCountryCode(String ipAddress) {
+    // InetAddress.getByName would resolve host names, which must never happen for a header-provided value
+    return IpAddressLiteral.parse(ipAddress).flatMap(database::findCountryCode);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    reloader.shutdownNow();
+  }
+
+  private void reloadIfModified() {
+    try {
+      var modificationTime = Files.getLastModifiedTime(path);
+      if (modificationTime.equals(loadedModificationTime)) {
+        return;
+      }
+      // lookups keep using the previous mapping until the new one is fully opened and validated
+      var reloaded = GeoIpDatabase.open(path);
+      database = reloaded;
+      loadedModificationTime = modificationTime;
+      log.info("Reloaded geoip database {} with {} ranges", path, reloaded.size());
+    } catch (Exception e) {
+      log.warn("Could not reload geoip database {}, keeping the previous one", path, e);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Converts a "start_ip,end_ip,country_code" csv (e.g. the db-ip lite export) into the binary layout read by GeoIpDatabase
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class GeoIpDatabaseWriter {
+  public record IpRange(InetAddress start, InetAddress end, String countryCode) {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: GeoIpDatabaseWriter <input.csv> <output.bin>");
+    }
+    try (var lines = Files.lines(Path.of(args[0]))) {
+      write(Path.of(args[1]), lines.filter(line -> !line.isBlank()).map(GeoIpDatabaseWriter::parseLine).toList());
+    }
+  }
+
+  public static void write(Path target, List<IpRange> ranges) throws IOException {
+    var ipv4Ranges = new ArrayList<byte[][]>();
+    var ipv6Ranges = new ArrayList<byte[][]>();
+    for (var range : ranges) {
+      var entry = new byte[][] {toIpv6Bytes(range.start()), toIpv6Bytes(range.end()), range.countryCode().toUpperCase().getBytes()};
+      if (range.start() instanceof Inet4Address && range.end() instanceof Inet4Address) {
+        ipv4Ranges.add(new byte[][] {range.start().getAddress(), range.end().getAddress(), entry[2]});
+      } else {
+        ipv6Ranges.add(entry);
+      }
+    }
+    Comparator<byte[][]> byStart = (first, second) -> Arrays.compareUnsigned(first[0], second[0]);
+    ipv4Ranges.sort(byStart);
+    ipv6Ranges.sort(byStart);
+
+    // written next to the target and moved atomically, so a watching provider never maps a half-written file
+    var temporary = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+    try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      output.write(GeoIpDatabase.MAGIC);
+      output.writeInt(ipv4Ranges.size());
+      output.writeInt(ipv6Ranges.size());
+      for (var range : ipv4Ranges) {
+        writeEntry(output, range);
+      }
+      for (var range : ipv6Ranges) {
+        writeEntry(output, range);
+      }
+    }
+    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeEntry(DataOutputStream output, byte[][] range) throws IOException {
+    if (range[2].length != 2) {
+      throw new IllegalArgumentException("Invalid country code: " + new String(range[2]));
+    }
+    output.write(range[0]);
+    output.write(range[1]);
+    output.write(range[2]);
+  }
+
+  private static byte[] toIpv6Bytes(InetAddress address) {
+    if (address instanceof Inet4Address) {
+      // ipv4-mapped form (::ffff:a.b.c.d), only used for ranges mixing both families
+      return ByteBuffer.allocate(16).putShort(10, (short) 0xffff).put(12, address.getAddress()).array();
+    }
+    return address.getAddress();
+  }
+
+  private static IpRange parseLine(String line) {
+    var columns = line.replace("\"", "").split(",");
+    try {
+      return new IpRange(InetAddress.getByName(columns[0].trim()), InetAddress.getByName(columns[1].trim()), columns[2].trim());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid ip range line: " + line, e);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+@ConditionalOnProperty(name = "localization.provider", havingValue = "http", matchIfMissing = true)
+public class HttpLocalizationProvider implements LocalizationProvider {
+  private final HttpClient httpClient;
+  private final ObjectMapper objectMapper;
+  private final MeterRegistry meterRegistry;
+  private final Endpoint primary;
+  private final Endpoint hedge;
+  private final Duration timeout;
+  private final Duration hedgeDelay;
+
+  // countryCodeField is the json field holding the code, so the hedge may point at a provider with a different response
+  private record Endpoint(String name, String urlTemplate, String countryCodeField) {}
+
+  public HttpLocalizationProvider(
+    ObjectMapper objectMapper,
+    MeterRegistry meterRegistry,
+    @Value("${localization.http.url-template:http://ip-api.com/json/%s?fields=countryCode}") String urlTemplate,
+    @Value("${localization.http.connect-timeout:500ms}") Duration connectTimeout,
+    @Value("${localization.http.timeout:1s}") Duration timeout,
+    @Value("${localization.http.hedge.url-template:}") String hedgeUrlTemplate,
+    @Value("${localization.http.hedge.country-code-field:countryCode}") String hedgeCountryCodeField,
+    @Value("${localization.http.hedge.delay:200ms}") Duration hedgeDelay,
+    @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled
+  ) {
+    this.objectMapper = objectMapper;
+    this.meterRegistry = meterRegistry;
+    this.primary = new Endpoint("primary", urlTemplate, "countryCode");
+    this.hedge = hedgeUrlTemplate.isBlank() ? null : new Endpoint("hedge", hedgeUrlTemplate, hedgeCountryCodeField);
+    this.timeout = timeout;
+    this.hedgeDelay = hedgeDelay;
+    this.httpClient = buildHttpClient(connectTimeout, virtualThreadsEnabled);
+  }
+
+  // timeout is the budget of the whole lookup, a hedged request only gets what is left of it
+  @Override
+  public Optional<String> findCountryCode(String ipAddress) throws Exception {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    var lookup = hedge == null ? send(primary, ipAddress, timeout) : hedged(ipAddress, deadline);
+    try {
+      return lookup.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception cause ? cause : e;
+    } finally {
+      lookup.cancel(true);
+    }
+  }
+
+  // The hedge is sent once the primary has not answered within hedgeDelay, or right away when the primary fails sooner.
+  // The first answer wins, the lookup fails only when both requests fail.
+  private CompletableFuture<Optional<String>> hedged(String ipAddress, long deadline) {
+    var result = new CompletableFuture<Optional<String>>();
+    var pendingAttempts = new AtomicInteger(2);
+    var hedgeSent = new AtomicBoolean();
+    Runnable sendHedge = () -> {
+      if (!result.isDone() && hedgeSent.compareAndSet(false, true)) {
+        var remaining = Duration.ofNanos(Math.max(1, deadline - System.nanoTime()));
+        complete(result, send(hedge, ipAddress, remaining), pendingAttempts);
+      }
+    };
+
+    var primaryAttempt = send(primary, ipAddress, timeout);
+    complete(result, primaryAttempt, pendingAttempts);
+    primaryAttempt.whenComplete((countryCode, failure) -> {
+      if (failure != null) {
+        sendHedge.run();
+      }
+    });
+    CompletableFuture.delayedExecutor(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS).execute(sendHedge);
+    return result;
+  }
+
+  private void complete(CompletableFuture<Optional<String>> result, CompletableFuture<Optional<String>> attempt, AtomicInteger pendingAttempts) {
+    attempt.whenComplete((countryCode, failure) -> {
+      if (failure == null) {
+        result.complete(countryCode);
+      } else if (pendingAttempts.decrementAndGet() == 0) {
+        result.completeExceptionally(failure);
+      }
+    });
+    // the losing request is cancelled, which closes its exchange instead of waiting for the response
+    result.whenComplete((countryCode, failure) -> attempt.cancel(true));
+  }
+
+  private CompletableFuture<Optional<String>> send(Endpoint endpoint, String ipAddress, Duration attemptTimeout) {
+    var request = HttpRequest.newBuilder(URI.create(String.format(endpoint.urlTemplate(), ipAddress)))
+      .timeout(attemptTimeout)
+      .GET()
+      .build();
+    meterRegistry.counter("localization.http.requests", "endpoint", endpoint.name()).increment();
+    var exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    var countryCode = exchange.thenApply(response -> parse(endpoint, response));
+    // cancelling a dependent stage does not reach the exchange by itself
+    countryCode.whenComplete((it, failure) -> {
+      if (failure instanceof CancellationException) {
+        exchange.cancel(true);
+      }
+    });
+    return countryCode;
+  }
+
+  private Optional<String> parse(Endpoint endpoint, HttpResponse<byte[]> response) {
+    if (response.statusCode() != 200) {
+      throw new UnexpectedResponseException(endpoint.name() + " responded with status " + response.statusCode());
+    }
+    try {
+      var countryCode = objectMapper.readTree(response.body()).path(endpoint.countryCodeField()).asText("");
+      return countryCode.isBlank() ? Optional.empty() : Optional.of(countryCode);
+    } catch (IOException e) {
+      throw new UnexpectedResponseException(endpoint.name() + " responded with malformed json");
+    }
+  }
+
+  // java.net.http.HttpClient keeps idle HTTP/1.1 connections alive in its own pool (jdk.httpclient.keepalive.timeout)
+  // and blocks on j.u.c. locks only, so a virtual thread waiting for ip-api unmounts from its carrier
+  private static HttpClient buildHttpClient(Duration connectTimeout, boolean virtualThreadsEnabled) {
+    var builder = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(connectTimeout);
+    if (virtualThreadsEnabled) {
+      builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+    return builder.build();
+  }
+
+  static class UnexpectedResponseException extends RuntimeException {
+    UnexpectedResponseException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import java.util.Optional;
+
+public interface LocalizationProvider {
+  Optional<String> findCountryCode(String ipAddress) throws Exception;
+}
@@ -1,30 +1,147 @@
 package pl.pomykalskimateusz.recruitmenttask.localization;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import pl.pomykalskimateusz.recruitmenttask.utils.ThrowableSupplier;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+import pl.pomykalskimateusz.recruitmenttask.utils.AsyncCacheLoader;
+import pl.pomykalskimateusz.recruitmenttask.utils.CircuitBreaker;
 
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+@Slf4j
 @Service
 public class LocalizationService {
-  private final RestTemplate restTemplate = new RestTemplate();
+  private final LocalizationProvider localizationProvider;
+  private final AsyncCache<String, Optional<String>> countryCodeCache;
+  private final CircuitBreaker circuitBreaker;
+  private final MeterRegistry meterRegistry;
+  private final String providerName;
 
-  private record LocalizationData(String countryCode) {}
+  @Autowired
+  public LocalizationService(
+    LocalizationProvider localizationProvider,
+    MeterRegistry meterRegistry,
+    @Value("${localization.cache.maximum-size:100000}") long maximumSize,
+    @Value("${localization.cache.ttl:1h}") Duration ttl,
+    @Value("${localization.cache.negative-ttl:30s}") Duration negativeTtl,
+    @Value("${localization.circuit-breaker.failure-threshold:5}") int failureThreshold,
+    @Value("${localization.circuit-breaker.open-duration:30s}") Duration openDuration
+  ) {
+    this(localizationProvider, meterRegistry, maximumSize, ttl, negativeTtl, failureThreshold, openDuration, Ticker.systemTicker());
+  }
+
+  LocalizationService(
+    LocalizationProvider localizationProvider,
+    MeterRegistry meterRegistry,
+    long maximumSize,
+    Duration ttl,
+    Duration negativeTtl,
+    int failureThreshold,
+    Duration openDuration,
+    Ticker ticker
+  ) {
+    this.localizationProvider = localizationProvider;
+    this.circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+    this.meterRegistry = meterRegistry;
+    this.providerName = localizationProvider.getClass().getSimpleName();
+    this.countryCodeCache = Caffeine.newBuilder()
+      .maximumSize(maximumSize)
+      .expireAfter(new CountryCodeExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+      .ticker(ticker)
+      .recordStats()
+      .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, countryCodeCache, "country_code");
+    meterRegistry.gauge("localization.circuit.open", circuitBreaker, it -> it.state() == CircuitBreaker.State.CLOSED ? 0 : 1);
+  }
 
   public Optional<String> getCountryCodeByIp(String ipAddress) {
-    return ThrowableSupplier.of(() -> executeRequest(ipAddress));
+    // a missing ip is looked up once, concurrent callers for the same ip wait for that lookup
+    return AsyncCacheLoader.get(countryCodeCache, ipAddress, this::findCountryCode);
+  }
+
+  // Only cache misses reach the provider, so this is the latency of the provider itself. A failed lookup is not cached
+  // and ends the registration with 503, an unknown ip is a cached Optional.empty().
+  private Optional<String> findCountryCode(String ipAddress) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      recordFailure("circuit_open");
+      throw new ServiceUnavailableException("Geolocation provider is unavailable, try again later");
+    }
+    var start = System.nanoTime();
+    var result = "error";
+    try {
+      var countryCode = localizationProvider.findCountryCode(ipAddress);
+      circuitBreaker.onSuccess();
+      result = countryCode.isPresent() ? "found" : "not_found";
+      return countryCode;
+    } catch (Exception e) {
+      circuitBreaker.onFailure();
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      var cause = failureCause(e);
+      recordFailure(cause);
+      log.warn("Geolocation lookup failed ({}): {}", cause, e.toString());
+      throw new ServiceUnavailableException("Geolocation provider is unavailable, try again later");
+    } finally {
+      Timer.builder("localization.lookup")
+        .tag("provider", providerName)
+        .tag("result", result)
+        .publishPercentileHistogram()
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
   }
 
-  private Optional<String> executeRequest(String ipAddress) {
-    var localizationData = restTemplate.getForObject(buildUrl(ipAddress), LocalizationData.class);
+  private void recordFailure(String cause) {
+    meterRegistry.counter("localization.failures", "provider", providerName, "cause", cause).increment();
+  }
 
-    return Optional
-      .ofNullable(localizationData)
-      .map(it -> it.countryCode);
+  // HttpConnectTimeoutException is an HttpTimeoutException, so a connect timeout is reported as a timeout
+  private static String failureCause(Exception e) {
+    if (e instanceof TimeoutException || e instanceof HttpTimeoutException) {
+      return "timeout";
+    }
+    if (e instanceof ConnectException) {
+      return "connect";
+    }
+    if (e instanceof HttpLocalizationProvider.UnexpectedResponseException) {
+      return "response";
+    }
+    if (e instanceof IOException) {
+      return "io";
+    }
+    return e instanceof InterruptedException ? "interrupted" : "other";
   }
 
-  private String buildUrl(String ipAddress) {
-    return String.format("http://ip-api.com/json/%s?fields=countryCode", ipAddress);
+  private record CountryCodeExpiry(long ttlNanos, long negativeTtlNanos) implements Expiry<String, Optional<String>> {
+    @Override
+    public long expireAfterCreate(String ipAddress, Optional<String> countryCode, long currentTime) {
+      return countryCode.isPresent() ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(String ipAddress, Optional<String> countryCode, long currentTime, long currentDuration) {
+      return expireAfterCreate(ipAddress, countryCode, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String ipAddress, Optional<String> countryCode, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
   }
 }
@@ -0,0 +1,87 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Buckets shared by all nodes in the (unlogged) rate_limit_bucket table, one upsert per request. Costs a pooled
+// connection for every limited request, so it is only worth it when clients are spread over many nodes.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "rate-limit.mode", havingValue = "database")
+public class DatabaseRateLimiter implements RateLimiter {
+  // The conditional upsert takes the token, the previous value is read in the same snapshot to tell how long to wait.
+  // Times are epoch microseconds of the node clock, so skew between nodes shifts buckets by at most that much.
+  static String ACQUIRE_SQL = """
+    with previous as (
+      select theoretical_arrival from rate_limit_bucket where bucket_key = ?
+    ), acquired as (
+      insert into rate_limit_bucket as bucket (bucket_key, theoretical_arrival)
+      values (?, ? + ?)
+      on conflict (bucket_key) do update
+        set theoretical_arrival = greatest(bucket.theoretical_arrival, ?) + ?
+        where greatest(bucket.theoretical_arrival, ?) + ? - ? <= ?
+      returning theoretical_arrival
+    )
+    select (select theoretical_arrival from acquired), (select theoretical_arrival from previous)
+    """;
+  static String DELETE_REFILLED_SQL = "delete from rate_limit_bucket where theoretical_arrival < ?";
+
+  private final DSLContext dslContext;
+  private final DatabaseBulkhead databaseBulkhead;
+  private final ScheduledExecutorService cleaner;
+
+  public DatabaseRateLimiter(
+    DSLContext dslContext,
+    DatabaseBulkhead databaseBulkhead,
+    @Value("${rate-limit.database.cleanup-interval:1m}") Duration cleanupInterval
+  ) {
+    this.dslContext = dslContext;
+    this.databaseBulkhead = databaseBulkhead;
+    this.cleaner = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("rate-limit-bucket-cleaner").daemon().factory());
+    this.cleaner.scheduleWithFixedDelay(this::deleteRefilledBuckets, cleanupInterval.toMillis(), cleanupInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public long tryAcquire(String key, RateLimit limit) {
+    var now = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    var interval = TimeUnit.NANOSECONDS.toMicros(limit.emissionIntervalNanos());
+    var burst = TimeUnit.NANOSECONDS.toMicros(limit.burstNanos());
+    var result = databaseBulkhead.execute(() -> dslContext.fetchOne(
+      ACQUIRE_SQL,
+      key, key, now, interval, now, interval, now, interval, now, burst
+    ));
+    if (result.get(0) != null) {
+      return 0;
+    }
+    var previous = result.get(1, Long.class);
+    var wait = Math.max(previous == null ? now : previous, now) + interval - now - burst;
+    return TimeUnit.MICROSECONDS.toNanos(Math.max(wait, 1));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    cleaner.shutdownNow();
+  }
+
+  // a bucket whose theoretical arrival time has passed is full again, exactly like a missing one
+  void deleteRefilledBuckets() {
+    try {
+      var deleted = dslContext.execute(DELETE_REFILLED_SQL, ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now()));
+      log.debug("Deleted {} refilled rate limit buckets", deleted);
+    } catch (Exception e) {
+      log.warn("Could not delete refilled rate limit buckets", e);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Per-node buckets, each one a single AtomicLong updated with compare-and-set, kept in a bounded Caffeine cache
+// (itself striped) so a flood of distinct keys cannot exhaust memory. A bucket idle for longer than it takes to
+// refill is the same as a missing one, so idle-timeout should stay above capacity / refill-per-second.
+@Service
+@ConditionalOnProperty(name = "rate-limit.mode", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimiter implements RateLimiter {
+  private final Cache<String, AtomicLong> buckets;
+  private final LongSupplier nanoTime;
+
+  @Autowired
+  public InMemoryRateLimiter(
+    @Value("${rate-limit.memory.maximum-keys:100000}") long maximumKeys,
+    @Value("${rate-limit.memory.idle-timeout:10m}") Duration idleTimeout
+  ) {
+    this(maximumKeys, idleTimeout, System::nanoTime);
+  }
+
+  InMemoryRateLimiter(long maximumKeys, Duration idleTimeout, LongSupplier nanoTime) {
+    this.buckets = Caffeine.newBuilder()
+      .maximumSize(maximumKeys)
+      .expireAfterAccess(idleTimeout)
+      .build();
+    this.nanoTime = nanoTime;
+  }
+
+  @Override
+  public long tryAcquire(String key, RateLimit limit) {
+    var bucket = buckets.get(key, it -> new AtomicLong(Long.MIN_VALUE));
+    while (true) {
+      var now = nanoTime.getAsLong();
+      var theoreticalArrival = bucket.get();
+      var next = Math.max(theoreticalArrival, now) + limit.emissionIntervalNanos();
+      var wait = next - now - limit.burstNanos();
+      if (wait > 0) {
+        return wait;
+      }
+      if (bucket.compareAndSet(theoreticalArrival, next)) {
+        return 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+// Token bucket holding up to capacity tokens and refilled with one token every emissionInterval, expressed in the
+// GCRA form used by the limiters: a single "theoretical arrival time" per key instead of a token count and a timestamp.
+public record RateLimit(long emissionIntervalNanos, long burstNanos) {
+  public static RateLimit of(int capacity, double refillPerSecond) {
+    if (capacity < 1 || refillPerSecond <= 0) {
+      throw new IllegalArgumentException("Invalid rate limit: " + capacity + " tokens, " + refillPerSecond + " per second");
+    }
+    var emissionIntervalNanos = (long) Math.ceil(1_000_000_000L / refillPerSecond);
+    return new RateLimit(emissionIntervalNanos, capacity * emissionIntervalNanos);
+  }
+}
@@ -0,0 +1,6 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+public interface RateLimiter {
+  // Takes one token of the key's bucket. Returns 0 when it was taken, otherwise how long until the next one is available.
+  long tryAcquire(String key, RateLimit limit);
+}
@@ -0,0 +1,58 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.pomykalskimateusz.recruitmenttask.exception.TooManyRequestsException;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Service
+public class RequestRateLimiter {
+  private final RateLimiter rateLimiter;
+  private final boolean enabled;
+  private final RateLimit ipAddressLimit;
+  private final RateLimit userLimit;
+  private final Counter ipAddressRejections;
+  private final Counter userRejections;
+
+  public RequestRateLimiter(
+    RateLimiter rateLimiter,
+    MeterRegistry meterRegistry,
+    @Value("${rate-limit.enabled:true}") boolean enabled,
+    @Value("${rate-limit.ip-address.capacity:100}") int ipAddressCapacity,
+    @Value("${rate-limit.ip-address.refill-per-second:20}") double ipAddressRefillPerSecond,
+    @Value("${rate-limit.user.capacity:10}") int userCapacity,
+    @Value("${rate-limit.user.refill-per-second:1}") double userRefillPerSecond
+  ) {
+    this.rateLimiter = rateLimiter;
+    this.enabled = enabled;
+    this.ipAddressLimit = RateLimit.of(ipAddressCapacity, ipAddressRefillPerSecond);
+    this.userLimit = RateLimit.of(userCapacity, userRefillPerSecond);
+    this.ipAddressRejections = Counter.builder("rate.limit.rejections").tag("key", "ip-address").register(meterRegistry);
+    this.userRejections = Counter.builder("rate.limit.rejections").tag("key", "user").register(meterRegistry);
+  }
+
+  public void limitIpAddress(String ipAddress) {
+    acquire("ip:" + ipAddress, ipAddressLimit, ipAddressRejections);
+  }
+
+  public void limitUser(UUID userId) {
+    if (userId != null) {
+      acquire("user:" + userId, userLimit, userRejections);
+    }
+  }
+
+  private void acquire(String key, RateLimit limit, Counter rejections) {
+    if (!enabled) {
+      return;
+    }
+    var waitNanos = rateLimiter.tryAcquire(key, limit);
+    if (waitNanos > 0) {
+      rejections.increment();
+      throw new TooManyRequestsException("Too many requests, try again later", Duration.ofNanos(waitNanos));
+    }
+  }
+}
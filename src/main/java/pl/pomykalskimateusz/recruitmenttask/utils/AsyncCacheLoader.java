@@ -0,0 +1,46 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class AsyncCacheLoader {
+  // Unlike Cache.get(key, loader) the loader runs on the calling thread outside of the map's bin lock,
+  // so a blocking load does not pin a virtual thread. Concurrent callers for the same key await the same future.
+  public static <K, V> V get(AsyncCache<K, V> cache, K key, Function<K, V> loader) {
+    var cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return join(cached);
+    }
+
+    var future = new CompletableFuture<V>();
+    var existing = cache.asMap().putIfAbsent(key, future);
+    if (existing != null) {
+      return join(existing);
+    }
+
+    try {
+      var value = loader.apply(key);
+      future.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      cache.asMap().remove(key, future);
+      future.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  // callers awaiting a failed load get the loader's own exception, as the caller running it does
+  private static <V> V join(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+  }
+}
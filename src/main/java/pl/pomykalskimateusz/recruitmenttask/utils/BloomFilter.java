@@ -0,0 +1,79 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free Bloom filter over strings. Bits are only ever set, so concurrent puts and lookups need no locking,
+// and positions come from double hashing (Kirsch-Mitzenmacher) of two 64-bit hashes of the value.
+public final class BloomFilter {
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+  private final LongAdder insertions = new LongAdder();
+
+  private BloomFilter(long bitCount, int hashCount) {
+    this.words = new AtomicLongArray(Math.toIntExact((bitCount + Long.SIZE - 1) / Long.SIZE));
+    this.bitCount = (long) words.length() * Long.SIZE;
+    this.hashCount = hashCount;
+  }
+
+  public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+    if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Invalid bloom filter parameters: " + expectedInsertions + ", " + falsePositiveRate);
+    }
+    var bits = Math.max(Long.SIZE, (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+    var hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+    return new BloomFilter(bits, hashes);
+  }
+
+  public void put(String value) {
+    long hash1 = hash(value);
+    long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      if ((words.get(word) & mask) == 0) {
+        words.getAndAccumulate(word, mask, (current, added) -> current | added);
+      }
+    }
+    insertions.increment();
+  }
+
+  public boolean mightContain(String value) {
+    long hash1 = hash(value);
+    long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // estimated from the number of puts, repeated values make it pessimistic
+  public double expectedFalsePositiveRate() {
+    return Math.pow(1 - Math.exp(-hashCount * insertions.doubleValue() / bitCount), hashCount);
+  }
+
+  public long bitCount() {
+    return bitCount;
+  }
+
+  // FNV-1a over the chars, finished with the splitmix64 mixer
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+}
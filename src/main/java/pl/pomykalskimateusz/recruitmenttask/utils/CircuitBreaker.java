@@ -0,0 +1,76 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+// Opens after failureThreshold consecutive failures and rejects calls for openDuration, then lets a single probe through:
+// its success closes the circuit again, its failure reopens it for another openDuration.
+public class CircuitBreaker {
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final LongSupplier nanoTime;
+  private final AtomicReference<Circuit> circuit = new AtomicReference<>(Circuit.CLOSED);
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+  public CircuitBreaker(int failureThreshold, Duration openDuration) {
+    this(failureThreshold, openDuration, System::nanoTime);
+  }
+
+  CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+    this.failureThreshold = failureThreshold;
+    this.openDurationNanos = openDuration.toNanos();
+    this.nanoTime = nanoTime;
+  }
+
+  // every permitted call must be followed by onSuccess or onFailure
+  public boolean tryAcquirePermission() {
+    var current = circuit.get();
+    return switch (current.state()) {
+      case CLOSED -> true;
+      case HALF_OPEN -> false;
+      case OPEN -> nanoTime.getAsLong() - current.openedAt() >= openDurationNanos
+        && circuit.compareAndSet(current, new Circuit(State.HALF_OPEN, current.openedAt()));
+    };
+  }
+
+  public void onSuccess() {
+    consecutiveFailures.set(0);
+    var current = circuit.get();
+    if (current.state() == State.HALF_OPEN) {
+      circuit.compareAndSet(current, Circuit.CLOSED);
+    }
+  }
+
+  public void onFailure() {
+    var current = circuit.get();
+    switch (current.state()) {
+      // calls already in flight when the circuit opened must not push its reopen time forward
+      case OPEN -> { }
+      case HALF_OPEN -> open(current);
+      case CLOSED -> {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+          open(current);
+        }
+      }
+    }
+  }
+
+  public State state() {
+    return circuit.get().state();
+  }
+
+  private void open(Circuit from) {
+    if (circuit.compareAndSet(from, new Circuit(State.OPEN, nanoTime.getAsLong()))) {
+      consecutiveFailures.set(0);
+    }
+  }
+
+  // state and the time it opened change together in one compare-and-set
+  private record Circuit(State state, long openedAt) {
+    static final Circuit CLOSED = new Circuit(State.CLOSED, 0);
+  }
+}
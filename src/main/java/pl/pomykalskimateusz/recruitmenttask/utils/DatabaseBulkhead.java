@@ -0,0 +1,57 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Bounds the number of requests doing database work at once. With virtual threads the number of concurrent requests
+// is no longer capped by the Tomcat pool, so thousands of them would otherwise queue inside Hikari until connection-timeout.
+@Component
+public class DatabaseBulkhead {
+  private final Semaphore permits;
+  private final long acquireTimeoutNanos;
+
+  public DatabaseBulkhead(
+    @Value("${database.bulkhead.max-concurrent-calls:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrentCalls,
+    @Value("${database.bulkhead.acquire-timeout:5s}") Duration acquireTimeout
+  ) {
+    this.permits = new Semaphore(maxConcurrentCalls, true);
+    this.acquireTimeoutNanos = acquireTimeout.toNanos();
+  }
+
+  public <T> T execute(Supplier<T> action) {
+    acquire();
+    try {
+      return action.get();
+    } finally {
+      permits.release();
+    }
+  }
+
+  public void run(Runnable action) {
+    execute(() -> {
+      action.run();
+      return null;
+    });
+  }
+
+  public int availablePermits() {
+    return permits.availablePermits();
+  }
+
+  private void acquire() {
+    try {
+      if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+        throw new ServiceUnavailableException("Database is overloaded, try again later");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for database");
+    }
+  }
+}
@@ -1,18 +1,73 @@
 package pl.pomykalskimateusz.recruitmenttask.utils;
 
-import lombok.AccessLevel;
-import lombok.NoArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.jooq.DSLContext;
+import org.springframework.stereotype.Component;
 
-@NoArgsConstructor(access = AccessLevel.PRIVATE)
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Transaction scoped postgres advisory locks. Keys are the first 64 bits of sha-256 over "namespace:CODE", so unrelated
+// codes practically never collide (String.hashCode collided at ~1 in 2^32 pairs) and each lock kind has its own key space.
+@Component
 public class DistributedDatabaseLock {
-  public static void lockCouponCreation(DSLContext dslContext, String couponCode) {
-    long hash = ("coupon_creation" + couponCode.toUpperCase()).hashCode();
-    dslContext.execute("SELECT pg_advisory_xact_lock(" + hash + ")");
+  private final DSLContext dslContext;
+  private final Map<LockKind, Timer> waitTimers = new EnumMap<>(LockKind.class);
+
+  public DistributedDatabaseLock(DSLContext dslContext, MeterRegistry meterRegistry) {
+    this.dslContext = dslContext;
+    for (var kind : LockKind.values()) {
+      waitTimers.put(kind, Timer.builder("coupon.lock.wait")
+        .description("Time spent waiting for an advisory lock")
+        .tag("kind", kind.namespace)
+        .publishPercentileHistogram()
+        .register(meterRegistry));
+    }
+  }
+
+  public void lockCouponCreation(String couponCode) {
+    lock(LockKind.COUPON_CREATION, couponCode);
+  }
+
+  public void lockCouponRegistration(String couponCode) {
+    lock(LockKind.COUPON_REGISTRATION, couponCode);
+  }
+
+  // held by at most one node, the others skip the work instead of waiting for it
+  public boolean tryLockCouponArchival() {
+    return dslContext.fetchValue("SELECT pg_try_advisory_xact_lock(?)", lockKey(LockKind.COUPON_ARCHIVAL, "")) instanceof Boolean locked && locked;
+  }
+
+  private void lock(LockKind kind, String key) {
+    var lockKey = lockKey(kind, key);
+    waitTimers.get(kind).record(() -> dslContext.execute("SELECT pg_advisory_xact_lock(?)", lockKey));
   }
 
-  public static void lockCouponRegistration(DSLContext dslContext, String couponCode) {
-    long hash = ("coupon_registration" + couponCode.toUpperCase()).hashCode();
-    dslContext.execute("SELECT pg_advisory_xact_lock(" + hash + ")");
+  static long lockKey(LockKind kind, String key) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256")
+        .digest((kind.namespace + ":" + key.toUpperCase(Locale.ROOT)).getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  enum LockKind {
+    COUPON_CREATION("coupon_creation"),
+    COUPON_REGISTRATION("coupon_registration"),
+    COUPON_ARCHIVAL("coupon_archival");
+
+    private final String namespace;
+
+    LockKind(String namespace) {
+      this.namespace = namespace;
+    }
   }
 }
@@ -0,0 +1,61 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import java.nio.ByteBuffer;
+
+// Keyed bijection of [0, size): a balanced Feistel network over the smallest even number of bits covering size.
+// Values landing outside of the range are encrypted again (cycle walking) until they fall inside it, which takes
+// fewer than four passes on average because the network domain is less than four times the size.
+public final class FeistelPermutation {
+  private static final int ROUNDS = 6;
+
+  private final long size;
+  private final int halfBits;
+  private final long halfMask;
+  private final long[] roundKeys = new long[ROUNDS];
+
+  public FeistelPermutation(long size, byte[] key) {
+    if (size < 1 || size > 1L << 62) {
+      throw new IllegalArgumentException("Unsupported permutation size: " + size);
+    }
+    if (key.length < ROUNDS * Long.BYTES) {
+      throw new IllegalArgumentException("Permutation key needs at least " + ROUNDS * Long.BYTES + " bytes");
+    }
+    int bits = size == 1 ? 1 : Long.SIZE - Long.numberOfLeadingZeros(size - 1);
+    this.size = size;
+    this.halfBits = (bits + 1) / 2;
+    this.halfMask = (1L << halfBits) - 1;
+    var keyBuffer = ByteBuffer.wrap(key);
+    for (int round = 0; round < ROUNDS; round++) {
+      roundKeys[round] = keyBuffer.getLong();
+    }
+  }
+
+  public long apply(long value) {
+    if (value < 0 || value >= size) {
+      throw new IllegalArgumentException("Value out of permutation range: " + value);
+    }
+    long result = value;
+    do {
+      result = encrypt(result);
+    } while (result >= size);
+    return result;
+  }
+
+  private long encrypt(long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+    for (var roundKey : roundKeys) {
+      long next = left ^ (mix(right ^ roundKey) & halfMask);
+      left = right;
+      right = next;
+    }
+    return (left << halfBits) | right;
+  }
+
+  // splitmix64 finalizer
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+}
@@ -0,0 +1,117 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Optional;
+
+// Strict parser of dotted-quad IPv4 and RFC 4291 IPv6 text (including an embedded IPv4 tail such as ::ffff:1.2.3.4).
+// Unlike InetAddress.getByName it never resolves host names, so it is safe for header-provided values. Zone ids,
+// octal or shortened IPv4 forms and anything else are rejected.
+public final class IpAddressLiteral {
+  private static final int MAX_LENGTH = 45;
+
+  private IpAddressLiteral() {}
+
+  public static Optional<InetAddress> parse(String value) {
+    if (value == null || value.isEmpty() || value.length() > MAX_LENGTH) {
+      return Optional.empty();
+    }
+    var bytes = value.indexOf(':') >= 0 ? parseIpv6(value) : parseIpv4(value);
+    if (bytes == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(InetAddress.getByAddress(bytes));
+    } catch (UnknownHostException e) {
+      // only thrown for an array of the wrong length
+      return Optional.empty();
+    }
+  }
+
+  private static byte[] parseIpv4(String value) {
+    var parts = value.split("\\.", -1);
+    if (parts.length != 4) {
+      return null;
+    }
+    var bytes = new byte[4];
+    for (int i = 0; i < parts.length; i++) {
+      var part = parts[i];
+      if (part.isEmpty() || part.length() > 3) {
+        return null;
+      }
+      int octet = 0;
+      for (int j = 0; j < part.length(); j++) {
+        char character = part.charAt(j);
+        if (character < '0' || character > '9') {
+          return null;
+        }
+        octet = octet * 10 + (character - '0');
+      }
+      if (octet > 255) {
+        return null;
+      }
+      bytes[i] = (byte) octet;
+    }
+    return bytes;
+  }
+
+  private static byte[] parseIpv6(String value) {
+    var text = value;
+    byte[] ipv4Tail = null;
+    var lastColon = text.lastIndexOf(':');
+    if (text.indexOf('.', lastColon) >= 0) {
+      // the IPv4 tail takes the place of the last two groups
+      ipv4Tail = parseIpv4(text.substring(lastColon + 1));
+      if (ipv4Tail == null) {
+        return null;
+      }
+      text = text.substring(0, lastColon + 1) + "0:0";
+    }
+
+    var compression = text.indexOf("::");
+    if (compression >= 0 && text.indexOf("::", compression + 1) >= 0) {
+      return null;
+    }
+    var head = compression >= 0 ? text.substring(0, compression) : text;
+    var tail = compression >= 0 ? text.substring(compression + 2) : "";
+    var headGroups = head.isEmpty() ? new String[0] : head.split(":", -1);
+    var tailGroups = tail.isEmpty() ? new String[0] : tail.split(":", -1);
+    var groups = headGroups.length + tailGroups.length;
+    if (compression >= 0 ? groups > 7 : groups != 8) {
+      return null;
+    }
+
+    var bytes = new byte[16];
+    for (int i = 0; i < headGroups.length; i++) {
+      if (!parseGroup(headGroups[i], bytes, i)) {
+        return null;
+      }
+    }
+    for (int i = 0; i < tailGroups.length; i++) {
+      if (!parseGroup(tailGroups[i], bytes, 8 - tailGroups.length + i)) {
+        return null;
+      }
+    }
+    if (ipv4Tail != null) {
+      System.arraycopy(ipv4Tail, 0, bytes, 12, 4);
+    }
+    return bytes;
+  }
+
+  private static boolean parseGroup(String group, byte[] bytes, int index) {
+    if (group.isEmpty() || group.length() > 4) {
+      return false;
+    }
+    int value = 0;
+    for (int i = 0; i < group.length(); i++) {
+      int digit = Character.digit(group.charAt(i), 16);
+      if (digit < 0) {
+        return false;
+      }
+      value = value << 4 | digit;
+    }
+    bytes[2 * index] = (byte) (value >>> 8);
+    bytes[2 * index + 1] = (byte) value;
+    return true;
+  }
+}
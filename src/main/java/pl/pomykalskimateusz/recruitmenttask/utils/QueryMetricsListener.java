@@ -0,0 +1,69 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Times every statement executed through jOOQ. The rendered sql carries codes and ids, so queries are only tagged
+// by their kind and leading keyword; which repository method ran them is recorded by its own @Timed timer.
+public class QueryMetricsListener implements ExecuteListener {
+  static String START_NANOS = "query-metrics-start-nanos";
+  static Set<String> STATEMENTS = Set.of("select", "insert", "update", "delete", "with", "truncate", "create", "alter", "drop", "listen");
+
+  private final MeterRegistry meterRegistry;
+
+  public QueryMetricsListener(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void executeStart(ExecuteContext ctx) {
+    ctx.data(START_NANOS, System.nanoTime());
+  }
+
+  @Override
+  public void executeEnd(ExecuteContext ctx) {
+    record(ctx, "success");
+  }
+
+  @Override
+  public void exception(ExecuteContext ctx) {
+    record(ctx, "error");
+  }
+
+  private void record(ExecuteContext ctx, String outcome) {
+    // removed, so a statement failing while its results are fetched is not recorded twice
+    var start = (Long) ctx.data().remove(START_NANOS);
+    if (start == null) {
+      return;
+    }
+    Timer.builder("db.query")
+      .tag("type", ctx.type().name().toLowerCase(Locale.ROOT))
+      .tag("statement", statement(ctx.sql()))
+      .tag("outcome", outcome)
+      .publishPercentileHistogram()
+      .register(meterRegistry)
+      .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  static String statement(String sql) {
+    if (sql == null) {
+      return "other";
+    }
+    var begin = 0;
+    while (begin < sql.length() && !Character.isLetter(sql.charAt(begin))) {
+      begin++;
+    }
+    var end = begin;
+    while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+      end++;
+    }
+    var keyword = sql.substring(begin, end).toLowerCase(Locale.ROOT);
+    return STATEMENTS.contains(keyword) ? keyword : "other";
+  }
+}
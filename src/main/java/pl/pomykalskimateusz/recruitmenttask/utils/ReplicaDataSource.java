@@ -0,0 +1,155 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Read-only connections spread round robin over the streaming replicas that are no more than max-lag behind the
+// primary, and connections of the primary itself when none is. Lag is measured without comparing clocks of different
+// servers: every check samples the primary's current wal position, and a replica that has replayed up to the position
+// sampled at time t holds everything committed before t. A replica that cannot be reached, is not in recovery or has
+// not replayed any position of the last max-lag is left out until a later check finds it caught up again.
+@Slf4j
+public class ReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+  static String PRIMARY_POSITION_SQL = "select pg_wal_lsn_diff(pg_current_wal_lsn(), '0/0')::bigint";
+  static String REPLAY_POSITION_SQL = "select case when pg_is_in_recovery() then pg_wal_lsn_diff(pg_last_wal_replay_lsn(), '0/0')::bigint end";
+
+  private final DataSource primary;
+  private final List<Replica> replicas;
+  private final long maxLagNanos;
+  private final ArrayDeque<PrimaryPosition> positions = new ArrayDeque<>();
+  private final AtomicInteger next = new AtomicInteger();
+  private final Counter fallbacks;
+  private final ScheduledExecutorService monitor;
+  private volatile List<Replica> available = List.of();
+
+  private record PrimaryPosition(long nanoTime, long position) {}
+
+  private static final class Replica {
+    private final String name;
+    private final HikariDataSource dataSource;
+    private volatile double lagSeconds = Double.NaN;
+
+    private Replica(String name, HikariDataSource dataSource) {
+      this.name = name;
+      this.dataSource = dataSource;
+    }
+  }
+
+  public ReplicaDataSource(DataSource primary, List<HikariDataSource> replicas, Duration maxLag, Duration checkInterval, MeterRegistry meterRegistry) {
+    this.primary = primary;
+    this.replicas = replicas.stream().map(it -> new Replica(it.getPoolName(), it)).toList();
+    this.maxLagNanos = maxLag.toNanos();
+    this.fallbacks = meterRegistry.counter("database.replica.fallbacks");
+    for (var replica : this.replicas) {
+      Gauge.builder("database.replica.lag", replica, it -> it.lagSeconds)
+        .tag("replica", replica.name)
+        .baseUnit("seconds")
+        .register(meterRegistry);
+    }
+    meterRegistry.gauge("database.replica.available", this, it -> it.available.size());
+
+    this.monitor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("replica-lag-monitor").daemon().factory());
+    this.monitor.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    var current = available;
+    if (!current.isEmpty()) {
+      var replica = current.get(Math.floorMod(next.getAndIncrement(), current.size()));
+      try {
+        return replica.dataSource.getConnection();
+      } catch (SQLException e) {
+        log.warn("Could not connect to replica {}, reading from the primary", replica.name, e);
+      }
+    }
+    fallbacks.increment();
+    return primary.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("Replica connections use the credentials of their pools");
+  }
+
+  @Override
+  public void close() {
+    monitor.shutdownNow();
+    replicas.forEach(replica -> replica.dataSource.close());
+  }
+
+  void checkReplicas() {
+    var now = System.nanoTime();
+    try {
+      positions.addLast(new PrimaryPosition(now, fetchPosition(primary, PRIMARY_POSITION_SQL)));
+    } catch (Exception e) {
+      // nothing to compare the replicas with, they keep their last state until the primary answers again
+      log.warn("Could not read the wal position of the primary", e);
+      return;
+    }
+    while (positions.size() > 1 && now - positions.getFirst().nanoTime() > maxLagNanos) {
+      positions.removeFirst();
+    }
+
+    var caughtUp = new ArrayList<Replica>(replicas.size());
+    for (var replica : replicas) {
+      var lagNanos = measureLag(replica, now);
+      replica.lagSeconds = lagNanos < 0 ? Double.NaN : lagNanos / 1e9;
+      if (lagNanos >= 0 && lagNanos <= maxLagNanos) {
+        caughtUp.add(replica);
+      }
+    }
+    if (caughtUp.size() != available.size()) {
+      log.info("{} of {} replicas serve read-only transactions", caughtUp.size(), replicas.size());
+    }
+    available = List.copyOf(caughtUp);
+  }
+
+  // time since the newest sampled primary position the replica has replayed, -1 when it is unknown or older than max-lag
+  private long measureLag(Replica replica, long now) {
+    try {
+      var replayed = fetchPosition(replica.dataSource, REPLAY_POSITION_SQL);
+      var iterator = positions.descendingIterator();
+      while (iterator.hasNext()) {
+        var position = iterator.next();
+        if (position.position() <= replayed) {
+          return now - position.nanoTime();
+        }
+      }
+      return -1;
+    } catch (Exception e) {
+      log.debug("Could not read the replay position of replica {}", replica.name, e);
+      return -1;
+    }
+  }
+
+  private static long fetchPosition(DataSource dataSource, String sql) throws SQLException {
+    try (var connection = dataSource.getConnection();
+         var statement = connection.createStatement();
+         var resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      var position = resultSet.getLong(1);
+      if (resultSet.wasNull()) {
+        throw new SQLException("Not a streaming replica, pg_is_in_recovery() is false");
+      }
+      return position;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.jooq.Select;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pl.pomykalskimateusz.recruitmenttask.utils.SlowQueryLog.SlowQuery;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Keeps statements slower than the threshold in SlowQueryLog. With explain enabled, jOOQ selects additionally get
+// their EXPLAIN (ANALYZE, BUFFERS) captured: the select runs a second time, on its own primary connection, in a read-only
+// transaction that is rolled back, one at a time and only while at most one more is waiting (the rest are logged
+// without a plan). Plain sql statements are never explained, they may take locks or write.
+@Slf4j
+@Component
+public class SlowQueryListener implements ExecuteListener {
+  static String START_NANOS = "slow-query-start-nanos";
+  static int EXPLAIN_TIMEOUT_SECONDS = 10;
+
+  private final DataSource dataSource;
+  private final SlowQueryLog slowQueryLog;
+  private final long thresholdNanos;
+  private final boolean explain;
+  private final Counter slowQueries;
+  private final ThreadPoolExecutor explainer;
+
+  public SlowQueryListener(
+    DataSource dataSource,
+    SlowQueryLog slowQueryLog,
+    MeterRegistry meterRegistry,
+    @Value("${database.slow-query.threshold:200ms}") Duration threshold,
+    @Value("${database.slow-query.explain:false}") boolean explain
+  ) {
+    this.dataSource = dataSource;
+    this.slowQueryLog = slowQueryLog;
+    this.thresholdNanos = threshold.toNanos();
+    this.explain = explain;
+    this.slowQueries = Counter.builder("db.query.slow")
+      .description("Statements slower than database.slow-query.threshold")
+      .register(meterRegistry);
+    this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+      Thread.ofPlatform().name("slow-query-explainer").daemon().factory());
+  }
+
+  @Override
+  public void executeStart(ExecuteContext ctx) {
+    ctx.data(START_NANOS, System.nanoTime());
+  }
+
+  @Override
+  public void executeEnd(ExecuteContext ctx) {
+    var start = (Long) ctx.data(START_NANOS);
+    if (start == null) {
+      return;
+    }
+    var durationNanos = System.nanoTime() - start;
+    if (durationNanos < thresholdNanos) {
+      return;
+    }
+    var executedAt = Instant.now();
+    var durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    var sql = ctx.sql();
+    slowQueries.increment();
+    // the sql is logged with bind markers only, values stay out of the log
+    log.warn("Slow query ({} ms): {}", durationMillis, sql);
+
+    if (explain && ctx.query() instanceof Select<?>) {
+      var inlined = ctx.dsl().renderInlined(ctx.query());
+      try {
+        explainer.execute(() -> slowQueryLog.add(new SlowQuery(executedAt, durationMillis, sql, explain(inlined))));
+        return;
+      } catch (RejectedExecutionException e) {
+        // explainer busy, the statement is kept without a plan
+      }
+    }
+    slowQueryLog.add(new SlowQuery(executedAt, durationMillis, sql, null));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    explainer.shutdownNow();
+  }
+
+  private String explain(String sql) {
+    try (var connection = dataSource.getConnection()) {
+      connection.setAutoCommit(false);
+      try (var statement = connection.createStatement()) {
+        // not connection.setReadOnly, with replicas enabled that would move the explain to a replica
+        statement.execute("SET TRANSACTION READ ONLY");
+        statement.setQueryTimeout(EXPLAIN_TIMEOUT_SECONDS);
+        var plan = new StringJoiner("\n");
+        try (var resultSet = statement.executeQuery("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+          while (resultSet.next()) {
+            plan.add(resultSet.getString(1));
+          }
+        }
+        return plan.toString();
+      } finally {
+        connection.rollback();
+        connection.setAutoCommit(true);
+      }
+    } catch (Exception e) {
+      log.warn("Could not explain slow query", e);
+      return "EXPLAIN failed: " + e.getMessage();
+    }
+  }
+}
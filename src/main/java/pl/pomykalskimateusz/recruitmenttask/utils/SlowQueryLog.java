@@ -0,0 +1,46 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Fixed-size ring of the most recent slow statements, the oldest entry is overwritten once it is full.
+@Component
+public class SlowQueryLog {
+  public record SlowQuery(Instant executedAt, long durationMillis, String sql, String plan) {}
+
+  private final AtomicReferenceArray<SlowQuery> entries;
+  private final AtomicLong written = new AtomicLong();
+
+  public SlowQueryLog(@Value("${database.slow-query.buffer-size:100}") int size) {
+    this.entries = new AtomicReferenceArray<>(size);
+  }
+
+  public void add(SlowQuery slowQuery) {
+    entries.set((int) (written.getAndIncrement() % entries.length()), slowQuery);
+  }
+
+  // newest first
+  public List<SlowQuery> snapshot() {
+    var last = written.get();
+    var result = new ArrayList<SlowQuery>();
+    for (long index = last - 1; index >= 0 && index >= last - entries.length(); index--) {
+      var entry = entries.get((int) (index % entries.length()));
+      if (entry != null) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  public void clear() {
+    for (int i = 0; i < entries.length(); i++) {
+      entries.set(i, null);
+    }
+  }
+}
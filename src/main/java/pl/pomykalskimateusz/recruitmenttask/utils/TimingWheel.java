@@ -0,0 +1,168 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/*
+ * Hierarchical timing wheel (Varghese & Lauck). Level 0 has wheelSize slots of one tick each, every next level has
+ * wheelSize slots spanning a whole rotation of the level below, and levels are added while longer delays are scheduled.
+ * Scheduling and cancelling are O(1) whatever the number of pending tasks. When a level's slot is reached its tasks
+ * cascade to the levels below, so a task is moved at most once per level before it runs. A task never runs before
+ * its deadline and at most one tick after it, on the given executor.
+ */
+public class TimingWheel implements AutoCloseable {
+  public interface Timeout {
+    void cancel();
+  }
+
+  private static final class Entry implements Timeout {
+    private final Runnable task;
+    private final long deadlineTick;
+    private volatile boolean cancelled;
+
+    private Entry(Runnable task, long deadlineTick) {
+      this.task = task;
+      this.deadlineTick = deadlineTick;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+
+  private final long tickNanos;
+  private final int wheelSize;
+  private final LongSupplier nanoTime;
+  private final Executor executor;
+  private final long startNanos;
+  private final List<List<List<Entry>>> levels = new ArrayList<>();
+  private final Thread driver;
+  private long currentTick;
+  private volatile boolean running = true;
+
+  public TimingWheel(String name, Duration tick, int wheelSize, Executor executor) {
+    this(tick, wheelSize, System::nanoTime, executor, name);
+  }
+
+  // without a name no driver thread is started, time only moves on advanceTo
+  TimingWheel(Duration tick, int wheelSize, LongSupplier nanoTime, Executor executor, String name) {
+    this.tickNanos = tick.toNanos();
+    this.wheelSize = wheelSize;
+    this.nanoTime = nanoTime;
+    this.executor = executor;
+    this.startNanos = nanoTime.getAsLong();
+    this.driver = name == null ? null : Thread.ofPlatform().name(name).daemon().start(this::drive);
+  }
+
+  public Timeout schedule(Duration delay, Runnable task) {
+    var elapsedNanos = nanoTime.getAsLong() - startNanos + Math.max(0, delay.toNanos());
+    var entry = new Entry(task, Math.ceilDiv(elapsedNanos, tickNanos));
+    boolean added;
+    synchronized (this) {
+      added = add(entry);
+    }
+    if (!added) {
+      executor.execute(task);
+    }
+    return entry;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    if (driver != null) {
+      driver.interrupt();
+    }
+  }
+
+  // runs every tick that ended by now, in order
+  void advanceTo(long nowNanos) {
+    var targetTick = (nowNanos - startNanos) / tickNanos;
+    var due = new ArrayList<Entry>();
+    synchronized (this) {
+      while (currentTick < targetTick) {
+        currentTick++;
+        cascade(due);
+        var slot = levels.isEmpty() ? null : levels.getFirst().get((int) (currentTick % wheelSize));
+        if (slot != null) {
+          due.addAll(slot);
+          slot.clear();
+        }
+      }
+    }
+    for (var entry : due) {
+      if (!entry.cancelled) {
+        executor.execute(entry.task);
+      }
+    }
+  }
+
+  // Levels whose rotation of the level below just ended hand their current slot down, highest first, so a task
+  // cascading from level 2 to level 1 is picked up again by the level 1 cascade of the same tick.
+  private void cascade(List<Entry> due) {
+    var top = 0;
+    var span = 1L;
+    while (top + 1 < levels.size() && span <= Long.MAX_VALUE / wheelSize && currentTick % (span * wheelSize) == 0) {
+      span *= wheelSize;
+      top++;
+    }
+    for (int level = top; level >= 1; level--) {
+      var slot = levels.get(level).get((int) ((currentTick / span) % wheelSize));
+      var entries = new ArrayList<>(slot);
+      slot.clear();
+      for (var entry : entries) {
+        if (!entry.cancelled && !add(entry)) {
+          due.add(entry);
+        }
+      }
+      span /= wheelSize;
+    }
+  }
+
+  // returns false when the deadline tick has already been reached
+  private boolean add(Entry entry) {
+    var ticks = entry.deadlineTick - currentTick;
+    if (ticks <= 0) {
+      return false;
+    }
+    var level = 0;
+    var span = 1L;
+    while (span <= Long.MAX_VALUE / wheelSize && ticks >= span * wheelSize) {
+      span *= wheelSize;
+      level++;
+    }
+    while (levels.size() <= level) {
+      var slots = new ArrayList<List<Entry>>(wheelSize);
+      for (int i = 0; i < wheelSize; i++) {
+        slots.add(new ArrayList<>());
+      }
+      levels.add(slots);
+    }
+    levels.get(level).get((int) ((entry.deadlineTick / span) % wheelSize)).add(entry);
+    return true;
+  }
+
+  private void drive() {
+    while (running) {
+      var now = nanoTime.getAsLong();
+      long nextTickNanos;
+      synchronized (this) {
+        nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+      }
+      if (now < nextTickNanos) {
+        LockSupport.parkNanos(nextTickNanos - now);
+        continue;
+      }
+      try {
+        advanceTo(now);
+      } catch (RuntimeException e) {
+        // a rejecting executor must not stop the wheel, the remaining tasks still have to run
+      }
+    }
+  }
+}
@@ -0,0 +1 @@
+CREATE INDEX coupon_created_date_id ON coupon (created_date_timestamp, id);
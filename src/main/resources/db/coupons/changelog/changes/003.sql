@@ -0,0 +1,5 @@
+alter table coupon add column current_usage integer default 0 not null;
+
+update coupon set current_usage = (select count(*) from coupon_usage where coupon_usage.coupon_id = coupon.id);
+
+alter table coupon add constraint coupon_usage_within_limit check (current_usage <= usage_limit);
@@ -0,0 +1,5 @@
+alter table coupon add column leased_usage integer default 0 not null;
+
+alter table coupon drop constraint coupon_usage_within_limit;
+
+alter table coupon add constraint coupon_usage_within_limit check (current_usage + leased_usage <= usage_limit);
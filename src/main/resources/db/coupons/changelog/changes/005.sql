@@ -0,0 +1,5 @@
+create table coupon_code_sequence
+(
+    generator_key varchar primary key,
+    next_value    bigint not null
+);
@@ -0,0 +1,5 @@
+create table rate_limit_bucket
+(
+    bucket_key          varchar primary key,
+    theoretical_arrival bigint not null
+);
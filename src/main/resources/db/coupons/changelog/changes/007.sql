@@ -0,0 +1 @@
+CREATE INDEX coupon_usage_created_date ON coupon_usage (created_date_timestamp);
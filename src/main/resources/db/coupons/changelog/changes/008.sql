@@ -0,0 +1,4 @@
+alter table coupon add column valid_from timestamp;
+alter table coupon add column valid_until timestamp;
+
+CREATE INDEX coupon_valid_until ON coupon (valid_until);
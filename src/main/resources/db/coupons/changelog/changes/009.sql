@@ -0,0 +1,10 @@
+create table idempotency_key
+(
+    idempotency_key varchar primary key,
+    fingerprint     varchar   not null,
+    status          integer,
+    body            varchar,
+    expires_at      timestamp not null
+);
+
+CREATE INDEX idempotency_key_expires_at ON idempotency_key (expires_at);
@@ -0,0 +1,2 @@
+UPDATE coupon SET created_date_timestamp = current_timestamp WHERE created_date_timestamp IS NULL;
+ALTER TABLE coupon ALTER COLUMN created_date_timestamp SET NOT NULL;
@@ -0,0 +1,10 @@
+create table coupon_lease
+(
+    id         uuid primary key,
+    coupon_id  uuid      not null references coupon (id),
+    node_id    varchar   not null,
+    remaining  integer   not null,
+    expires_at timestamp not null
+);
+
+CREATE INDEX coupon_lease_coupon_id ON coupon_lease (coupon_id);
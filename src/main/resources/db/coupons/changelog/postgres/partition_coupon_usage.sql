@@ -0,0 +1,41 @@
+-- coupon_usage is hash partitioned by coupon_id. unique_coupon_usage (coupon_id, user_id) contains the partition key,
+-- so postgres still enforces it across the whole table, and all usages of one coupon live in a single partition.
+-- The primary key has to contain the partition key as well, id stays unique on its own as a random uuid.
+-- Rewrites the table in one transaction, registrations are blocked while it runs.
+create table coupon_usage_partitioned
+(
+    id                      uuid not null,
+    coupon_id               uuid,
+    user_id                 uuid not null,
+    version                 integer not null,
+    created_date_timestamp  timestamp default current_timestamp,
+    modified_date_timestamp timestamp
+) partition by hash (coupon_id);
+
+create table coupon_usage_p00 partition of coupon_usage_partitioned for values with (modulus 16, remainder 0);
+create table coupon_usage_p01 partition of coupon_usage_partitioned for values with (modulus 16, remainder 1);
+create table coupon_usage_p02 partition of coupon_usage_partitioned for values with (modulus 16, remainder 2);
+create table coupon_usage_p03 partition of coupon_usage_partitioned for values with (modulus 16, remainder 3);
+create table coupon_usage_p04 partition of coupon_usage_partitioned for values with (modulus 16, remainder 4);
+create table coupon_usage_p05 partition of coupon_usage_partitioned for values with (modulus 16, remainder 5);
+create table coupon_usage_p06 partition of coupon_usage_partitioned for values with (modulus 16, remainder 6);
+create table coupon_usage_p07 partition of coupon_usage_partitioned for values with (modulus 16, remainder 7);
+create table coupon_usage_p08 partition of coupon_usage_partitioned for values with (modulus 16, remainder 8);
+create table coupon_usage_p09 partition of coupon_usage_partitioned for values with (modulus 16, remainder 9);
+create table coupon_usage_p10 partition of coupon_usage_partitioned for values with (modulus 16, remainder 10);
+create table coupon_usage_p11 partition of coupon_usage_partitioned for values with (modulus 16, remainder 11);
+create table coupon_usage_p12 partition of coupon_usage_partitioned for values with (modulus 16, remainder 12);
+create table coupon_usage_p13 partition of coupon_usage_partitioned for values with (modulus 16, remainder 13);
+create table coupon_usage_p14 partition of coupon_usage_partitioned for values with (modulus 16, remainder 14);
+create table coupon_usage_p15 partition of coupon_usage_partitioned for values with (modulus 16, remainder 15);
+
+insert into coupon_usage_partitioned (id, coupon_id, user_id, version, created_date_timestamp, modified_date_timestamp)
+select id, coupon_id, user_id, version, created_date_timestamp, modified_date_timestamp from coupon_usage;
+
+drop table coupon_usage;
+alter table coupon_usage_partitioned rename to coupon_usage;
+
+alter table coupon_usage add constraint coupon_usage_pkey primary key (coupon_id, id);
+alter table coupon_usage add constraint coupon_usage_coupon_id_fkey foreign key (coupon_id) references coupon (id);
+CREATE UNIQUE INDEX unique_coupon_usage ON coupon_usage (coupon_id, user_id);
+CREATE INDEX coupon_usage_created_date ON coupon_usage (created_date_timestamp);
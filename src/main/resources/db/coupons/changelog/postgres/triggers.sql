@@ -26,4 +26,58 @@ DROP TRIGGER IF EXISTS normalize_coupon_code ON coupon;
 CREATE TRIGGER normalize_coupon_code
     BEFORE INSERT OR UPDATE ON coupon
                          FOR EACH ROW
-                         EXECUTE FUNCTION normalize_coupon_code();
\ No newline at end of file
+                         EXECUTE FUNCTION normalize_coupon_code();
+-- coupon metadata is cached per node (CouponMetadataCache), every change of it is broadcast on the coupon_changed channel
+-- with the normalized code as payload; statements touching more than 100 coupons send '*' instead of every code
+create or replace function notify_coupons_changed()
+    returns trigger AS '
+    declare
+        changed_codes text[];
+    begin
+        if TG_OP = ''INSERT'' then
+            select array_agg(code_normalized) into changed_codes from (select code_normalized from new_rows limit 101) codes;
+        else
+            select array_agg(code_normalized) into changed_codes from (select code_normalized from old_rows limit 101) codes;
+        end if;
+        if cardinality(changed_codes) > 100 then
+            perform pg_notify(''coupon_changed'', ''*'');
+        elsif changed_codes is not null then
+            perform pg_notify(''coupon_changed'', code) from unnest(changed_codes) code;
+        end if;
+        return null;
+    end;
+' LANGUAGE plpgsql;
+
+create or replace function notify_coupon_updated()
+    returns trigger AS '
+    begin
+        perform pg_notify(''coupon_changed'', OLD.code_normalized);
+        if NEW.code_normalized <> OLD.code_normalized then
+            perform pg_notify(''coupon_changed'', NEW.code_normalized);
+        end if;
+        return null;
+    end;
+' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS notify_coupons_inserted ON coupon;
+CREATE TRIGGER notify_coupons_inserted
+    AFTER INSERT ON coupon
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION notify_coupons_changed();
+
+DROP TRIGGER IF EXISTS notify_coupons_deleted ON coupon;
+CREATE TRIGGER notify_coupons_deleted
+    AFTER DELETE ON coupon
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION notify_coupons_changed();
+
+-- the column list and condition keep usage counter updates free of this trigger
+DROP TRIGGER IF EXISTS notify_coupon_updated ON coupon;
+CREATE TRIGGER notify_coupon_updated
+    AFTER UPDATE OF code, country, usage_limit, valid_from, valid_until ON coupon
+    FOR EACH ROW
+    WHEN (OLD.code IS DISTINCT FROM NEW.code OR OLD.country IS DISTINCT FROM NEW.country OR OLD.usage_limit IS DISTINCT FROM NEW.usage_limit
+        OR OLD.valid_from IS DISTINCT FROM NEW.valid_from OR OLD.valid_until IS DISTINCT FROM NEW.valid_until)
+    EXECUTE FUNCTION notify_coupon_updated();
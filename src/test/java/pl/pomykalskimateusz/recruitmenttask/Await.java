@@ -0,0 +1,26 @@
+package pl.pomykalskimateusz.recruitmenttask;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Await {
+
+    public static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        awaitTrue(condition, Duration.ofSeconds(5));
+    }
+
+    // polls every 10ms and fails the test once the timeout has passed
+    public static void awaitTrue(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within " + timeout.toSeconds() + "s");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -14,7 +14,7 @@ public final class DatabaseCleaner {
 
     private static final AtomicReference<List<Table<?>>> computedGraph = new AtomicReference<>();
 
-    private static final Set<String> NOT_REMOVABLE = Set.of();
+    private static final Set<String> NOT_REMOVABLE = Set.of("databasechangelog", "databasechangeloglock");
 
     public static void cleanAllTables(DSLContext dslContext, String schema) {
         tablesInCorrectOrder(dslContext, schema, true).forEach(table -> dslContext.deleteFrom(table).execute());
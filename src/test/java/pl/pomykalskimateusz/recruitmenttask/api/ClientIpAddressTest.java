@@ -0,0 +1,75 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClientIpAddressTest {
+  @Test
+  void shouldIgnoreForwardedForWithoutTrustedProxy() {
+    // GIVEN
+    var clientIpAddress = new ClientIpAddress(List.of());
+
+    // WHEN & THEN a client talking to the service directly cannot pick its address
+    assertEquals("203.0.113.7", clientIpAddress.of(request("203.0.113.7", "10.0.0.1")));
+  }
+
+  @Test
+  void shouldIgnoreForwardedForFromUntrustedAddress() {
+    // GIVEN
+    var clientIpAddress = new ClientIpAddress(List.of("10.0.0.0/8"));
+
+    // WHEN & THEN
+    assertEquals("203.0.113.7", clientIpAddress.of(request("203.0.113.7", "10.0.0.1")));
+  }
+
+  @Test
+  void shouldTakeRightMostEntryThatIsNotTrustedProxy() {
+    // GIVEN proxy chain client -> 10.0.0.2 -> 10.0.0.1 -> service, with an entry spoofed by the client
+    var clientIpAddress = new ClientIpAddress(List.of("10.0.0.0/8"));
+    var request = request("10.0.0.1", "1.1.1.1, 198.51.100.4");
+    request.addHeader("X-Forwarded-For", "10.0.0.2");
+
+    // WHEN & THEN
+    assertEquals("198.51.100.4", clientIpAddress.of(request));
+  }
+
+  @Test
+  void shouldUseRemoteAddressOfTrustedProxyWithoutForwardedFor() {
+    // GIVEN
+    var clientIpAddress = new ClientIpAddress(List.of("10.0.0.1", "::1"));
+
+    // WHEN & THEN
+    assertEquals("10.0.0.1", clientIpAddress.of(request("10.0.0.1", null)));
+    assertEquals("203.0.113.7", clientIpAddress.of(request("0:0:0:0:0:0:0:1", "203.0.113.7")));
+  }
+
+  @Test
+  void shouldTakeLeftMostEntryWhenEveryEntryIsTrusted() {
+    // GIVEN
+    var clientIpAddress = new ClientIpAddress(List.of("10.0.0.0/8"));
+
+    // WHEN & THEN
+    assertEquals("10.0.0.3", clientIpAddress.of(request("10.0.0.1", "10.0.0.3, 10.0.0.2")));
+  }
+
+  @Test
+  void shouldRejectInvalidTrustedProxy() {
+    // WHEN & THEN
+    assertThrows(IllegalArgumentException.class, () -> new ClientIpAddress(List.of("proxy.local")));
+    assertThrows(IllegalArgumentException.class, () -> new ClientIpAddress(List.of("10.0.0.0/33")));
+  }
+
+  private static MockHttpServletRequest request(String remoteAddress, String forwardedFor) {
+    var request = new MockHttpServletRequest();
+    request.setRemoteAddr(remoteAddress);
+    if (forwardedFor != null) {
+      request.addHeader("X-Forwarded-For", forwardedFor);
+    }
+    return request;
+  }
+}
@@ -0,0 +1,122 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+
+public class CouponControllerTest extends DatabaseContainer {
+  @Autowired
+  WebApplicationContext webApplicationContext;
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  ObjectMapper objectMapper;
+
+  @Autowired
+  DSLContext dslContext;
+
+  MockMvc mockMvc;
+
+  @BeforeEach
+  void beforeEach() {
+    mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldKeepReturningAllCouponsAsArray() throws Exception {
+    // GIVEN
+    createCoupons("first", "second", "third");
+
+    // WHEN THEN the unpaginated listing should stay a plain json array
+    mockMvc.perform(get("/coupons"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$").isArray())
+      .andExpect(jsonPath("$.length()").value(3));
+  }
+
+  @Test
+  void shouldReturnCouponsPageByPage() throws Exception {
+    // GIVEN
+    createCoupons("first", "second", "third");
+
+    // WHEN
+    var firstPage = mockMvc.perform(get("/coupons/page").param("limit", "2"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.items.length()").value(2))
+      .andReturn();
+    var nextCursor = objectMapper.readTree(firstPage.getResponse().getContentAsString()).get("nextCursor").asText();
+
+    // THEN
+    mockMvc.perform(get("/coupons/page").param("limit", "2").param("cursor", nextCursor))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.items.length()").value(1))
+      .andExpect(jsonPath("$.items[0].code").value("third"))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    mockMvc.perform(get("/coupons/page").param("limit", "0")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldStreamEveryCouponAsNdjson() throws Exception {
+    // GIVEN coupons including an expired one, which listings leave out
+    createCoupons("first", "second", "expired");
+    dslContext.update(COUPON).set(COUPON.VALID_UNTIL, LocalDateTime.now().minusMinutes(1)).where(COUPON.CODE.eq("expired")).execute();
+
+    // WHEN
+    var started = mockMvc.perform(get("/coupons/stream"))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+    var response = mockMvc.perform(asyncDispatch(started))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType("application/x-ndjson"))
+      .andReturn()
+      .getResponse()
+      .getContentAsString(StandardCharsets.UTF_8);
+
+    // THEN every line should be one coupon, in creation order
+    var codes = new ArrayList<String>();
+    for (var line : response.split("\n")) {
+      codes.add(objectMapper.readValue(line, CouponData.class).getCode());
+    }
+    assertEquals(List.of("first", "second", "expired"), codes);
+    assertEquals('\n', response.charAt(response.length() - 1));
+  }
+
+  private void createCoupons(String... codes) throws InterruptedException {
+    for (var code : codes) {
+      couponService.createCoupon(new CreateCouponBody().code(code).countryCode("PL").usageLimit(10));
+      // distinct creation timestamps keep the expected order independent of the random ids
+      Thread.sleep(2);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import com.sun.net.httpserver.HttpServer;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON_USAGE;
+
+// Flash sale against the running application over http, with ip-api replaced by a local stand-in. Excluded from the
+// default build, run with: ./mvnw -Pload-test test [-Dload.requests=20000 -Dload.distribution=zipf ...]
+//   load.requests, load.concurrency           registrations fired and how many are in flight at once
+//   load.distribution                         hot (one code), zipf (load.zipf-exponent) or uniform over load.codes
+//   load.users                                registrations pick one of that many users (0: every one a new user)
+//   load.usage-limit                          usage limit of every coupon
+//   load.geolocation-delay                    latency of the ip-api stand-in, load.ip-addresses distinct client ips
+//   load.registration-mode                    coupon.registration.mode of the application
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class FlashSaleLoadTest extends DatabaseContainer {
+  static int REQUESTS = Integer.getInteger("load.requests", 5000);
+  static int CONCURRENCY = Integer.getInteger("load.concurrency", 200);
+  static String DISTRIBUTION = System.getProperty("load.distribution", "hot");
+  static int CODES = Integer.getInteger("load.codes", 100);
+  static double ZIPF_EXPONENT = Double.parseDouble(System.getProperty("load.zipf-exponent", "1.0"));
+  static int USERS = Integer.getInteger("load.users", 0);
+  static int USAGE_LIMIT = Integer.getInteger("load.usage-limit", 1000);
+  static long GEOLOCATION_DELAY_MILLIS = Long.getLong("load.geolocation-delay", 20);
+  static int IP_ADDRESSES = Integer.getInteger("load.ip-addresses", 10_000);
+
+  static HttpServer ipApi = startIpApi();
+
+  @LocalServerPort
+  int port;
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @Autowired
+  DataSource dataSource;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @DynamicPropertySource
+  static void configureLoadProperties(DynamicPropertyRegistry registry) {
+    registry.add("localization.provider", () -> "http");
+    registry.add("localization.http.url-template", () -> "http://localhost:" + ipApi.getAddress().getPort() + "/json/%s?fields=countryCode");
+    registry.add("coupon.registration.mode", () -> System.getProperty("load.registration-mode", "locking"));
+    registry.add("rate-limit.enabled", () -> false);
+    // the load generator stands in for the proxy, its X-Forwarded-For spreads requests over load.ip-addresses
+    registry.add("client-ip.trusted-proxies", () -> "127.0.0.1");
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @AfterAll
+  static void afterAll() {
+    ipApi.stop(0);
+  }
+
+  @Test
+  void shouldNeverExceedUsageLimitDuringFlashSale() throws Exception {
+    // GIVEN
+    var codes = DISTRIBUTION.equals("hot") ? new String[] {"flash-sale"} : new String[CODES];
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = codes.length == 1 ? "flash-sale" : "flash-sale-" + i;
+      couponService.createCoupon(new CreateCouponBody().code(codes[i]).countryCode("PL").usageLimit(USAGE_LIMIT));
+    }
+    var codeSampler = codeSampler(codes.length);
+    var users = new UUID[USERS];
+    Arrays.setAll(users, it -> UUID.randomUUID());
+
+    var client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+    var latencies = new ConcurrentLinkedQueue<Long>();
+    var statuses = new ConcurrentHashMap<Integer, LongAdder>();
+    var inFlight = new Semaphore(CONCURRENCY);
+    var pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+    var peakActiveConnections = new AtomicInteger();
+    var peakPendingThreads = new AtomicInteger();
+    var lockWait = meterRegistry.timer("coupon.lock.wait", "kind", "coupon_registration");
+    var lockWaitCountBefore = lockWait.count();
+    var lockWaitNanosBefore = lockWait.totalTime(TimeUnit.NANOSECONDS);
+
+    // WHEN
+    var start = System.nanoTime();
+    try (var sampler = Executors.newSingleThreadScheduledExecutor(); var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      sampler.scheduleAtFixedRate(() -> {
+        peakActiveConnections.accumulateAndGet(pool.getActiveConnections(), Math::max);
+        peakPendingThreads.accumulateAndGet(pool.getThreadsAwaitingConnection(), Math::max);
+      }, 0, 5, TimeUnit.MILLISECONDS);
+
+      for (int i = 0; i < REQUESTS; i++) {
+        inFlight.acquire();
+        executor.submit(() -> {
+          try {
+            var random = ThreadLocalRandom.current();
+            var userId = USERS == 0 ? UUID.randomUUID() : users[random.nextInt(USERS)];
+            var ipAddress = random.nextInt(IP_ADDRESSES);
+            var httpRequest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/coupons/" + codes[codeSampler.next(random)] + "/register"))
+              .header("Content-Type", "application/json")
+              .header("X-Forwarded-For", "10." + (ipAddress >> 16 & 255) + "." + (ipAddress >> 8 & 255) + "." + (ipAddress & 255))
+              .POST(HttpRequest.BodyPublishers.ofString("{\"userId\": \"" + userId + "\"}"))
+              .build();
+            var requestStart = System.nanoTime();
+            var response = client.send(httpRequest, HttpResponse.BodyHandlers.discarding());
+            latencies.add(System.nanoTime() - requestStart);
+            statuses.computeIfAbsent(response.statusCode(), it -> new LongAdder()).increment();
+          } catch (Exception e) {
+            statuses.computeIfAbsent(-1, it -> new LongAdder()).increment();
+          } finally {
+            inFlight.release();
+          }
+        });
+      }
+    }
+    var elapsedNanos = System.nanoTime() - start;
+
+    // THEN
+    // only completed requests have a latency, failed ones are counted under status -1
+    var sortedLatencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    var lockWaits = lockWait.count() - lockWaitCountBefore;
+    var lockWaitNanos = lockWait.totalTime(TimeUnit.NANOSECONDS) - lockWaitNanosBefore;
+    var statusCounts = new TreeMap<Integer, Long>();
+    statuses.forEach((status, count) -> statusCounts.put(status, count.sum()));
+    log.info(String.format("""
+        flash sale: %d registrations, %s distribution over %d codes, concurrency %d
+          throughput: %.0f req/s, latency p50 %.1f ms, p99 %.1f ms, p999 %.1f ms, max %.1f ms
+          statuses: %s
+          lock wait: %d waits, mean %.2f ms, max %.1f ms
+          pool: peak %d/%d active connections, peak %d threads waiting for a connection
+        """,
+      REQUESTS, DISTRIBUTION, codes.length, CONCURRENCY,
+      REQUESTS / (elapsedNanos / 1e9), millis(percentile(sortedLatencies, 0.5)), millis(percentile(sortedLatencies, 0.99)), millis(percentile(sortedLatencies, 0.999)), millis(percentile(sortedLatencies, 1.0)),
+      statusCounts,
+      lockWaits, lockWaits == 0 ? 0 : millis(lockWaitNanos / lockWaits), lockWait.max(TimeUnit.MILLISECONDS),
+      peakActiveConnections.get(), pool.getTotalConnections(), peakPendingThreads.get()
+    ));
+
+    var usages = dslContext.select(COUPON.CODE, COUPON.USAGE_LIMIT, COUPON.CURRENT_USAGE, DSL.count(COUPON_USAGE.ID))
+      .from(COUPON)
+      .leftJoin(COUPON_USAGE).on(COUPON_USAGE.COUPON_ID.eq(COUPON.ID))
+      .groupBy(COUPON.CODE, COUPON.USAGE_LIMIT, COUPON.CURRENT_USAGE)
+      .fetch();
+    for (var usage : usages) {
+      assertTrue(usage.value4() <= usage.value2(), "usage limit exceeded for " + usage.value1() + ": " + usage.value4());
+      assertTrue(usage.value3() <= usage.value2(), "current usage over limit for " + usage.value1() + ": " + usage.value3());
+    }
+    var successful = statusCounts.getOrDefault(200, 0L);
+    assertEquals(successful, usages.stream().mapToLong(it -> it.value4()).sum());
+    assertTrue(statusCounts.keySet().stream().allMatch(status -> status == 200 || status == 400 || status == 404), "unexpected statuses: " + statusCounts);
+  }
+
+  private static HttpServer startIpApi() {
+    try {
+      var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      var body = "{\"countryCode\": \"PL\"}".getBytes(StandardCharsets.UTF_8);
+      server.createContext("/json/", exchange -> {
+        try {
+          Thread.sleep(GEOLOCATION_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      });
+      server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+      server.start();
+      return server;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private interface CodeSampler {
+    int next(ThreadLocalRandom random);
+  }
+
+  private static CodeSampler codeSampler(int codes) {
+    if (!DISTRIBUTION.equals("zipf")) {
+      return random -> random.nextInt(codes);
+    }
+    // cumulative zipf weights, the code of rank k is chosen with probability proportional to 1 / k^s
+    var cumulative = new double[codes];
+    var total = 0.0;
+    for (int rank = 1; rank <= codes; rank++) {
+      total += 1 / Math.pow(rank, ZIPF_EXPONENT);
+      cumulative[rank - 1] = total;
+    }
+    var sum = total;
+    return random -> {
+      var index = Arrays.binarySearch(cumulative, random.nextDouble(sum));
+      return index >= 0 ? index : Math.min(-index - 1, codes - 1);
+    };
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    return sorted.length == 0 ? 0 : sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+  }
+
+  private static double millis(double nanos) {
+    return nanos / 1e6;
+  }
+}
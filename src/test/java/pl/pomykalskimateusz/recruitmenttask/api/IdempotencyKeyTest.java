@@ -0,0 +1,103 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class IdempotencyKeyTest extends DatabaseContainer {
+  @Autowired
+  WebApplicationContext webApplicationContext;
+
+  MockMvc mockMvc;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @BeforeEach
+  void beforeEach() {
+    mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+    when(localizationService.getCountryCodeByIp(anyString())).thenReturn(Optional.of("PL"));
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldReplayRegistrationWithoutRunningItAgain() throws Exception {
+    // GIVEN
+    createCoupon("{\"code\": \"retried\", \"usageLimit\": 10, \"countryCode\": \"PL\"}", UUID.randomUUID().toString());
+    var key = UUID.randomUUID().toString();
+    var body = "{\"userId\": \"" + UUID.randomUUID() + "\"}";
+
+    // WHEN the client retries a registration that already succeeded
+    register("retried", key, body).andExpect(status().isOk());
+    register("retried", key, body).andExpect(status().isOk());
+
+    // THEN the retry should get the stored result while the same registration without a key fails on the user's usage
+    verify(localizationService, times(1)).getCountryCodeByIp(anyString());
+    register("retried", null, body).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldReplayRejectionAndRejectKeyReusedForDifferentRequest() throws Exception {
+    // GIVEN
+    var key = UUID.randomUUID().toString();
+
+    // WHEN
+    register("unknown", key, "{\"userId\": \"" + UUID.randomUUID() + "\"}").andExpect(status().isNotFound());
+
+    // THEN
+    register("unknown", key, "{\"userId\": \"" + UUID.randomUUID() + "\"}").andExpect(status().isConflict());
+    register("other", key, "{\"userId\": \"" + UUID.randomUUID() + "\"}").andExpect(status().isConflict());
+  }
+
+  @Test
+  void shouldReturnSameCouponToRetriedCreation() throws Exception {
+    // GIVEN
+    var key = UUID.randomUUID().toString();
+    var body = "{\"code\": \"created\", \"usageLimit\": 10, \"countryCode\": \"PL\"}";
+
+    // WHEN
+    var first = createCoupon(body, key);
+    var retried = createCoupon(body, key);
+
+    // THEN the retry should not fail as a duplicated code
+    assertEquals(first, retried);
+    mockMvc.perform(post("/coupons").contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isBadRequest());
+  }
+
+  private String createCoupon(String body, String key) throws Exception {
+    return mockMvc.perform(post("/coupons").header("Idempotency-Key", key).contentType(MediaType.APPLICATION_JSON).content(body))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.id").exists())
+      .andReturn().getResponse().getContentAsString();
+  }
+
+  private ResultActions register(String code, String key, String body) throws Exception {
+    var request = post("/coupons/" + code + "/register").header("X-Forwarded-For", "10.1.0.1").contentType(MediaType.APPLICATION_JSON).content(body);
+    return mockMvc.perform(key == null ? request : request.header("Idempotency-Key", key));
+  }
+}
@@ -0,0 +1,66 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// metrics export is switched off in spring boot tests unless enabled explicitly
+@TestPropertySource(properties = "management.prometheus.metrics.export.enabled=true")
+public class PrometheusEndpointTest extends DatabaseContainer {
+  @Autowired
+  WebApplicationContext webApplicationContext;
+
+  @Autowired
+  CouponService couponService;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldExposeRegistrationMetricsWithoutCouponCodes() throws Exception {
+    // GIVEN
+    when(localizationService.getCountryCodeByIp(anyString())).thenReturn(Optional.of("DE"));
+    couponService.createCoupon(new CreateCouponBody().code("metrics-code").countryCode("PL").usageLimit(10));
+
+    // WHEN registering in the wrong country
+    assertThrows(RuntimeException.class, () -> couponService.registerCoupon(UUID.randomUUID(), "metrics-code", "127.0.0.1"));
+    var scrape = MockMvcBuilders.webAppContextSetup(webApplicationContext).build()
+      .perform(get("/actuator/prometheus"))
+      .andExpect(status().isOk())
+      .andReturn().getResponse().getContentAsString();
+
+    // THEN
+    assertTrue(scrape.contains("coupon_registration_seconds_count{"));
+    assertTrue(scrape.contains("coupon_creation_seconds_count{"));
+    assertTrue(scrape.contains("coupon_repository_seconds_count{class=\"pl.pomykalskimateusz.recruitmenttask.coupon.CouponWriteRepository\""));
+    assertTrue(scrape.contains("db_query_seconds_count{"));
+    assertTrue(scrape.contains("coupon_rejections_total{reason=\"country_mismatch\"}"));
+    assertTrue(scrape.contains("hikaricp_connections_active"));
+    assertTrue(scrape.contains("cache_gets_total{cache=\"coupon_metadata\""));
+    assertFalse(scrape.toLowerCase().contains("metrics-code"));
+  }
+}
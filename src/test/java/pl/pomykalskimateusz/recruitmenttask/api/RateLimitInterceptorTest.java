@@ -0,0 +1,68 @@
+package pl.pomykalskimateusz.recruitmenttask.api;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@TestPropertySource(properties = {
+  "rate-limit.ip-address.capacity=2",
+  "rate-limit.ip-address.refill-per-second=0.1",
+  "rate-limit.user.capacity=1",
+  "rate-limit.user.refill-per-second=0.1",
+  "client-ip.trusted-proxies=127.0.0.1"
+})
+public class RateLimitInterceptorTest extends DatabaseContainer {
+  @Autowired
+  WebApplicationContext webApplicationContext;
+
+  MockMvc mockMvc;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @BeforeEach
+  void beforeEach() {
+    mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+  }
+
+  @Test
+  void shouldRejectIpAddressOverLimit() throws Exception {
+    // GIVEN
+    var ipAddress = "10.0.0.1";
+
+    // WHEN / THEN the third request should be rejected before reaching the controller
+    mockMvc.perform(get("/coupons").header("X-Forwarded-For", ipAddress)).andExpect(status().isOk());
+    mockMvc.perform(get("/coupons").header("X-Forwarded-For", ipAddress)).andExpect(status().isOk());
+    mockMvc.perform(get("/coupons").header("X-Forwarded-For", ipAddress))
+      .andExpect(status().isTooManyRequests())
+      .andExpect(header().string("Retry-After", "10"));
+    mockMvc.perform(get("/coupons").header("X-Forwarded-For", "10.0.0.2")).andExpect(status().isOk());
+  }
+
+  @Test
+  void shouldRejectUserOverLimitFromAnyIpAddress() throws Exception {
+    // GIVEN
+    var body = "{\"userId\": \"" + UUID.randomUUID() + "\"}";
+
+    // WHEN / THEN the second registration of the user should be rejected although it comes from another address
+    mockMvc.perform(post("/coupons/unknown/register").header("X-Forwarded-For", "10.0.1.1").contentType(MediaType.APPLICATION_JSON).content(body))
+      .andExpect(status().isNotFound());
+    mockMvc.perform(post("/coupons/unknown/register").header("X-Forwarded-For", "10.0.1.2").contentType(MediaType.APPLICATION_JSON).content(body))
+      .andExpect(status().isTooManyRequests());
+  }
+}
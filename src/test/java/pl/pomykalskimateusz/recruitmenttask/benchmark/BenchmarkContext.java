@@ -0,0 +1,62 @@
+package pl.pomykalskimateusz.recruitmenttask.benchmark;
+
+import org.jooq.DSLContext;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import pl.pomykalskimateusz.recruitmenttask.Application;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationProvider;
+
+import java.util.Optional;
+
+// Application context for the macro benchmarks. PostgreSQL is started with Testcontainers, unless
+// -Dbenchmark.database-url points to an existing database (user/password: benchmark.database-username/-password),
+// whose coupon tables are truncated first. Every ip address is located in PL without any http call.
+public final class BenchmarkContext implements AutoCloseable {
+  private final PostgreSQLContainer<?> postgres;
+  private final ConfigurableApplicationContext applicationContext;
+
+  private BenchmarkContext(PostgreSQLContainer<?> postgres, ConfigurableApplicationContext applicationContext) {
+    this.postgres = postgres;
+    this.applicationContext = applicationContext;
+  }
+
+  public static BenchmarkContext start() {
+    var databaseUrl = System.getProperty("benchmark.database-url");
+    PostgreSQLContainer<?> postgres = null;
+    if (databaseUrl == null) {
+      postgres = new PostgreSQLContainer<>("postgres:13");
+      postgres.start();
+    }
+    var url = postgres == null ? databaseUrl : postgres.getJdbcUrl();
+    var username = postgres == null ? System.getProperty("benchmark.database-username", "postgres") : postgres.getUsername();
+    var password = postgres == null ? System.getProperty("benchmark.database-password", "postgres") : postgres.getPassword();
+
+    var applicationContext = new SpringApplicationBuilder(Application.class)
+      .web(WebApplicationType.NONE)
+      .initializers(context -> context.getBeanFactory().registerSingleton("benchmarkLocalizationProvider", (LocalizationProvider) ipAddress -> Optional.of("PL")))
+      .run(
+        "--database_url=" + url,
+        "--database_username=" + username,
+        "--database_password=" + password,
+        "--spring.liquibase.liquibase-schema=public",
+        "--localization.provider=benchmark",
+        "--logging.level.root=warn"
+      );
+    applicationContext.getBean(DSLContext.class).execute("truncate table coupon_usage, coupon");
+    return new BenchmarkContext(postgres, applicationContext);
+  }
+
+  public <T> T getBean(Class<T> type) {
+    return applicationContext.getBean(type);
+  }
+
+  @Override
+  public void close() {
+    applicationContext.close();
+    if (postgres != null) {
+      postgres.stop();
+    }
+  }
+}
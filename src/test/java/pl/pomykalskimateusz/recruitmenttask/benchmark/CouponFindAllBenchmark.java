@@ -0,0 +1,66 @@
+package pl.pomykalskimateusz.recruitmenttask.benchmark;
+
+import org.jooq.DSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// findAll over a fixed number of coupons while the number of their usages grows
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CouponFindAllBenchmark {
+  static int COUPONS = 100;
+
+  @Param({"10000", "100000", "1000000"})
+  int usages;
+
+  BenchmarkContext context;
+  CouponService couponService;
+
+  @Setup
+  public void setUp() {
+    context = BenchmarkContext.start();
+    couponService = context.getBean(CouponService.class);
+    var dslContext = context.getBean(DSLContext.class);
+    dslContext.execute("""
+      insert into coupon (id, code, code_normalized, usage_limit, country, version)
+      select gen_random_uuid(), 'find-all-' || i, 'FIND-ALL-' || i, 2147483647, 'PL', 1 from generate_series(1, ?) i
+      """, COUPONS);
+    dslContext.execute("""
+      insert into coupon_usage (id, coupon_id, user_id, version)
+      select gen_random_uuid(), coupon.id, gen_random_uuid(), 1
+      from generate_series(1, ?) i
+      join (select id, row_number() over (order by id) - 1 as position from coupon) coupon on coupon.position = i % ?
+      """, usages, COUPONS);
+    dslContext.execute("update coupon set current_usage = (select count(*) from coupon_usage where coupon_usage.coupon_id = coupon.id)");
+    dslContext.execute("analyze coupon, coupon_usage");
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public List<CouponData> findAll() {
+    return couponService.fetchCoupons();
+  }
+}
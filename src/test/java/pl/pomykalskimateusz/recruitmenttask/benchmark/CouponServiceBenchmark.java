@@ -0,0 +1,60 @@
+package pl.pomykalskimateusz.recruitmenttask.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.model.BasicCouponData;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CouponServiceBenchmark {
+  static String CONTENDED_CODE = "CONTENDED";
+
+  BenchmarkContext context;
+  CouponService couponService;
+  AtomicLong sequence = new AtomicLong();
+
+  @Setup
+  public void setUp() {
+    context = BenchmarkContext.start();
+    couponService = context.getBean(CouponService.class);
+    couponService.createCoupon(new CreateCouponBody().code(CONTENDED_CODE).countryCode("PL").usageLimit(Integer.MAX_VALUE));
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Optional<BasicCouponData> createCoupon() {
+    return couponService.createCoupon(new CreateCouponBody().code("created-" + sequence.incrementAndGet()).countryCode("PL").usageLimit(100));
+  }
+
+  // every registration is a new user of the same coupon, so all of them contend on its row and advisory lock
+  @Benchmark
+  @Threads(8)
+  public void registerCouponOnOneCode() {
+    couponService.registerCoupon(UUID.randomUUID(), CONTENDED_CODE, "127.0.0.1");
+  }
+}
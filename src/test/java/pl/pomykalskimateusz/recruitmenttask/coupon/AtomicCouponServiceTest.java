@@ -0,0 +1,8 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.springframework.test.context.TestPropertySource;
+
+// runs every CouponServiceTest scenario, including the concurrent ones, against the single-statement redemption
+@TestPropertySource(properties = "coupon.registration.mode=atomic")
+public class AtomicCouponServiceTest extends CouponServiceTest {
+}
@@ -0,0 +1,8 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.springframework.test.context.TestPropertySource;
+
+// registrations applied by the single CTE statement report their coupon id back for the delta
+@TestPropertySource(properties = "coupon.registration.mode=atomic")
+public class AtomicCouponUsageStatisticsTest extends CouponUsageStatisticsTest {
+}
@@ -0,0 +1,167 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CouponBulkServiceTest extends DatabaseContainer {
+  @Autowired
+  CouponBulkService couponBulkService;
+
+  @Autowired
+  CouponService couponService;
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldCreateCouponsFromJsonAndReportRejectedRows() {
+    // GIVEN existing coupon and json array with invalid and duplicated rows
+    couponService.createCoupon(new CreateCouponBody().code("existing").countryCode("PL").usageLimit(1));
+    var body = """
+      [
+        {"code": "first", "countryCode": "pl", "usageLimit": 10},
+        {"code": "second", "countryCode": "XX", "usageLimit": 10},
+        {"code": "FIRST", "countryCode": "PL", "usageLimit": 5},
+        {"code": "Existing", "countryCode": "PL", "usageLimit": 5},
+        {"code": "third\\"quoted", "countryCode": "DE", "usageLimit": 1}
+      ]
+      """;
+
+    // WHEN
+    var report = couponBulkService.createCoupons(stream(body), CouponBulkService.Format.JSON);
+
+    // THEN
+    assertEquals(5, report.total());
+    assertEquals(2, report.created());
+    assertEquals(List.of(2, 3, 4), report.rejected().stream().map(CouponBulkReport.RejectedRow::row).toList());
+    assertEquals("Invalid country code: XX", report.rejected().get(0).message());
+    assertEquals("Duplicated coupon code found: FIRST", report.rejected().get(1).message());
+    assertEquals("Duplicated coupon code found: Existing", report.rejected().get(2).message());
+
+    var codes = couponService.fetchCoupons().stream().map(coupon -> coupon.getCode()).toList();
+    assertEquals(3, codes.size());
+    assertTrue(codes.containsAll(List.of("existing", "first", "third\"quoted")));
+  }
+
+  @Test
+  void shouldKeepValidityWindowOfJsonRows() {
+    // GIVEN
+    var body = """
+      [
+        {"code": "windowed", "countryCode": "PL", "usageLimit": 10, "validFrom": "2099-01-01T10:15:30", "validUntil": "2099-02-01T00:00:00"},
+        {"code": "open", "countryCode": "PL", "usageLimit": 10},
+        {"code": "inverted", "countryCode": "PL", "usageLimit": 10, "validFrom": "2099-02-01T00:00:00", "validUntil": "2099-01-01T00:00:00"}
+      ]
+      """;
+
+    // WHEN
+    var report = couponBulkService.createCoupons(stream(body), CouponBulkService.Format.JSON);
+
+    // THEN
+    assertEquals(2, report.created());
+    assertEquals(3, report.rejected().getFirst().row());
+    var coupons = couponService.fetchCoupons().stream().collect(Collectors.toMap(coupon -> coupon.getCode(), coupon -> coupon));
+    assertEquals(LocalDateTime.of(2099, 1, 1, 10, 15, 30), coupons.get("windowed").getValidFrom());
+    assertEquals(LocalDateTime.of(2099, 2, 1, 0, 0), coupons.get("windowed").getValidUntil());
+    assertNull(coupons.get("open").getValidFrom());
+    assertNull(coupons.get("open").getValidUntil());
+  }
+
+  @Test
+  void shouldCreateCouponsFromCsv() {
+    // GIVEN
+    var body = """
+      code,countryCode,usageLimit
+      first,PL,10
+      second,PL,not-a-number
+      third,DE,1
+      """;
+
+    // WHEN
+    var report = couponBulkService.createCoupons(stream(body), CouponBulkService.Format.CSV);
+
+    // THEN
+    assertEquals(3, report.total());
+    assertEquals(2, report.created());
+    assertEquals(2, report.rejected().getFirst().row());
+    assertEquals(2, couponService.fetchCoupons().size());
+  }
+
+  @Test
+  void shouldCreateCouponsFromQuotedCsv() {
+    // GIVEN rows quoted the way CouponStagingWriter quotes them, one of them with the wrong number of columns
+    var body = "code,countryCode,usageLimit\r\n"
+      + "\"with,comma\",PL,10\r\n"
+      + "\"with\"\"quote\",\"DE\",\"1\"\r\n"
+      + "\"missing,columns\"\r\n";
+
+    // WHEN
+    var report = couponBulkService.createCoupons(stream(body), CouponBulkService.Format.CSV);
+
+    // THEN
+    assertEquals(3, report.total());
+    assertEquals(2, report.created());
+    assertEquals(3, report.rejected().getFirst().row());
+    assertEquals("missing,columns", report.rejected().getFirst().code());
+    var codes = couponService.fetchCoupons().stream().map(coupon -> coupon.getCode()).toList();
+    assertTrue(codes.containsAll(List.of("with,comma", "with\"quote")));
+  }
+
+  @Test
+  void shouldThrowExceptionForMalformedCsvQuoting() {
+    // GIVEN
+    var body = "first,PL,10\n\"unterminated,PL,10\nsecond,PL,10\n";
+
+    // WHEN & THEN nothing from the request should be created
+    assertThrows(BadRequestException.class, () -> couponBulkService.createCoupons(stream(body), CouponBulkService.Format.CSV));
+    assertEquals(0, couponService.fetchCoupons().size());
+  }
+
+  @Test
+  void shouldThrowExceptionForMalformedJson() {
+    // GIVEN
+    var body = "[{\"code\": \"first\", \"countryCode\": \"PL\", \"usageLimit\": 10}, {\"code\": ";
+
+    // WHEN & THEN nothing from the request should be created
+    assertThrows(BadRequestException.class, () -> couponBulkService.createCoupons(stream(body), CouponBulkService.Format.JSON));
+    assertEquals(0, couponService.fetchCoupons().size());
+  }
+
+  @Test
+  void shouldCreateHundredThousandCoupons() {
+    // GIVEN
+    var rows = 100_000;
+    var body = new StringBuilder("code,countryCode,usageLimit\n");
+    for (int i = 0; i < rows; i++) {
+      body.append("bulk").append(i).append(",PL,100\n");
+    }
+
+    // WHEN
+    var report = couponBulkService.createCoupons(stream(body.toString()), CouponBulkService.Format.CSV);
+
+    // THEN
+    assertEquals(rows, report.created());
+    assertTrue(report.rejected().isEmpty());
+  }
+
+  private static ByteArrayInputStream stream(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,60 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CouponChangeListenerTest {
+  DataSource dataSource = mock(DataSource.class);
+  Connection connection = mock(Connection.class);
+  Statement statement = mock(Statement.class);
+  PGConnection pgConnection = mock(PGConnection.class);
+  CouponMetadataCache couponMetadataCache = mock(CouponMetadataCache.class);
+  CouponCodeFilter couponCodeFilter = mock(CouponCodeFilter.class);
+  CouponExpiryScheduler couponExpiryScheduler = mock(CouponExpiryScheduler.class);
+  CouponChangeListener listener;
+
+  @AfterEach
+  void afterEach() throws Exception {
+    listener.shutdown();
+  }
+
+  @Test
+  void shouldUnlistenAndReconnectWhenHandlingNotificationFails() throws Exception {
+    // GIVEN connection delivering one notification whose handling fails once
+    var notification = mock(PGNotification.class);
+    when(notification.getParameter()).thenReturn("TEST");
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+    when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+    when(pgConnection.getNotifications(anyInt()))
+      .thenReturn(new PGNotification[]{notification})
+      .thenAnswer(invocation -> {
+        Thread.sleep(10);
+        return new PGNotification[0];
+      });
+    doThrow(new IllegalStateException("reload failed")).doNothing().when(couponExpiryScheduler).reload("TEST");
+
+    // WHEN
+    listener = new CouponChangeListener(dataSource, couponMetadataCache, couponCodeFilter, couponExpiryScheduler);
+
+    // THEN the listener should stop listening on the pooled connection, survive the failure and listen again
+    verify(statement, timeout(5000)).execute("UNLISTEN *");
+    verify(dataSource, timeout(5000).times(2)).getConnection();
+    verify(statement, timeout(5000).times(2)).execute("LISTEN " + CouponChangeListener.CHANNEL);
+    verify(couponExpiryScheduler, atLeast(2)).reloadAll();
+  }
+}
@@ -0,0 +1,109 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static pl.pomykalskimateusz.recruitmenttask.Await.awaitTrue;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+
+public class CouponCodeFilterTest extends DatabaseContainer {
+  @Autowired
+  CouponCodeFilter couponCodeFilter;
+
+  @Autowired
+  CouponMetadataCache couponMetadataCache;
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  CouponBulkService couponBulkService;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @BeforeEach
+  void beforeEach() throws InterruptedException {
+    // the filter lets every code through until the startup scan has finished
+    awaitTrue(() -> couponCodeFilter.expectedFalsePositiveRate() < 1);
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+    couponMetadataCache.invalidateAll();
+  }
+
+  @Test
+  void shouldRejectUnknownCodeBeforeCacheAndGeolocation() {
+    // GIVEN
+    var rejections = meterRegistry.counter("coupon.code.filter.rejections").count();
+    var cacheRequests = couponMetadataCache.getCacheStats().requestCount();
+
+    // WHEN
+    assertThrows(ResourceNotFoundException.class, () -> couponService.registerCoupon(UUID.randomUUID(), "guessed", "127.0.0.1"));
+
+    // THEN the filter should answer alone
+    assertEquals(rejections + 1, meterRegistry.counter("coupon.code.filter.rejections").count());
+    assertEquals(cacheRequests, couponMetadataCache.getCacheStats().requestCount());
+    verify(localizationService, never()).getCountryCodeByIp(anyString());
+  }
+
+  @Test
+  void shouldContainCodesCreatedOnThisNode() {
+    // WHEN
+    couponService.createCoupon(new CreateCouponBody().code("single").countryCode("PL").usageLimit(1));
+    couponBulkService.createCoupons(
+      new ByteArrayInputStream("code,countryCode,usageLimit\nbulk1,PL,1\nbulk2,PL,1\n".getBytes(StandardCharsets.UTF_8)),
+      CouponBulkService.Format.CSV
+    );
+
+    // THEN codes should be found in any case, also after the filter was rebuilt from the table
+    assertTrue(couponCodeFilter.mightContain("SINGLE"));
+    assertTrue(couponCodeFilter.mightContain("bulk1"));
+    assertTrue(couponCodeFilter.mightContain("Bulk2"));
+    couponCodeFilter.rebuildNow();
+    assertTrue(couponCodeFilter.mightContain("single"));
+    assertTrue(couponCodeFilter.mightContain("bulk2"));
+  }
+
+  @Test
+  void shouldContainCodesCreatedByAnotherNode() throws InterruptedException {
+    // WHEN the coupon is inserted without going through this node
+    dslContext.insertInto(COUPON)
+      .set(COUPON.ID, UUID.randomUUID())
+      .set(COUPON.CODE, "other")
+      .set(COUPON.USAGE_LIMIT, 10)
+      .set(COUPON.COUNTRY, "PL")
+      .set(COUPON.VERSION, 1)
+      .execute();
+
+    // THEN the coupon_changed notification should add it
+    awaitTrue(() -> couponCodeFilter.mightContain("other"));
+  }
+}
@@ -0,0 +1,81 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CouponCodeGeneratorTest extends DatabaseContainer {
+  @Autowired
+  CouponCodeGenerator couponCodeGenerator;
+
+  @Autowired
+  CouponService couponService;
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldGenerateUniqueCodesAcrossRequests() {
+    // GIVEN
+    var body = new GenerateCouponsBody("SALE-", null, 8, 10_000, "PL", 1);
+
+    // WHEN generating twice for the same prefix, alphabet and length
+    var first = codes(couponCodeGenerator.generate(body));
+    var second = codes(couponCodeGenerator.generate(body));
+
+    // THEN every code should be new and stored as coupon
+    var all = new HashSet<String>(first);
+    all.addAll(second);
+    assertEquals(20_000, all.size());
+    assertTrue(all.stream().allMatch(code -> code.matches("SALE-[" + CouponCodeGenerator.DEFAULT_ALPHABET + "]{8}")));
+    assertEquals(20_000, couponService.fetchCoupons().size());
+  }
+
+  @Test
+  void shouldSkipCodesThatAlreadyExist() {
+    // GIVEN every code of a tiny code space but two taken by regular coupons
+    var body = new GenerateCouponsBody("X", "AB", 4, 14, "PL", 1);
+    couponService.createCoupon(new CreateCouponBody().code("xaaaa").countryCode("PL").usageLimit(1));
+    couponService.createCoupon(new CreateCouponBody().code("XBBBB").countryCode("PL").usageLimit(1));
+
+    // WHEN
+    var generated = couponCodeGenerator.generate(body);
+
+    // THEN the remaining fourteen codes should be generated and the space should be exhausted
+    var codes = codes(generated);
+    assertEquals(14, generated.created());
+    assertEquals(14, new HashSet<>(codes).size());
+    assertTrue(codes.stream().noneMatch(code -> code.equals("XAAAA") || code.equals("XBBBB")));
+    assertThrows(BadRequestException.class, () -> couponCodeGenerator.generate(new GenerateCouponsBody("X", "AB", 4, 1, "PL", 1)));
+  }
+
+  @Test
+  void shouldNotCreateAnyCodeWhenTopUpRunsOutOfCodes() {
+    // GIVEN tiny code space with two codes taken by regular coupons
+    couponService.createCoupon(new CreateCouponBody().code("XAAAA").countryCode("PL").usageLimit(1));
+    couponService.createCoupon(new CreateCouponBody().code("XBBBB").countryCode("PL").usageLimit(1));
+
+    // WHEN generating more codes than are left THEN the request should fail without creating any of them
+    assertThrows(BadRequestException.class, () -> couponCodeGenerator.generate(new GenerateCouponsBody("X", "AB", 4, 15, "PL", 1)));
+    assertEquals(2, couponService.fetchCoupons().size());
+  }
+
+  private static List<String> codes(GeneratedCoupons generated) {
+    var codes = new ArrayList<String>();
+    generated.forEachCode(codes::add);
+    return codes;
+  }
+}
@@ -0,0 +1,137 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static pl.pomykalskimateusz.recruitmenttask.Await.awaitTrue;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+
+public class CouponExpirySchedulerTest extends DatabaseContainer {
+  static String IP_ADDRESS = "127.0.0.1";
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  CouponWriteRepository couponWriteRepository;
+
+  @Autowired
+  CouponMetadataCache couponMetadataCache;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @BeforeEach
+  void beforeEach() {
+    when(localizationService.getCountryCodeByIp(anyString())).thenReturn(Optional.of("PL"));
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+    couponMetadataCache.invalidateAll();
+  }
+
+  @Test
+  void shouldRejectCouponOutsideOfItsValidityWindow() {
+    // GIVEN
+    var now = LocalDateTime.now();
+    couponService.createCoupon(new CreateCouponBody().code("upcoming").countryCode("PL").usageLimit(10).validFrom(now.plusDays(1)).validUntil(now.plusDays(2)));
+    couponService.createCoupon(new CreateCouponBody().code("expired").countryCode("PL").usageLimit(10).validUntil(now.plusDays(1)));
+    dslContext.update(COUPON).set(COUPON.VALID_UNTIL, now.minusMinutes(1)).where(COUPON.CODE.eq("expired")).execute();
+    couponMetadataCache.invalidateAll();
+
+    // WHEN THEN both the cached metadata check and the redemption statement should reject them
+    assertThrows(BadRequestException.class, () -> couponService.registerCoupon(UUID.randomUUID(), "upcoming", IP_ADDRESS));
+    assertThrows(BadRequestException.class, () -> couponService.registerCoupon(UUID.randomUUID(), "expired", IP_ADDRESS));
+    assertEquals(CouponRedemptionResult.COUPON_NOT_ACTIVE, couponWriteRepository.redeemCouponUsage(UUID.randomUUID(), "upcoming", "PL"));
+    assertEquals(CouponRedemptionResult.COUPON_EXPIRED, couponWriteRepository.redeemCouponUsage(UUID.randomUUID(), "expired", "PL"));
+    assertTrue(couponWriteRepository.leaseUsage(UUID.randomUUID(), "node", "upcoming", "PL", 10, Duration.ofSeconds(30)).isEmpty());
+    assertTrue(couponWriteRepository.leaseUsage(UUID.randomUUID(), "node", "expired", "PL", 10, Duration.ofSeconds(30)).isEmpty());
+  }
+
+  @Test
+  void shouldRejectInvalidValidityWindowOnCreation() {
+    // GIVEN
+    var now = LocalDateTime.now();
+
+    // WHEN THEN
+    assertThrows(BadRequestException.class, () -> couponService.createCoupon(new CreateCouponBody().code("past").countryCode("PL").usageLimit(10).validUntil(now.minusMinutes(1))));
+    assertThrows(BadRequestException.class, () -> couponService.createCoupon(new CreateCouponBody().code("reversed").countryCode("PL").usageLimit(10).validFrom(now.plusDays(2)).validUntil(now.plusDays(1))));
+  }
+
+  @Test
+  void shouldLeaveExpiredCouponsOutOfListingsOnly() {
+    // GIVEN
+    var now = LocalDateTime.now();
+    couponService.createCoupon(new CreateCouponBody().code("active").countryCode("PL").usageLimit(10).validUntil(now.plusDays(1)));
+    couponService.createCoupon(new CreateCouponBody().code("expired").countryCode("PL").usageLimit(10).validUntil(now.plusDays(1)));
+    dslContext.update(COUPON).set(COUPON.VALID_UNTIL, now.minusMinutes(1)).where(COUPON.CODE.eq("expired")).execute();
+
+    // WHEN
+    var all = couponService.fetchCoupons();
+    var page = couponService.fetchCoupons(null, 10);
+    var streamed = new ArrayList<CouponData>();
+    couponService.streamCoupons(streamed::add);
+
+    // THEN
+    assertEquals(1, all.size());
+    assertEquals("active", all.getFirst().getCode());
+    assertEquals(1, page.getItems().size());
+    assertEquals(2, streamed.size());
+  }
+
+  @Test
+  void shouldEvictCouponWhenItExpires() throws InterruptedException {
+    // GIVEN coupon registered once, so its metadata is cached on this node
+    var expired = meterRegistry.counter("coupon.expired").count();
+    couponService.createCoupon(new CreateCouponBody().code("short").countryCode("PL").usageLimit(10).validUntil(LocalDateTime.now().plusSeconds(1)));
+    couponService.registerCoupon(UUID.randomUUID(), "short", IP_ADDRESS);
+
+    // WHEN its validity ends
+    awaitTrue(() -> meterRegistry.counter("coupon.expired").count() > expired);
+
+    // THEN
+    assertThrows(BadRequestException.class, () -> couponService.registerCoupon(UUID.randomUUID(), "short", IP_ADDRESS));
+  }
+
+  @Test
+  void shouldRescheduleCouponChangedByAnotherNode() throws InterruptedException {
+    // GIVEN coupon without an expiry
+    var expired = meterRegistry.counter("coupon.expired").count();
+    couponService.createCoupon(new CreateCouponBody().code("changed").countryCode("PL").usageLimit(10));
+
+    // WHEN its validity is shortened without going through this node
+    dslContext.update(COUPON).set(COUPON.VALID_UNTIL, LocalDateTime.now().plusSeconds(1)).where(COUPON.CODE.eq("changed")).execute();
+
+    // THEN the coupon_changed notification should schedule its expiry
+    awaitTrue(() -> meterRegistry.counter("coupon.expired").count() > expired);
+  }
+}
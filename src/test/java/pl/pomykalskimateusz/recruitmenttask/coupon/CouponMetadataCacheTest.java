@@ -0,0 +1,82 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static pl.pomykalskimateusz.recruitmenttask.Await.awaitTrue;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+
+public class CouponMetadataCacheTest extends DatabaseContainer {
+  @Autowired
+  CouponMetadataCache couponMetadataCache;
+
+  @Autowired
+  CouponCodeFilter couponCodeFilter;
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+    couponMetadataCache.invalidateAll();
+  }
+
+  @Test
+  void shouldRejectUnknownCodeFromCacheWithoutGeolocation() throws InterruptedException {
+    // GIVEN unknown code let through by the code filter, like one of its false positives
+    var code = "unknown";
+    awaitTrue(() -> couponCodeFilter.expectedFalsePositiveRate() < 1);
+    couponCodeFilter.put(code);
+    var hits = couponMetadataCache.getCacheStats().hitCount();
+
+    // WHEN registering the same unknown code twice
+    assertThrows(ResourceNotFoundException.class, () -> couponService.registerCoupon(UUID.randomUUID(), code, "127.0.0.1"));
+    assertThrows(ResourceNotFoundException.class, () -> couponService.registerCoupon(UUID.randomUUID(), code, "127.0.0.1"));
+
+    // THEN the second attempt should be answered by the negative cache entry and no ip should be geolocated
+    assertEquals(hits + 1, couponMetadataCache.getCacheStats().hitCount());
+    verify(localizationService, never()).getCountryCodeByIp(anyString());
+  }
+
+  @Test
+  void shouldInvalidateCachedCouponWhenChangedByAnotherNode() throws Exception {
+    // GIVEN negative cache entry for a code
+    var code = "test";
+    assertTrue(couponMetadataCache.find(code).isEmpty());
+
+    // WHEN the coupon is inserted and later updated without going through this node
+    dslContext.insertInto(COUPON)
+      .set(COUPON.ID, UUID.randomUUID())
+      .set(COUPON.CODE, code)
+      .set(COUPON.USAGE_LIMIT, 10)
+      .set(COUPON.COUNTRY, "PL")
+      .set(COUPON.VERSION, 1)
+      .execute();
+
+    // THEN the coupon_changed notifications should refresh the cache
+    awaitTrue(() -> couponMetadataCache.find(code).isPresent());
+    dslContext.update(COUPON).set(COUPON.COUNTRY, "DE").execute();
+    awaitTrue(() -> couponMetadataCache.find(code).map(it -> it.country().equals("DE")).orElse(false));
+  }
+}
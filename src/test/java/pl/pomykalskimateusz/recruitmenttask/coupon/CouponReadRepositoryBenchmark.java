@@ -0,0 +1,73 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository.COUPON_ALIAS;
+import static pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository.COUPON_DATA_SELECT_FIELDS;
+import static pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository.COUPON_EXISTS_FIELD;
+import static pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository.COUPON_TOTAL_USAGE_FIELD;
+import static pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository.COUPON_USER_USAGE_FIELD;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+
+// Mapping of fetched records only, no database involved
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CouponReadRepositoryBenchmark {
+  CouponReadRepository couponReadRepository;
+  Record couponRecord;
+  Record couponUsageRecord;
+
+  @Setup
+  public void setUp() {
+    var dslContext = DSL.using(SQLDialect.POSTGRES);
+    couponReadRepository = new CouponReadRepository(dslContext);
+
+    couponRecord = dslContext.newRecord(COUPON_DATA_SELECT_FIELDS.toArray(new Field<?>[0]));
+    couponRecord.set(COUPON.ID, UUID.randomUUID());
+    couponRecord.set(COUPON.CODE, "SUMMER2024");
+    couponRecord.set(COUPON.USAGE_LIMIT, 100);
+    couponRecord.set(COUPON.COUNTRY, "PL");
+    couponRecord.set(COUPON.CREATED_DATE_TIMESTAMP, LocalDateTime.now());
+    couponRecord.set(COUPON.CURRENT_USAGE, 42);
+
+    couponUsageRecord = dslContext.newRecord(COUPON_ALIAS.ID, COUPON_ALIAS.COUNTRY, COUPON_ALIAS.USAGE_LIMIT, COUPON_EXISTS_FIELD, COUPON_TOTAL_USAGE_FIELD, COUPON_USER_USAGE_FIELD, COUPON_ALIAS.VALID_FROM, COUPON_ALIAS.VALID_UNTIL);
+    couponUsageRecord.set(COUPON_ALIAS.ID, UUID.randomUUID());
+    couponUsageRecord.set(COUPON_ALIAS.COUNTRY, "PL");
+    couponUsageRecord.set(COUPON_ALIAS.USAGE_LIMIT, 100);
+    couponUsageRecord.set(COUPON_EXISTS_FIELD, true);
+    couponUsageRecord.set(COUPON_TOTAL_USAGE_FIELD, 42);
+    couponUsageRecord.set(COUPON_USER_USAGE_FIELD, 0);
+  }
+
+  @Benchmark
+  public CouponData buildCouponData() {
+    return couponReadRepository.buildCouponData(couponRecord);
+  }
+
+  @Benchmark
+  public CouponReadRepository.CouponUsageData buildCouponUsageData() {
+    return couponReadRepository.buildCouponUsageData(couponUsageRecord);
+  }
+}
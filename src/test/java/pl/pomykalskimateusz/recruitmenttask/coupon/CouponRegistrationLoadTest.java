@@ -0,0 +1,124 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class CouponRegistrationLoadTest extends DatabaseContainer {
+  static int CONCURRENT_REGISTRATIONS = 100;
+  static long GEOLOCATION_DELAY_MILLIS = 300;
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  DataSource dataSource;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldNotHoldConnectionsWhileWaitingForGeolocation() throws Exception {
+    // GIVEN slow geolocation provider and a separate coupon for every registration, so they do not contend on locks
+    var pendingGeolocations = new AtomicInteger();
+    when(localizationService.getCountryCodeByIp(anyString())).thenAnswer(invocation -> {
+      pendingGeolocations.incrementAndGet();
+      Thread.sleep(GEOLOCATION_DELAY_MILLIS);
+      pendingGeolocations.decrementAndGet();
+      return Optional.of("PL");
+    });
+    for (int i = 0; i < CONCURRENT_REGISTRATIONS; i++) {
+      couponService.createCoupon(new CreateCouponBody().code("load" + i).countryCode("PL").usageLimit(1));
+    }
+
+    var pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+    // connections held permanently, e.g. by the coupon change listener
+    var idleActiveConnections = pool.getActiveConnections();
+    var peakActiveConnectionsDuringGeolocation = new AtomicInteger();
+    var running = new AtomicBoolean(true);
+    var readLatencies = Collections.synchronizedList(new ArrayList<Long>());
+
+    try (var executor = Executors.newFixedThreadPool(CONCURRENT_REGISTRATIONS + 2)) {
+      var start = new CountDownLatch(1);
+      // both pool usage and read latency are only sampled while every registration is waiting for the geolocation provider
+      executor.submit(() -> {
+        while (running.get()) {
+          if (pendingGeolocations.get() == CONCURRENT_REGISTRATIONS) {
+            peakActiveConnectionsDuringGeolocation.accumulateAndGet(pool.getActiveConnections(), Math::max);
+          }
+          Thread.sleep(1);
+        }
+        return null;
+      });
+      executor.submit(() -> {
+        while (running.get()) {
+          var readStart = System.nanoTime();
+          couponService.fetchCoupons();
+          if (pendingGeolocations.get() == CONCURRENT_REGISTRATIONS) {
+            readLatencies.add(System.nanoTime() - readStart);
+          }
+        }
+        return null;
+      });
+
+      // WHEN registering the coupons concurrently
+      List<Future<?>> registrations = new ArrayList<>();
+      for (int i = 0; i < CONCURRENT_REGISTRATIONS; i++) {
+        var code = "load" + i;
+        registrations.add(executor.submit(() -> {
+          start.await();
+          couponService.registerCoupon(UUID.randomUUID(), code, "127.0.0.1");
+          return null;
+        }));
+      }
+      start.countDown();
+      for (var registration : registrations) {
+        registration.get(30, TimeUnit.SECONDS);
+      }
+      running.set(false);
+    }
+
+    // THEN every registration should succeed while no connection was held during geolocation
+    // (before registration was split into phases all 35 pooled connections were held here)
+    assertFalse(readLatencies.isEmpty(), "no fetchCoupons completed while every registration was waiting for geolocation");
+    var readP99Millis = percentile(readLatencies, 0.99) / 1_000_000;
+
+    assertTrue(couponService.fetchCoupons().stream().allMatch(coupon -> coupon.getCurrentUsage() == 1));
+    assertTrue(peakActiveConnectionsDuringGeolocation.get() - idleActiveConnections <= 1, "peak active connections: " + peakActiveConnectionsDuringGeolocation.get() + "/" + pool.getTotalConnections());
+    assertTrue(readP99Millis < GEOLOCATION_DELAY_MILLIS, "fetchCoupons p99: " + readP99Millis + " ms");
+  }
+
+  private static long percentile(List<Long> values, double percentile) {
+    var sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+  }
+}
@@ -8,12 +8,24 @@ import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
 import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
 import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
 import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponData;
 import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 
@@ -82,6 +94,35 @@ public class CouponServiceTest extends DatabaseContainer {
     assertEquals(0, coupons.getFirst().getCurrentUsage());
   }
 
+  @Test
+  void shouldFetchCouponsPageByPage() {
+    // GIVEN five created coupons
+    for (int i = 0; i < 5; i++) {
+      couponService.createCoupon(new CreateCouponBody().code("test" + i).countryCode("PL").usageLimit(1));
+    }
+
+    // WHEN fetching coupons in pages of two
+    var firstPage = couponService.fetchCoupons(null, 2);
+    var secondPage = couponService.fetchCoupons(firstPage.getNextCursor(), 2);
+    var lastPage = couponService.fetchCoupons(secondPage.getNextCursor(), 2);
+
+    // THEN every coupon should be returned exactly once and the last page should not have a next cursor
+    var codes = Stream.of(firstPage, secondPage, lastPage)
+      .flatMap(page -> page.getItems().stream())
+      .map(CouponData::getCode)
+      .collect(Collectors.toSet());
+
+    assertEquals(Set.of("test0", "test1", "test2", "test3", "test4"), codes);
+    assertEquals(1, lastPage.getItems().size());
+    assertNull(lastPage.getNextCursor());
+  }
+
+  @Test
+  void shouldThrowExceptionForMalformedCursor() {
+    // WHEN fetching coupons with cursor which was not issued by the service THEN BadRequestException should be thrown
+    assertThrows(BadRequestException.class, () -> couponService.fetchCoupons("not-a-cursor", 10));
+  }
+
   @Test
   void shouldThrowExceptionWhenCountryCodeNotFoundDuringRegistration() {
     // GIVEN register coupon parameters with not-existing ip-address
@@ -268,4 +309,77 @@ public class CouponServiceTest extends DatabaseContainer {
     assertEquals(1, coupons.size());
     assertEquals(1, coupons.getFirst().getCurrentUsage());
   }
+
+  @Test
+  void shouldNotExceedUsageLimitWhenRegisteringConcurrently() throws Exception {
+    // GIVEN coupon with usage limit lower than the number of concurrently registering users
+    var ipAddress = "127.0.0.1";
+    var code = "test";
+    var countryCode = "PL";
+    var createCouponBody = new CreateCouponBody()
+      .code(code)
+      .countryCode(countryCode)
+      .usageLimit(5);
+
+    when(localizationService.getCountryCodeByIp(ipAddress)).thenReturn(Optional.of(countryCode));
+    couponService.createCoupon(createCouponBody);
+
+    // WHEN twenty different users register the coupon at the same time
+    var results = registerConcurrently(20, () -> couponService.registerCoupon(UUID.randomUUID(), code, ipAddress));
+
+    // THEN only five registrations should succeed and the rest should be rejected as exceeding the usage limit
+    assertEquals(5, results.get(null));
+    assertEquals(15, results.get(BadRequestException.class));
+    assertEquals(5, couponService.fetchCoupons().getFirst().getCurrentUsage());
+  }
+
+  @Test
+  void shouldRegisterCouponOnceWhenSameUserRegistersConcurrently() throws Exception {
+    // GIVEN coupon with usage limit higher than the number of concurrent requests
+    var userId = UUID.randomUUID();
+    var ipAddress = "127.0.0.1";
+    var code = "test";
+    var countryCode = "PL";
+    var createCouponBody = new CreateCouponBody()
+      .code(code)
+      .countryCode(countryCode)
+      .usageLimit(20);
+
+    when(localizationService.getCountryCodeByIp(ipAddress)).thenReturn(Optional.of(countryCode));
+    couponService.createCoupon(createCouponBody);
+
+    // WHEN the same user registers the coupon ten times at the same time
+    var results = registerConcurrently(10, () -> couponService.registerCoupon(userId, code, ipAddress));
+
+    // THEN only one registration should succeed and current usage of coupon should be 1
+    assertEquals(1, results.get(null));
+    assertEquals(9, results.get(BadRequestException.class));
+    assertEquals(1, couponService.fetchCoupons().getFirst().getCurrentUsage());
+  }
+
+  // counts outcomes by thrown exception type, successful registrations are counted under the null key
+  private Map<Class<?>, Integer> registerConcurrently(int requests, Runnable registration) throws Exception {
+    var start = new CountDownLatch(1);
+    var futures = new ArrayList<Future<Class<?>>>();
+    try (var executor = Executors.newFixedThreadPool(requests)) {
+      for (int i = 0; i < requests; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          try {
+            registration.run();
+            return null;
+          } catch (RuntimeException e) {
+            return e.getClass();
+          }
+        }));
+      }
+      start.countDown();
+
+      var results = new HashMap<Class<?>, Integer>();
+      for (var future : futures) {
+        results.merge(future.get(30, TimeUnit.SECONDS), 1, Integer::sum);
+      }
+      return results;
+    }
+  }
 }
@@ -0,0 +1,130 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.tables.CouponUsage.COUPON_USAGE;
+
+public class CouponUsageArchiverTest extends DatabaseContainer {
+  static Path ARCHIVE_DIRECTORY = createDirectory();
+  static String IP_ADDRESS = "127.0.0.1";
+
+  @Autowired
+  CouponUsageArchiver couponUsageArchiver;
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @DynamicPropertySource
+  static void archiveProperties(DynamicPropertyRegistry registry) {
+    registry.add("coupon.archive.enabled", () -> "true");
+    registry.add("coupon.archive.directory", ARCHIVE_DIRECTORY::toString);
+    registry.add("coupon.archive.retention", () -> "0s");
+  }
+
+  @BeforeEach
+  void beforeEach() {
+    when(localizationService.getCountryCodeByIp(anyString())).thenReturn(Optional.of("PL"));
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldArchiveUsagesOfExhaustedCouponsOnly() throws IOException {
+    // GIVEN one exhausted and one open coupon
+    couponService.createCoupon(new CreateCouponBody().code("exhausted").countryCode("PL").usageLimit(2));
+    couponService.createCoupon(new CreateCouponBody().code("open").countryCode("PL").usageLimit(5));
+    var users = List.of(UUID.randomUUID(), UUID.randomUUID());
+    users.forEach(userId -> couponService.registerCoupon(userId, "exhausted", IP_ADDRESS));
+    couponService.registerCoupon(UUID.randomUUID(), "open", IP_ADDRESS);
+    var exhaustedId = dslContext.select(COUPON.ID).from(COUPON).where(COUPON.CODE.eq("exhausted")).fetchSingle().value1();
+
+    // WHEN
+    couponUsageArchiver.archive();
+
+    // THEN the usages should be moved to a compressed file while the counter keeps them
+    assertEquals(0, dslContext.fetchCount(COUPON_USAGE, COUPON_USAGE.COUPON_ID.eq(exhaustedId)));
+    assertEquals(1, dslContext.fetchCount(COUPON_USAGE));
+    assertEquals(2, dslContext.select(COUPON.CURRENT_USAGE).from(COUPON).where(COUPON.ID.eq(exhaustedId)).fetchSingle().value1());
+
+    var lines = readArchive(exhaustedId);
+    assertEquals("id,coupon_id,user_id,created_date_timestamp", lines.getFirst());
+    assertEquals(3, lines.size());
+    users.forEach(userId -> assertTrue(lines.stream().anyMatch(line -> line.contains(exhaustedId + "," + userId)), lines.toString()));
+    assertThrows(BadRequestException.class, () -> couponService.registerCoupon(users.getFirst(), "exhausted", IP_ADDRESS));
+
+    // nothing is left for the next run
+    assertEquals(0, couponUsageArchiver.archiveBatch());
+  }
+
+  @Test
+  void shouldKeepUniqueUsagePerUserAcrossPartitions() {
+    // GIVEN coupon_usage split into hash partitions
+    var partitions = dslContext.fetchValue("select count(*) from pg_inherits where inhparent = 'coupon_usage'::regclass");
+    assertEquals(16L, ((Number) partitions).longValue());
+    couponService.createCoupon(new CreateCouponBody().code("unique").countryCode("PL").usageLimit(5));
+    var couponId = dslContext.select(COUPON.ID).from(COUPON).fetchSingle().value1();
+    var userId = UUID.randomUUID();
+    couponService.registerCoupon(userId, "unique", IP_ADDRESS);
+
+    // WHEN / THEN the second usage of the same user should still be rejected by unique_coupon_usage
+    assertThrows(Exception.class, () -> dslContext.insertInto(COUPON_USAGE)
+      .set(COUPON_USAGE.ID, UUID.randomUUID())
+      .set(COUPON_USAGE.COUPON_ID, couponId)
+      .set(COUPON_USAGE.USER_ID, userId)
+      .set(COUPON_USAGE.VERSION, 1)
+      .execute());
+  }
+
+  private static List<String> readArchive(UUID couponId) throws IOException {
+    try (var files = Files.list(ARCHIVE_DIRECTORY)) {
+      var archive = files.filter(file -> file.getFileName().toString().endsWith(couponId + ".csv.gz")).findFirst().orElseThrow();
+      try (var input = new GZIPInputStream(Files.newInputStream(archive))) {
+        return new String(input.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+      }
+    }
+  }
+
+  private static Path createDirectory() {
+    try {
+      return Files.createTempDirectory("coupon-archive");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
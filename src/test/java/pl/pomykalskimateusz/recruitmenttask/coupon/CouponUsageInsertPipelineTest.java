@@ -0,0 +1,191 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CouponUsageInsertPipelineTest {
+  static int MAX_BATCH_SIZE = 50;
+
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  CouponWriteRepository couponWriteRepository = mock(CouponWriteRepository.class);
+  Set<String> insertedUsages = ConcurrentHashMap.newKeySet();
+  CouponUsageInsertPipeline pipeline;
+
+  @AfterEach
+  void afterEach() throws Exception {
+    pipeline.shutdown();
+  }
+
+  @Test
+  void shouldGroupConcurrentUsagesIntoBatches() throws Exception {
+    // GIVEN repository that takes a few milliseconds per statement and skips duplicated usages
+    givenPipeline(Duration.ofMillis(2));
+    var leaseId = UUID.randomUUID();
+    var couponId = UUID.randomUUID();
+
+    // WHEN submitting usages of many users, and one of them twice
+    var futures = new ArrayList<CompletableFuture<Boolean>>();
+    var duplicatedUserId = UUID.randomUUID();
+    for (int i = 0; i < 499; i++) {
+      futures.add(pipeline.submit(leaseId, couponId, UUID.randomUUID()));
+    }
+    var first = pipeline.submit(leaseId, couponId, duplicatedUserId);
+    var duplicate = pipeline.submit(leaseId, couponId, duplicatedUserId);
+
+    // THEN every usage should be inserted by fewer statements than usages, none larger than max batch size
+    for (var future : futures) {
+      assertTrue(future.get(5, TimeUnit.SECONDS));
+    }
+    assertTrue(first.get(5, TimeUnit.SECONDS));
+    assertFalse(duplicate.get(5, TimeUnit.SECONDS));
+
+    var batchSize = meterRegistry.get("coupon.usage.insert.batch.size").summary();
+    assertEquals(501, (long) batchSize.totalAmount());
+    assertTrue(batchSize.count() < 501);
+    assertTrue(batchSize.max() <= MAX_BATCH_SIZE);
+  }
+
+  @Test
+  void shouldFlushSingleUsageAfterMaxDelay() throws Exception {
+    // GIVEN
+    givenPipeline(Duration.ofMillis(1));
+
+    // WHEN
+    var inserted = pipeline.submit(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+    // THEN
+    assertTrue(inserted.get(1, TimeUnit.SECONDS));
+    assertEquals(0.0, meterRegistry.get("coupon.usage.insert.queue.depth").gauge().value());
+  }
+
+  @Test
+  void shouldWithdrawOnlyQueuedUsages() throws Exception {
+    // GIVEN repository blocked in the first flush
+    var flushing = new CountDownLatch(1);
+    var unblock = new CountDownLatch(1);
+    when(couponWriteRepository.insertLeasedCouponUsages(anyList())).thenAnswer(invocation -> {
+      List<CouponWriteRepository.NewCouponUsage> usages = invocation.getArgument(0);
+      flushing.countDown();
+      unblock.await();
+      return new CouponWriteRepository.InsertedCouponUsages(usages.stream().map(CouponWriteRepository.NewCouponUsage::id).collect(Collectors.toSet()), Set.of());
+    });
+    pipeline = new CouponUsageInsertPipeline(couponWriteRepository, meterRegistry, MAX_BATCH_SIZE, Duration.ofMillis(1), 1000);
+    var flushed = pipeline.submit(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+    assertTrue(flushing.await(1, TimeUnit.SECONDS));
+    var queued = pipeline.submit(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+    // WHEN withdrawing both usages
+    var cause = new ServiceUnavailableException("timeout");
+    var flushedWithdrawn = pipeline.withdraw(flushed, cause);
+    var queuedWithdrawn = pipeline.withdraw(queued, cause);
+    unblock.countDown();
+
+    // THEN only the queued one should be taken back, the other one should get the result of its batch
+    assertFalse(flushedWithdrawn);
+    assertTrue(queuedWithdrawn);
+    assertTrue(flushed.get(1, TimeUnit.SECONDS));
+    var error = assertThrows(ExecutionException.class, queued::get);
+    assertSame(cause, error.getCause());
+  }
+
+  @Test
+  void shouldFailOnlyUsagesWhoseLeaseExpired() throws Exception {
+    // GIVEN repository rejecting the usages of one coupon
+    var expiredCouponId = UUID.randomUUID();
+    when(couponWriteRepository.insertLeasedCouponUsages(anyList())).thenAnswer(invocation -> {
+      List<CouponWriteRepository.NewCouponUsage> usages = invocation.getArgument(0);
+      var expired = usages.stream().filter(usage -> usage.couponId().equals(expiredCouponId)).map(CouponWriteRepository.NewCouponUsage::id).collect(Collectors.toSet());
+      var inserted = usages.stream().map(CouponWriteRepository.NewCouponUsage::id).filter(id -> !expired.contains(id)).collect(Collectors.toSet());
+      return new CouponWriteRepository.InsertedCouponUsages(inserted, expired);
+    });
+    pipeline = new CouponUsageInsertPipeline(couponWriteRepository, meterRegistry, MAX_BATCH_SIZE, Duration.ofMillis(50), 1000);
+
+    // WHEN usages of both coupons end up in one batch
+    var expired = pipeline.submit(UUID.randomUUID(), expiredCouponId, UUID.randomUUID());
+    var other = pipeline.submit(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+    // THEN only the usage of the expired lease should fail
+    assertTrue(other.get(1, TimeUnit.SECONDS));
+    var error = assertThrows(ExecutionException.class, () -> expired.get(1, TimeUnit.SECONDS));
+    assertInstanceOf(ServiceUnavailableException.class, error.getCause());
+  }
+
+  @Test
+  void shouldCompleteEverySubmittedUsageWhenShuttingDown() throws Exception {
+    // GIVEN pipeline receiving usages from several threads
+    givenPipeline(Duration.ofMillis(1));
+    var accepted = new ConcurrentLinkedQueue<CompletableFuture<Boolean>>();
+    var shuttingDown = new AtomicBoolean();
+    var executor = Executors.newFixedThreadPool(4);
+    for (int thread = 0; thread < 4; thread++) {
+      executor.submit(() -> {
+        while (true) {
+          try {
+            accepted.add(pipeline.submit(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()));
+          } catch (ServiceUnavailableException e) {
+            // a full queue rejects usages as well, only rejections after shutdown started stop the thread
+            if (shuttingDown.get()) {
+              return;
+            }
+          }
+        }
+      });
+    }
+
+    // WHEN the pipeline shuts down while usages keep arriving
+    Thread.sleep(20);
+    shuttingDown.set(true);
+    pipeline.shutdown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+    // THEN every accepted usage should be completed, later ones rejected
+    for (var future : accepted) {
+      assertTrue(future.get(1, TimeUnit.SECONDS));
+    }
+    assertThrows(ServiceUnavailableException.class, () -> pipeline.submit(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()));
+  }
+
+  private void givenPipeline(Duration maxDelay) {
+    when(couponWriteRepository.insertLeasedCouponUsages(anyList())).thenAnswer(invocation -> {
+      List<CouponWriteRepository.NewCouponUsage> usages = invocation.getArgument(0);
+      Thread.sleep(2);
+      var inserted = new HashSet<UUID>();
+      for (var usage : usages) {
+        if (insertedUsages.add(usage.couponId() + ":" + usage.userId())) {
+          inserted.add(usage.id());
+        }
+      }
+      return new CouponWriteRepository.InsertedCouponUsages(inserted, Set.of());
+    });
+    pipeline = new CouponUsageInsertPipeline(couponWriteRepository, meterRegistry, MAX_BATCH_SIZE, maxDelay, 1000);
+  }
+}
@@ -0,0 +1,156 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+import pl.pomykalskimateusz.recruitmenttask.localization.LocalizationService;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponStats;
+import pl.pomykalskimateusz.recruitmenttask.model.CouponUsageStats;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.tables.CouponUsage.COUPON_USAGE;
+
+public class CouponUsageStatisticsTest extends DatabaseContainer {
+  static String IP_ADDRESS = "127.0.0.1";
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  CouponUsageStatistics couponUsageStatistics;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @MockBean
+  LocalizationService localizationService;
+
+  @BeforeEach
+  void beforeEach() {
+    when(localizationService.getCountryCodeByIp(anyString())).thenReturn(Optional.of("PL"));
+  }
+
+  @AfterEach
+  void afterEach() {
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldCountCommittedRegistrationsOnly() {
+    // GIVEN coupons known to the statistics
+    couponService.createCoupon(new CreateCouponBody().code("first").countryCode("PL").usageLimit(10));
+    couponService.createCoupon(new CreateCouponBody().code("second").countryCode("PL").usageLimit(10));
+    couponUsageStatistics.refreshNow(true);
+    var userId = UUID.randomUUID();
+
+    // WHEN registering, including a registration rejected after it reached the database
+    couponService.registerCoupon(userId, "first", IP_ADDRESS);
+    couponService.registerCoupon(UUID.randomUUID(), "first", IP_ADDRESS);
+    couponService.registerCoupon(UUID.randomUUID(), "second", IP_ADDRESS);
+    assertThrows(BadRequestException.class, () -> couponService.registerCoupon(userId, "first", IP_ADDRESS));
+
+    // THEN
+    var stats = couponService.fetchCouponStats(10);
+    assertEquals(3, stats.getTotalUsage());
+    assertEquals(List.of("first", "second"), stats.getCoupons().stream().map(CouponUsageStats::getCode).toList());
+    assertEquals(2, stats.getCoupons().getFirst().getCurrentUsage());
+    assertEquals(3, stats.getCountries().getFirst().getUsage());
+    assertEquals(3, todayUsage(stats));
+    assertStatsMatchDatabase();
+  }
+
+  @Test
+  void shouldRefreshWhenCouponCreatedAfterLastRefreshIsUsed() throws InterruptedException {
+    // GIVEN
+    couponUsageStatistics.refreshNow(true);
+    couponService.createCoupon(new CreateCouponBody().code("new").countryCode("PL").usageLimit(10));
+
+    // WHEN
+    couponService.registerCoupon(UUID.randomUUID(), "new", IP_ADDRESS);
+
+    // THEN
+    var deadline = System.nanoTime() + 5_000_000_000L;
+    while (couponService.fetchCouponStats(10).getTotalUsage() != 1) {
+      assertTrue(System.nanoTime() < deadline, "usage not counted within 5s");
+      Thread.sleep(10);
+    }
+    assertStatsMatchDatabase();
+  }
+
+  @Test
+  void shouldIncludeUsagesOfOtherNodesAfterRefresh() {
+    // GIVEN
+    couponService.createCoupon(new CreateCouponBody().code("shared").countryCode("DE").usageLimit(10));
+    couponUsageStatistics.refreshNow(true);
+
+    // WHEN another node registers the coupon
+    var couponId = dslContext.select(COUPON.ID).from(COUPON).fetchSingle().value1();
+    dslContext.insertInto(COUPON_USAGE)
+      .set(COUPON_USAGE.ID, UUID.randomUUID())
+      .set(COUPON_USAGE.COUPON_ID, couponId)
+      .set(COUPON_USAGE.USER_ID, UUID.randomUUID())
+      .set(COUPON_USAGE.VERSION, 1)
+      .execute();
+    dslContext.update(COUPON).set(COUPON.CURRENT_USAGE, 1).execute();
+    assertEquals(0, couponService.fetchCouponStats(10).getTotalUsage());
+    couponUsageStatistics.refreshNow(false);
+
+    // THEN
+    var stats = couponService.fetchCouponStats(10);
+    assertEquals(1, stats.getTotalUsage());
+    assertEquals("DE", stats.getCountries().getFirst().getCountryCode());
+    assertEquals(1, todayUsage(stats));
+  }
+
+  @Test
+  void shouldReturnMostUsedCouponsOnly() {
+    // GIVEN
+    for (int i = 1; i <= 3; i++) {
+      couponService.createCoupon(new CreateCouponBody().code("code" + i).countryCode("PL").usageLimit(10));
+    }
+    couponUsageStatistics.refreshNow(true);
+    for (int i = 1; i <= 3; i++) {
+      for (int j = 0; j < i; j++) {
+        couponService.registerCoupon(UUID.randomUUID(), "code" + i, IP_ADDRESS);
+      }
+    }
+
+    // WHEN
+    var stats = couponService.fetchCouponStats(2);
+
+    // THEN totals should still cover every coupon
+    assertEquals(List.of("code3", "code2"), stats.getCoupons().stream().map(CouponUsageStats::getCode).toList());
+    assertEquals(6, stats.getTotalUsage());
+    assertEquals(0, couponService.fetchCouponStats(0).getCoupons().size());
+    assertThrows(BadRequestException.class, () -> couponService.fetchCouponStats(-1));
+  }
+
+  private void assertStatsMatchDatabase() {
+    var usages = dslContext.fetchCount(COUPON_USAGE);
+    assertEquals(usages, couponService.fetchCouponStats(0).getTotalUsage());
+  }
+
+  private static long todayUsage(CouponStats stats) {
+    return stats.getDays().stream()
+      .filter(day -> day.getDate().equals(LocalDate.now()))
+      .findFirst()
+      .orElseThrow()
+      .getUsage();
+  }
+}
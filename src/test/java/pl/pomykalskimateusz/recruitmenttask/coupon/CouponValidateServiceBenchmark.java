@@ -0,0 +1,52 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CouponValidateServiceBenchmark {
+  CouponValidateService couponValidateService = new CouponValidateService(new SimpleMeterRegistry());
+  CreateCouponBody createCouponBody = new CreateCouponBody().code("SUMMER2024").countryCode("pl").usageLimit(100);
+  GenerateCouponsBody generateCouponsBody = new GenerateCouponsBody("SUMMER-", null, 10, 1000, "PL", 1);
+  UUID userId = UUID.randomUUID();
+
+  @Benchmark
+  public void validateCreateCoupon() {
+    couponValidateService.validateCreateCoupon(createCouponBody);
+  }
+
+  @Benchmark
+  public void validateRegisterCoupon() {
+    couponValidateService.validateRegisterCoupon(userId, "SUMMER2024");
+  }
+
+  @Benchmark
+  public void validateGenerateCoupons() {
+    couponValidateService.validateGenerateCoupons(generateCouponsBody);
+  }
+
+  @Benchmark
+  public void validateCouponCountry(Blackhole blackhole) {
+    var metadata = new CouponReadRepository.CouponMetadata(userId, "SUMMER2024", "PL", 100, null, null);
+    couponValidateService.validateCouponCountry(metadata, "SUMMER2024", "pl");
+    blackhole.consume(metadata);
+  }
+}
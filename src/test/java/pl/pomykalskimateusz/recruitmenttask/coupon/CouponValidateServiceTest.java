@@ -1,5 +1,6 @@
 package pl.pomykalskimateusz.recruitmenttask.coupon;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -7,14 +8,35 @@ import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
 import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
 import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class CouponValidateServiceTest {
-  private final CouponValidateService couponValidateService = new CouponValidateService();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final CouponValidateService couponValidateService = new CouponValidateService(meterRegistry);
+
+  @Test
+  void shouldCountRejectionsByReason() {
+    // GIVEN
+    var metadata = new CouponReadRepository.CouponMetadata(UUID.randomUUID(), "TEST", "PL", 1, null, null);
+
+    // WHEN
+    assertThrows(BadRequestException.class, () -> couponValidateService.validateRegisterCoupon(null, "test"));
+    assertThrows(ResourceNotFoundException.class, () -> couponValidateService.validateCouponCountry(metadata, "test", "DE"));
+    assertThrows(ResourceNotFoundException.class, () -> couponValidateService.validateCouponCountry(metadata, "test", "DE"));
+    assertThrows(BadRequestException.class, () -> couponValidateService.validateRedemptionResult(CouponRedemptionResult.USAGE_LIMIT_EXCEEDED, "test", "PL"));
+
+    // THEN
+    assertEquals(1, meterRegistry.counter("coupon.rejections", "reason", "invalid_user_id").count());
+    assertEquals(2, meterRegistry.counter("coupon.rejections", "reason", "country_mismatch").count());
+    assertEquals(1, meterRegistry.counter("coupon.rejections", "reason", "usage_limit_exceeded").count());
+    assertEquals(0, meterRegistry.counter("coupon.rejections", "reason", "coupon_not_found").count());
+  }
 
   @ParameterizedTest
   @MethodSource("invalidCodeValues")
@@ -87,10 +109,36 @@ public class CouponValidateServiceTest {
     assertThrows(BadRequestException.class, () -> couponValidateService.validateRegisterCoupon(null, code));
   }
 
+  @ParameterizedTest
+  @MethodSource("invalidPageLimitValues")
+  void shouldThrowExceptionForInvalidPageLimit(Integer limit) {
+    // WHEN validating page limit out of allowed range THEN BadRequestException should be thrown
+    assertThrows(BadRequestException.class, () -> couponValidateService.validatePageLimit(limit));
+  }
+
+  @ParameterizedTest
+  @MethodSource("invalidAlphabetValues")
+  void shouldThrowExceptionForInvalidAlphabetInGenerateCouponsBody(String alphabet) {
+    // GIVEN generate-coupons body with invalid alphabet
+    var body = new GenerateCouponsBody("SALE", alphabet, 8, 10, "PL", 1);
+
+    // WHEN validating body with invalid alphabet THEN BadRequestException should be thrown
+    assertThrows(BadRequestException.class, () -> couponValidateService.validateGenerateCoupons(body));
+  }
+
+  @Test
+  void shouldNotThrowExceptionForValidGenerateCouponsBody() {
+    // GIVEN generate-coupons body relying on default alphabet and length
+    var body = new GenerateCouponsBody(null, null, null, 10, "PL", 1);
+
+    // WHEN validating body THEN no exception should be thrown
+    assertDoesNotThrow(() -> couponValidateService.validateGenerateCoupons(body));
+  }
+
   @Test
   void shouldThrowExceptionForNotEqualCountryCodeInCouponUsage() {
     // GIVEN coupon usage data and invalid country code
-    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 0);
+    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 0, null, null);
 
     // WHEN validating coupon usage with invalid country code THEN ResourceNotFoundException should be thrown
     assertThrows(ResourceNotFoundException.class, () -> couponValidateService.validateCouponUsage(couponUsage, "test", "US"));
@@ -99,7 +147,7 @@ public class CouponValidateServiceTest {
   @Test
   void shouldThrowExceptionForExceededUsageLimitInCouponUsage() {
     // GIVEN coupon usage data with exceeded usage limit
-    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 10, 0);
+    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 10, 0, null, null);
 
     // WHEN validating coupon usage with exceeded usage limit THEN BadRequestException should be thrown
     assertThrows(BadRequestException.class, () -> couponValidateService.validateCouponUsage(couponUsage, "test", "PL"));
@@ -108,16 +156,28 @@ public class CouponValidateServiceTest {
   @Test
   void shouldThrowExceptionForExceededUsageLimitByUserInCouponUsage() {
     // GIVEN coupon usage data with exceeded usage limit by user
-    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 1);
+    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 1, null, null);
 
     // WHEN validating coupon usage with exceeded usage limit by user THEN BadRequestException should be thrown
     assertThrows(BadRequestException.class, () -> couponValidateService.validateCouponUsage(couponUsage, "test", "PL"));
   }
 
+  @Test
+  void shouldThrowExceptionForCouponUsageOutsideOfValidityWindow() {
+    // GIVEN coupon usage data of a coupon not active yet and of an expired one
+    var now = LocalDateTime.now();
+    var upcoming = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 0, now.plusDays(1), null);
+    var expired = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 0, null, now.minusSeconds(1));
+
+    // WHEN validating coupon usage THEN BadRequestException should be thrown
+    assertThrows(BadRequestException.class, () -> couponValidateService.validateCouponUsage(upcoming, "test", "PL"));
+    assertThrows(BadRequestException.class, () -> couponValidateService.validateCouponUsage(expired, "test", "PL"));
+  }
+
   @Test
   void shouldNotThrowExceptionForValidCouponUsage() {
     // GIVEN coupon usage data with exceeded usage limit by user
-    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 0);
+    var couponUsage = new CouponReadRepository.CouponUsageData(UUID.randomUUID(), "PL", true, 10, 5, 0, null, null);
 
     // WHEN validating coupon usage with exceeded usage limit by user THEN BadRequestException should be thrown
     assertDoesNotThrow(() -> couponValidateService.validateCouponUsage(couponUsage, "test", "PL"));
@@ -127,6 +187,14 @@ public class CouponValidateServiceTest {
     return Stream.of(null, 0, -1);
   }
 
+  private static Stream<Integer> invalidPageLimitValues() {
+    return Stream.of(null, 0, -1, 1001);
+  }
+
+  private static Stream<String> invalidAlphabetValues() {
+    return Stream.of("A", "ABCa", "AB C");
+  }
+
   private static Stream<String> invalidCodeValues() {
     return Stream.of("", null);
   }
@@ -0,0 +1,44 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pl.pomykalskimateusz.recruitmenttask.exception.BadRequestException;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CsvRecordReaderTest {
+  @Test
+  void shouldReadQuotedFields() {
+    // GIVEN
+    var body = "plain,\"with,comma\",\"with\"\"quote\"\r\n\"with\nline break\",,\"\"\nlast";
+
+    // WHEN
+    var records = readAll(body);
+
+    // THEN
+    assertEquals(List.of(
+      List.of("plain", "with,comma", "with\"quote"),
+      List.of("with\nline break", "", ""),
+      List.of("last")
+    ), records);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"\"unterminated,PL,10\n", "quote\"inside,PL,10\n", "\"closed\"text,PL,10\n", "carriage\rreturn\n"})
+  void shouldRejectMalformedRecords(String body) {
+    // WHEN & THEN
+    assertThrows(BadRequestException.class, () -> readAll(body));
+  }
+
+  private static List<List<String>> readAll(String body) {
+    var records = new ArrayList<List<String>>();
+    new CsvRecordReader(new StringReader(body)).forEachRemaining(records::add);
+    return records;
+  }
+}
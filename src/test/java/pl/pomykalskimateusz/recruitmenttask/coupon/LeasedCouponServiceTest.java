@@ -0,0 +1,172 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import pl.pomykalskimateusz.recruitmenttask.exception.ResourceNotFoundException;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON_LEASE;
+import static pl.pomykalskimateusz.recruitmenttask.jooq.entity.Tables.COUPON_USAGE;
+
+// runs every CouponServiceTest scenario, including the concurrent ones, against redemptions served from leased quota
+@TestPropertySource(properties = "coupon.registration.mode=leased")
+public class LeasedCouponServiceTest extends CouponServiceTest {
+  @Autowired
+  LeasedCouponRedemption leasedCouponRedemption;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @Autowired
+  CouponWriteRepository couponWriteRepository;
+
+  // leases outlive the coupons removed between tests, they would keep serving quota of a deleted coupon id
+  @AfterEach
+  @Override
+  void afterEach() {
+    leasedCouponRedemption.releaseLeases();
+    super.afterEach();
+  }
+
+  @Test
+  void shouldReturnUnusedQuotaWhenLeasesAreReleased() {
+    // GIVEN coupon with usage limit higher than the lease block
+    var ipAddress = "127.0.0.1";
+    var code = "test";
+    var countryCode = "PL";
+    var createCouponBody = new CreateCouponBody()
+      .code(code)
+      .countryCode(countryCode)
+      .usageLimit(1000);
+
+    when(localizationService.getCountryCodeByIp(ipAddress)).thenReturn(Optional.of(countryCode));
+    couponService.createCoupon(createCouponBody);
+
+    // WHEN three users register the coupon
+    for (int i = 0; i < 3; i++) {
+      couponService.registerCoupon(UUID.randomUUID(), code, ipAddress);
+    }
+
+    // THEN one block should be leased with three units redeemed
+    var coupon = dslContext.selectFrom(COUPON).fetchSingle();
+    assertEquals(3, coupon.getCurrentUsage());
+    assertEquals(97, coupon.getLeasedUsage());
+    assertEquals(97, dslContext.selectFrom(COUPON_LEASE).fetchSingle().getRemaining());
+
+    // WHEN the node releases its leases
+    leasedCouponRedemption.releaseLeases();
+
+    // THEN unused quota should go back to the coupon
+    coupon = dslContext.selectFrom(COUPON).fetchSingle();
+    assertEquals(3, coupon.getCurrentUsage());
+    assertEquals(0, coupon.getLeasedUsage());
+    assertEquals(0, dslContext.fetchCount(COUPON_LEASE));
+  }
+
+  @Test
+  void shouldReclaimExpiredLeaseOfCrashedNode() {
+    // GIVEN coupon whose quota is held by an expired lease of a node that never released it
+    var ipAddress = "127.0.0.1";
+    var code = "test";
+    var countryCode = "PL";
+    var createCouponBody = new CreateCouponBody()
+      .code(code)
+      .countryCode(countryCode)
+      .usageLimit(100);
+
+    when(localizationService.getCountryCodeByIp(ipAddress)).thenReturn(Optional.of(countryCode));
+    couponService.createCoupon(createCouponBody);
+    var couponId = dslContext.select(COUPON.ID).from(COUPON).fetchSingle(COUPON.ID);
+    dslContext.update(COUPON).set(COUPON.LEASED_USAGE, 100).execute();
+    dslContext.insertInto(COUPON_LEASE)
+      .set(COUPON_LEASE.ID, UUID.randomUUID())
+      .set(COUPON_LEASE.COUPON_ID, couponId)
+      .set(COUPON_LEASE.NODE_ID, "crashed")
+      .set(COUPON_LEASE.REMAINING, 100)
+      .set(COUPON_LEASE.EXPIRES_AT, LocalDateTime.now().minusMinutes(1))
+      .execute();
+
+    // WHEN user registers the coupon
+    couponService.registerCoupon(UUID.randomUUID(), code, ipAddress);
+
+    // THEN the expired lease should be given back and its quota leased again
+    var coupon = dslContext.selectFrom(COUPON).fetchSingle();
+    assertEquals(1, coupon.getCurrentUsage());
+    assertEquals(99, coupon.getLeasedUsage());
+    var lease = dslContext.selectFrom(COUPON_LEASE).fetchSingle();
+    assertNotEquals("crashed", lease.getNodeId());
+    assertEquals(99, lease.getRemaining());
+  }
+
+  @Test
+  void shouldOnlyRejectUsagesOfReclaimedLeaseWithoutRoom() {
+    // GIVEN coupon whose reclaimed quota was leased again by another node and coupon with a valid lease
+    couponService.createCoupon(new CreateCouponBody().code("reclaimed").countryCode("PL").usageLimit(1));
+    couponService.createCoupon(new CreateCouponBody().code("leased").countryCode("PL").usageLimit(10));
+    var reclaimedCouponId = couponId("reclaimed");
+    var leasedCouponId = couponId("leased");
+    var leaseId = UUID.randomUUID();
+    insertLease(UUID.randomUUID(), reclaimedCouponId, 1);
+    insertLease(leaseId, leasedCouponId, 5);
+
+    // WHEN one batch carries usages of both coupons, the first one with the lease it lost
+    var expiredUsage = new CouponWriteRepository.NewCouponUsage(UUID.randomUUID(), UUID.randomUUID(), reclaimedCouponId, UUID.randomUUID());
+    var leasedUsage = new CouponWriteRepository.NewCouponUsage(UUID.randomUUID(), leaseId, leasedCouponId, UUID.randomUUID());
+    var result = couponWriteRepository.insertLeasedCouponUsages(List.of(expiredUsage, leasedUsage));
+
+    // THEN only the usage of the reclaimed lease should be rejected
+    assertEquals(Set.of(leasedUsage.id()), result.inserted());
+    assertEquals(Set.of(expiredUsage.id()), result.leaseExpired());
+    assertEquals(1, dslContext.fetchCount(COUPON_USAGE));
+    assertEquals(0, dslContext.selectFrom(COUPON).where(COUPON.ID.eq(reclaimedCouponId)).fetchSingle().getCurrentUsage());
+    var leasedCoupon = dslContext.selectFrom(COUPON).where(COUPON.ID.eq(leasedCouponId)).fetchSingle();
+    assertEquals(1, leasedCoupon.getCurrentUsage());
+    assertEquals(4, leasedCoupon.getLeasedUsage());
+  }
+
+  @Test
+  void shouldNotLeaseQuotaForCountryMismatch() {
+    // GIVEN
+    var code = "test";
+    var createCouponBody = new CreateCouponBody()
+      .code(code)
+      .countryCode("PL")
+      .usageLimit(1000);
+
+    couponService.createCoupon(createCouponBody);
+
+    // WHEN registering the coupon from another country THEN no quota should be leased
+    assertThrows(ResourceNotFoundException.class, () -> leasedCouponRedemption.redeem(UUID.randomUUID(), code, "DE"));
+    assertEquals(0, dslContext.selectFrom(COUPON).fetchSingle().getLeasedUsage());
+    assertEquals(0, dslContext.fetchCount(COUPON_LEASE));
+  }
+
+  private UUID couponId(String code) {
+    return dslContext.select(COUPON.ID).from(COUPON).where(COUPON.CODE.eq(code)).fetchSingle(COUPON.ID);
+  }
+
+  private void insertLease(UUID leaseId, UUID couponId, int remaining) {
+    dslContext.update(COUPON).set(COUPON.LEASED_USAGE, remaining).where(COUPON.ID.eq(couponId)).execute();
+    dslContext.insertInto(COUPON_LEASE)
+      .set(COUPON_LEASE.ID, leaseId)
+      .set(COUPON_LEASE.COUPON_ID, couponId)
+      .set(COUPON_LEASE.NODE_ID, "other")
+      .set(COUPON_LEASE.REMAINING, remaining)
+      .set(COUPON_LEASE.EXPIRES_AT, LocalDateTime.now().plusMinutes(1))
+      .execute();
+  }
+}
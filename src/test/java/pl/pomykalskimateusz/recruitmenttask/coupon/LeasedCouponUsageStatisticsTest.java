@@ -0,0 +1,19 @@
+package pl.pomykalskimateusz.recruitmenttask.coupon;
+
+import org.junit.jupiter.api.AfterEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+// deltas of leased redemptions are applied when their batch insert commits on the pipeline thread
+@TestPropertySource(properties = "coupon.registration.mode=leased")
+public class LeasedCouponUsageStatisticsTest extends CouponUsageStatisticsTest {
+  @Autowired
+  LeasedCouponRedemption leasedCouponRedemption;
+
+  @AfterEach
+  @Override
+  void afterEach() {
+    leasedCouponRedemption.releaseLeases();
+    super.afterEach();
+  }
+}
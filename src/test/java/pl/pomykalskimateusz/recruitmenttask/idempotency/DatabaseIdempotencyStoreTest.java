@@ -0,0 +1,90 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatabaseIdempotencyStoreTest extends DatabaseContainer {
+  @Autowired
+  DSLContext dslContext;
+
+  @Autowired
+  DatabaseBulkhead databaseBulkhead;
+
+  DatabaseIdempotencyStore store;
+
+  @AfterEach
+  void afterEach() {
+    store.shutdown();
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldLetOnlyOneOfConcurrentRequestsClaimKey() throws Exception {
+    // GIVEN
+    store = new DatabaseIdempotencyStore(dslContext, databaseBulkhead, Duration.ofHours(1), Duration.ofSeconds(30), Duration.ofHours(1));
+    var claimed = new AtomicInteger();
+
+    // WHEN
+    try (var executor = Executors.newFixedThreadPool(10)) {
+      for (int i = 0; i < 10; i++) {
+        executor.submit(() -> {
+          if (store.claim("key", "fingerprint").isEmpty()) {
+            claimed.incrementAndGet();
+          }
+        });
+      }
+    }
+
+    // THEN
+    assertEquals(1, claimed.get());
+    assertEquals(Optional.of(IdempotencyRecord.inProgress("fingerprint")), store.claim("key", "fingerprint"));
+    store.complete("key", new IdempotencyRecord("fingerprint", 404, "Not found coupon code: test"));
+    assertEquals(Optional.of(new IdempotencyRecord("fingerprint", 404, "Not found coupon code: test")), store.claim("key", "other"));
+  }
+
+  @Test
+  void shouldTakeOverReleasedAndExpiredClaims() throws InterruptedException {
+    // GIVEN
+    store = new DatabaseIdempotencyStore(dslContext, databaseBulkhead, Duration.ofHours(1), Duration.ofMillis(1), Duration.ofHours(1));
+    store.claim("released", "fingerprint");
+    store.claim("abandoned", "fingerprint");
+
+    // WHEN
+    store.release("released", "fingerprint");
+    Thread.sleep(10);
+
+    // THEN
+    assertTrue(store.claim("released", "fingerprint").isEmpty());
+    assertTrue(store.claim("abandoned", "other").isEmpty());
+    store.complete("abandoned", new IdempotencyRecord("fingerprint", 200, null));
+    assertEquals("other", dslContext.fetchValue("select fingerprint from idempotency_key where idempotency_key = 'abandoned'"));
+  }
+
+  @Test
+  void shouldDeleteOnlyExpiredKeys() throws InterruptedException {
+    // GIVEN
+    store = new DatabaseIdempotencyStore(dslContext, databaseBulkhead, Duration.ofHours(1), Duration.ofMillis(1), Duration.ofHours(1));
+    store.claim("abandoned", "fingerprint");
+    store.claim("completed", "fingerprint");
+    store.complete("completed", new IdempotencyRecord("fingerprint", 200, null));
+    Thread.sleep(10);
+
+    // WHEN
+    store.deleteExpiredKeys();
+
+    // THEN
+    assertEquals(1, dslContext.fetchCount(dslContext.selectFrom("idempotency_key")));
+  }
+}
@@ -0,0 +1,53 @@
+package pl.pomykalskimateusz.recruitmenttask.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InMemoryIdempotencyStoreTest {
+  static long SECOND = 1_000_000_000L;
+
+  @Test
+  void shouldReturnStoredResultToLaterClaims() {
+    // GIVEN
+    var now = new AtomicLong();
+    var store = new InMemoryIdempotencyStore(100, Duration.ofHours(1), Duration.ofSeconds(30), now::get);
+
+    // WHEN
+    var first = store.claim("key", "fingerprint");
+    var concurrent = store.claim("key", "fingerprint");
+    store.complete("key", new IdempotencyRecord("fingerprint", 200, "{}"));
+
+    // THEN
+    assertTrue(first.isEmpty());
+    assertEquals(Optional.of(IdempotencyRecord.inProgress("fingerprint")), concurrent);
+    assertEquals(Optional.of(new IdempotencyRecord("fingerprint", 200, "{}")), store.claim("key", "other"));
+    now.addAndGet(3600 * SECOND);
+    assertTrue(store.claim("key", "fingerprint").isEmpty());
+  }
+
+  @Test
+  void shouldLetClaimBeTakenOverAfterReleaseOrTimeout() {
+    // GIVEN
+    var now = new AtomicLong();
+    var store = new InMemoryIdempotencyStore(100, Duration.ofHours(1), Duration.ofSeconds(30), now::get);
+    store.claim("released", "fingerprint");
+    store.claim("abandoned", "fingerprint");
+
+    // WHEN
+    store.release("released", "fingerprint");
+    now.addAndGet(30 * SECOND);
+
+    // THEN
+    assertTrue(store.claim("released", "fingerprint").isEmpty());
+    assertTrue(store.claim("abandoned", "other").isEmpty());
+    // the late result of the abandoned request must not overwrite the claim of the request that took over
+    store.complete("abandoned", new IdempotencyRecord("fingerprint", 200, null));
+    assertEquals(Optional.of(IdempotencyRecord.inProgress("other")), store.claim("abandoned", "other"));
+  }
+}
@@ -0,0 +1,90 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GeoIpDatabaseTest {
+  @TempDir
+  static Path directory;
+
+  static GeoIpDatabase database;
+
+  @BeforeAll
+  static void beforeAll() throws Exception {
+    var path = directory.resolve("geoip.bin");
+    GeoIpDatabaseWriter.write(path, List.of(
+      range("83.0.0.0", "83.31.255.255", "PL"),
+      range("8.8.8.0", "8.8.8.255", "us"),
+      range("200.0.0.0", "255.255.255.255", "BR"),
+      range("2a00:f40::", "2a00:f47:ffff:ffff:ffff:ffff:ffff:ffff", "PL"),
+      range("2001:4860::", "2001:4860:ffff:ffff:ffff:ffff:ffff:ffff", "US")
+    ));
+    database = GeoIpDatabase.open(path);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "83.0.0.0, PL",
+    "83.10.20.30, PL",
+    "83.31.255.255, PL",
+    "8.8.8.8, US",
+    "255.255.255.254, BR",
+    "2a00:f44::1, PL",
+    "2001:4860:4860::8888, US"
+  })
+  void shouldFindCountryCodeForAddressInRange(String ipAddress, String countryCode) throws Exception {
+    // GIVEN database with ipv4 and ipv6 ranges
+    // WHEN looking up address covered by one of the ranges THEN its country code should be returned
+    assertEquals(Optional.of(countryCode), database.findCountryCode(InetAddress.getByName(ipAddress)));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"0.0.0.0", "82.255.255.255", "83.32.0.0", "8.8.9.0", "127.0.0.1", "::1", "2a00:f48::", "ffff::"})
+  void shouldNotFindCountryCodeForAddressOutsideOfRanges(String ipAddress) throws Exception {
+    // GIVEN database with ipv4 and ipv6 ranges
+    // WHEN looking up address between or outside of ranges THEN empty result should be returned
+    assertEquals(Optional.empty(), database.findCountryCode(InetAddress.getByName(ipAddress)));
+  }
+
+  @Test
+  void shouldRejectFileWithUnknownHeader() throws Exception {
+    // GIVEN file which is not a geoip database
+    var path = directory.resolve("invalid.bin");
+    Files.writeString(path, "start_ip,end_ip,country_code");
+
+    // WHEN opening it THEN IllegalArgumentException should be thrown
+    assertThrows(IllegalArgumentException.class, () -> GeoIpDatabase.open(path));
+  }
+
+  @Test
+  void shouldRejectTruncatedFile() throws Exception {
+    // GIVEN files cut inside the header and inside the ranges
+    var source = Files.readAllBytes(directory.resolve("geoip.bin"));
+    var cutInHeader = directory.resolve("header.bin");
+    var cutInRanges = directory.resolve("ranges.bin");
+    Files.write(cutInHeader, Arrays.copyOf(source, 3));
+    Files.write(cutInRanges, Arrays.copyOf(source, source.length - 1));
+
+    // WHEN opening them THEN IllegalArgumentException should be thrown
+    assertThrows(IllegalArgumentException.class, () -> GeoIpDatabase.open(cutInHeader));
+    assertThrows(IllegalArgumentException.class, () -> GeoIpDatabase.open(cutInRanges));
+  }
+
+  private static GeoIpDatabaseWriter.IpRange range(String start, String end, String countryCode) throws Exception {
+    return new GeoIpDatabaseWriter.IpRange(InetAddress.getByName(start), InetAddress.getByName(end), countryCode);
+  }
+}
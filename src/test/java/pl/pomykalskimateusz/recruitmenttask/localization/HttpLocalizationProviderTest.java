@@ -0,0 +1,133 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpLocalizationProviderTest {
+  List<HttpServer> servers = new ArrayList<>();
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @AfterEach
+  void afterEach() {
+    servers.forEach(server -> server.stop(0));
+  }
+
+  @Test
+  void shouldFailWithinTimeoutWhenProviderHangs() {
+    // GIVEN
+    var primary = startServer(10_000, 200, "{\"countryCode\": \"PL\"}");
+    var provider = provider(primary, "", Duration.ofMillis(300));
+
+    // WHEN
+    var start = System.nanoTime();
+    var exception = assertThrows(Exception.class, () -> provider.findCountryCode("1.2.3.4"));
+
+    // THEN whichever of the request timeout and the lookup budget fires first
+    assertTrue(exception instanceof HttpTimeoutException || exception instanceof TimeoutException, exception.toString());
+    assertTrue(System.nanoTime() - start < 2_000_000_000L);
+  }
+
+  @Test
+  void shouldReportUnexpectedStatusAndTreatMissingCodeAsNotFound() throws Exception {
+    // GIVEN
+    var throttled = provider(startServer(0, 429, ""), "", Duration.ofSeconds(1));
+    var reserved = provider(startServer(0, 200, "{}"), "", Duration.ofSeconds(1));
+
+    // WHEN / THEN
+    assertThrows(HttpLocalizationProvider.UnexpectedResponseException.class, () -> throttled.findCountryCode("1.2.3.4"));
+    assertEquals(Optional.empty(), reserved.findCountryCode("10.0.0.1"));
+  }
+
+  @Test
+  void shouldAnswerFromHedgeWhenPrimaryIsSlow() throws Exception {
+    // GIVEN primary answering after the whole budget and hedge with a different response field
+    var primary = startServer(5_000, 200, "{\"countryCode\": \"PL\"}");
+    var hedge = startServer(0, 200, "{\"country_code\": \"DE\"}");
+    var provider = provider(primary, hedge, Duration.ofSeconds(2));
+
+    // WHEN
+    var start = System.nanoTime();
+    var countryCode = provider.findCountryCode("1.2.3.4");
+
+    // THEN the answer should come shortly after the hedge delay
+    assertEquals(Optional.of("DE"), countryCode);
+    assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    assertEquals(1, meterRegistry.counter("localization.http.requests", "endpoint", "hedge").count());
+  }
+
+  @Test
+  void shouldSendHedgeRightAwayWhenPrimaryFails() throws Exception {
+    // GIVEN
+    var provider = provider(startServer(0, 500, ""), startServer(0, 200, "{\"country_code\": \"DE\"}"), Duration.ofSeconds(2));
+
+    // WHEN / THEN
+    assertEquals(Optional.of("DE"), provider.findCountryCode("1.2.3.4"));
+  }
+
+  @Test
+  void shouldNotSendHedgeWhenPrimaryIsFast() throws Exception {
+    // GIVEN
+    var provider = provider(startServer(0, 200, "{\"countryCode\": \"PL\"}"), startServer(0, 200, "{\"country_code\": \"DE\"}"), Duration.ofSeconds(2));
+
+    // WHEN
+    var countryCode = provider.findCountryCode("1.2.3.4");
+    Thread.sleep(300);
+
+    // THEN
+    assertEquals(Optional.of("PL"), countryCode);
+    assertEquals(0, meterRegistry.counter("localization.http.requests", "endpoint", "hedge").count());
+  }
+
+  private HttpLocalizationProvider provider(HttpServer primary, Object hedge, Duration timeout) {
+    var hedgeUrlTemplate = hedge instanceof HttpServer server ? urlTemplate(server) : "";
+    return new HttpLocalizationProvider(
+      new ObjectMapper(), meterRegistry, urlTemplate(primary), Duration.ofMillis(500), timeout,
+      hedgeUrlTemplate, "country_code", Duration.ofMillis(100), false
+    );
+  }
+
+  private static String urlTemplate(HttpServer server) {
+    return "http://localhost:" + server.getAddress().getPort() + "/json/%s";
+  }
+
+  private HttpServer startServer(long delayMillis, int status, String body) {
+    try {
+      var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      var bytes = body.getBytes(StandardCharsets.UTF_8);
+      server.createContext("/json/", exchange -> {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+      });
+      server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+      server.start();
+      servers.add(server);
+      return server;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
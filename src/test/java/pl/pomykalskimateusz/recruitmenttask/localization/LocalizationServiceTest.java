@@ -0,0 +1,146 @@
+package pl.pomykalskimateusz.recruitmenttask.localization;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LocalizationServiceTest {
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  AtomicLong now = new AtomicLong();
+
+  @Test
+  void shouldCacheFoundCountryForTtl() {
+    // GIVEN
+    var calls = new AtomicInteger();
+    var localizationService = service(ipAddress -> {
+      calls.incrementAndGet();
+      return Optional.of("PL");
+    }, Duration.ofSeconds(30));
+
+    // WHEN looked up again just before and right after the ttl of 1h
+    localizationService.getCountryCodeByIp("1.2.3.4");
+    now.addAndGet(Duration.ofHours(1).minusNanos(1).toNanos());
+    var cached = localizationService.getCountryCodeByIp("1.2.3.4");
+    var callsWithinTtl = calls.get();
+    now.addAndGet(1);
+    var reloaded = localizationService.getCountryCodeByIp("1.2.3.4");
+
+    // THEN
+    assertEquals(Optional.of("PL"), cached);
+    assertEquals(Optional.of("PL"), reloaded);
+    assertEquals(1, callsWithinTtl);
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void shouldCacheUnknownIpOnlyForNegativeTtl() {
+    // GIVEN provider knowing only 1.2.3.4
+    var calls = new AtomicInteger();
+    var localizationService = service(ipAddress -> {
+      calls.incrementAndGet();
+      return ipAddress.equals("1.2.3.4") ? Optional.of("PL") : Optional.empty();
+    }, Duration.ofSeconds(30));
+    localizationService.getCountryCodeByIp("1.2.3.4");
+    localizationService.getCountryCodeByIp("5.6.7.8");
+
+    // WHEN the negative ttl of 30s passes
+    assertEquals(Optional.empty(), localizationService.getCountryCodeByIp("5.6.7.8"));
+    assertEquals(2, calls.get());
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+    localizationService.getCountryCodeByIp("1.2.3.4");
+    localizationService.getCountryCodeByIp("5.6.7.8");
+
+    // THEN only the unknown ip should be looked up again
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  void shouldCoalesceConcurrentLookupsOfSameIp() throws Exception {
+    // GIVEN provider blocked until every caller is waiting
+    var calls = new AtomicInteger();
+    var release = new CountDownLatch(1);
+    var localizationService = service(ipAddress -> {
+      calls.incrementAndGet();
+      release.await();
+      return Optional.of("PL");
+    }, Duration.ofSeconds(30));
+
+    // WHEN
+    var results = new ArrayList<Future<Optional<String>>>();
+    try (var executor = Executors.newFixedThreadPool(10)) {
+      for (int i = 0; i < 10; i++) {
+        results.add(executor.submit(() -> localizationService.getCountryCodeByIp("1.2.3.4")));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      // THEN
+      for (var result : results) {
+        assertEquals(Optional.of("PL"), result.get(5, TimeUnit.SECONDS));
+      }
+    }
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  void shouldNotCacheFailuresAndFailFastOnceCircuitIsOpen() {
+    // GIVEN provider failing twice and then recovering
+    var calls = new AtomicInteger();
+    LocalizationProvider provider = ipAddress -> {
+      if (calls.incrementAndGet() <= 2) {
+        throw new ConnectException("Connection refused");
+      }
+      return Optional.of("PL");
+    };
+    var localizationService = service(provider, Duration.ofMillis(100));
+
+    // WHEN / THEN the second failure opens the circuit, so the third lookup does not reach the provider
+    assertThrows(ServiceUnavailableException.class, () -> localizationService.getCountryCodeByIp("1.2.3.4"));
+    assertThrows(ServiceUnavailableException.class, () -> localizationService.getCountryCodeByIp("1.2.3.4"));
+    assertThrows(ServiceUnavailableException.class, () -> localizationService.getCountryCodeByIp("1.2.3.4"));
+    assertEquals(2, calls.get());
+    assertEquals(2, meterRegistry.counter("localization.failures", "provider", provider.getClass().getSimpleName(), "cause", "connect").count());
+    assertEquals(1, meterRegistry.counter("localization.failures", "provider", provider.getClass().getSimpleName(), "cause", "circuit_open").count());
+    assertEquals(1, meterRegistry.get("localization.circuit.open").gauge().value());
+  }
+
+  @Test
+  void shouldCloseCircuitAfterSuccessfulProbe() throws InterruptedException {
+    // GIVEN
+    var calls = new AtomicInteger();
+    LocalizationProvider provider = ipAddress -> {
+      if (calls.incrementAndGet() <= 2) {
+        throw new ConnectException("Connection refused");
+      }
+      return Optional.of("PL");
+    };
+    var localizationService = service(provider, Duration.ofMillis(100));
+    assertThrows(ServiceUnavailableException.class, () -> localizationService.getCountryCodeByIp("1.2.3.4"));
+    assertThrows(ServiceUnavailableException.class, () -> localizationService.getCountryCodeByIp("1.2.3.4"));
+
+    // WHEN
+    Thread.sleep(150);
+
+    // THEN
+    assertEquals(Optional.of("PL"), localizationService.getCountryCodeByIp("1.2.3.4"));
+    assertEquals(0, meterRegistry.get("localization.circuit.open").gauge().value());
+  }
+
+  private LocalizationService service(LocalizationProvider provider, Duration openDuration) {
+    return new LocalizationService(provider, meterRegistry, 100, Duration.ofHours(1), Duration.ofSeconds(30), 2, openDuration, now::get);
+  }
+}
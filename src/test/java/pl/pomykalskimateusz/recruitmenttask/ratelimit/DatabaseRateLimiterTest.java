@@ -0,0 +1,78 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.utils.DatabaseBulkhead;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatabaseRateLimiterTest extends DatabaseContainer {
+  @Autowired
+  DSLContext dslContext;
+
+  @Autowired
+  DatabaseBulkhead databaseBulkhead;
+
+  DatabaseRateLimiter rateLimiter;
+
+  @BeforeEach
+  void beforeEach() {
+    rateLimiter = new DatabaseRateLimiter(dslContext, databaseBulkhead, Duration.ofHours(1));
+  }
+
+  @AfterEach
+  void afterEach() {
+    rateLimiter.shutdown();
+    super.cleanDatabase("public", false);
+  }
+
+  @Test
+  void shouldShareBucketBetweenConcurrentCallers() throws Exception {
+    // GIVEN bucket of 20 tokens refilled once per minute, so no token is refilled during the test
+    var limit = RateLimit.of(20, 1.0 / 60);
+    var acquired = new AtomicInteger();
+
+    // WHEN
+    try (var executor = Executors.newFixedThreadPool(10)) {
+      for (int i = 0; i < 10; i++) {
+        executor.submit(() -> {
+          for (int j = 0; j < 10; j++) {
+            if (rateLimiter.tryAcquire("key", limit) == 0) {
+              acquired.incrementAndGet();
+            }
+          }
+        });
+      }
+    }
+
+    // THEN
+    assertEquals(20, acquired.get());
+    var wait = Duration.ofNanos(rateLimiter.tryAcquire("key", limit));
+    assertTrue(wait.compareTo(Duration.ofSeconds(50)) > 0 && wait.compareTo(Duration.ofSeconds(60)) <= 0, "wait: " + wait);
+    assertEquals(0, rateLimiter.tryAcquire("other", limit));
+  }
+
+  @Test
+  void shouldDeleteOnlyRefilledBuckets() throws InterruptedException {
+    // GIVEN
+    rateLimiter.tryAcquire("refilled", RateLimit.of(1, 1000));
+    rateLimiter.tryAcquire("empty", RateLimit.of(1, 1.0 / 60));
+    Thread.sleep(10);
+
+    // WHEN
+    rateLimiter.deleteRefilledBuckets();
+
+    // THEN
+    assertEquals(1, dslContext.fetchCount(dslContext.selectFrom("rate_limit_bucket")));
+    assertTrue(rateLimiter.tryAcquire("empty", RateLimit.of(1, 1.0 / 60)) > 0);
+  }
+}
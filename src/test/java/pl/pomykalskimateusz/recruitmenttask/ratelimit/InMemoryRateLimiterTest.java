@@ -0,0 +1,66 @@
+package pl.pomykalskimateusz.recruitmenttask.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InMemoryRateLimiterTest {
+  static long SECOND = 1_000_000_000L;
+
+  @Test
+  void shouldAllowBurstAndRefillOverTime() {
+    // GIVEN bucket of 3 tokens refilled with one token per second
+    var now = new AtomicLong();
+    var rateLimiter = new InMemoryRateLimiter(100, Duration.ofMinutes(10), now::get);
+    var limit = RateLimit.of(3, 1);
+
+    // WHEN / THEN the burst should be allowed at once, the next token only after a second
+    assertEquals(0, rateLimiter.tryAcquire("key", limit));
+    assertEquals(0, rateLimiter.tryAcquire("key", limit));
+    assertEquals(0, rateLimiter.tryAcquire("key", limit));
+    assertEquals(SECOND, rateLimiter.tryAcquire("key", limit));
+    assertEquals(0, rateLimiter.tryAcquire("other", limit));
+
+    now.addAndGet(SECOND / 2);
+    assertEquals(SECOND / 2, rateLimiter.tryAcquire("key", limit));
+    now.addAndGet(SECOND / 2);
+    assertEquals(0, rateLimiter.tryAcquire("key", limit));
+    assertEquals(SECOND, rateLimiter.tryAcquire("key", limit));
+
+    // an idle bucket does not collect more than its capacity
+    now.addAndGet(60 * SECOND);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, rateLimiter.tryAcquire("key", limit));
+    }
+    assertEquals(SECOND, rateLimiter.tryAcquire("key", limit));
+  }
+
+  @Test
+  void shouldNotHandOutMoreTokensThanCapacityUnderConcurrency() throws Exception {
+    // GIVEN frozen clock, so no token is refilled during the test
+    var rateLimiter = new InMemoryRateLimiter(100, Duration.ofMinutes(10), () -> 0);
+    var limit = RateLimit.of(1000, 1);
+    var acquired = new AtomicInteger();
+
+    // WHEN
+    try (var executor = Executors.newFixedThreadPool(8)) {
+      for (int i = 0; i < 8; i++) {
+        executor.submit(() -> {
+          for (int j = 0; j < 10_000; j++) {
+            if (rateLimiter.tryAcquire("key", limit) == 0) {
+              acquired.incrementAndGet();
+            }
+          }
+        });
+      }
+    }
+
+    // THEN
+    assertEquals(1000, acquired.get());
+  }
+}
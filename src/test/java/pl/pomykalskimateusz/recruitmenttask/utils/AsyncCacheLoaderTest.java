@@ -0,0 +1,110 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncCacheLoaderTest {
+  AsyncCache<String, String> cache = Caffeine.newBuilder().buildAsync();
+
+  @Test
+  void shouldLoadMissingKeyOnceOnCallingThread() {
+    // GIVEN
+    var loads = new AtomicInteger();
+    var caller = Thread.currentThread();
+
+    // WHEN
+    var first = AsyncCacheLoader.get(cache, "key", key -> {
+      loads.incrementAndGet();
+      assertSame(caller, Thread.currentThread());
+      return key.toUpperCase();
+    });
+    var second = AsyncCacheLoader.get(cache, "key", key -> {
+      loads.incrementAndGet();
+      return "reloaded";
+    });
+
+    // THEN
+    assertEquals("KEY", first);
+    assertEquals("KEY", second);
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void shouldLetConcurrentCallersAwaitTheSameLoad() throws Exception {
+    // GIVEN load blocked until every caller is waiting
+    var loads = new AtomicInteger();
+    var release = new CountDownLatch(1);
+
+    // WHEN
+    var results = new ArrayList<Future<String>>();
+    try (var executor = Executors.newFixedThreadPool(10)) {
+      for (int i = 0; i < 10; i++) {
+        results.add(executor.submit(() -> AsyncCacheLoader.get(cache, "key", key -> {
+          loads.incrementAndGet();
+          await(release);
+          return "value";
+        })));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      // THEN
+      for (var result : results) {
+        assertEquals("value", result.get(5, TimeUnit.SECONDS));
+      }
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void shouldEvictFailedLoadAndPassItsExceptionToWaitingCallers() throws Exception {
+    // GIVEN load failing once another caller is waiting for it
+    var loading = new CountDownLatch(1);
+    var fail = new CountDownLatch(1);
+
+    try (var executor = Executors.newFixedThreadPool(2)) {
+      var loader = executor.submit(() -> AsyncCacheLoader.get(cache, "key", key -> {
+        loading.countDown();
+        await(fail);
+        throw new IllegalStateException("load failed");
+      }));
+      assertTrue(loading.await(5, TimeUnit.SECONDS));
+      var waiter = executor.submit(() -> AsyncCacheLoader.get(cache, "key", key -> "not called"));
+      Thread.sleep(50);
+
+      // WHEN
+      fail.countDown();
+
+      // THEN both callers should get the loader's own exception
+      assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, () -> loader.get(5, TimeUnit.SECONDS)).getCause());
+      assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+    }
+    // and the failure should not be cached
+    assertNull(cache.getIfPresent("key"));
+    assertEquals("value", AsyncCacheLoader.get(cache, "key", key -> "value"));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BloomFilterTest {
+  static int INSERTIONS = 100_000;
+
+  @ParameterizedTest
+  @ValueSource(doubles = {0.1, 0.01, 0.001})
+  void shouldKeepFalsePositiveRateNearConfiguredOne(double falsePositiveRate) {
+    // GIVEN filter sized for the number of inserted codes
+    var filter = BloomFilter.create(INSERTIONS, falsePositiveRate);
+    for (int i = 0; i < INSERTIONS; i++) {
+      filter.put("CODE" + i);
+    }
+
+    // WHEN looking up inserted and never inserted codes
+    int falsePositives = 0;
+    for (int i = 0; i < INSERTIONS; i++) {
+      assertTrue(filter.mightContain("CODE" + i));
+      if (filter.mightContain("OTHER" + i)) {
+        falsePositives++;
+      }
+    }
+
+    // THEN there should be no false negatives and the measured rate should stay close to the configured one
+    var measured = (double) falsePositives / INSERTIONS;
+    assertTrue(measured < falsePositiveRate * 1.5, "measured false positive rate " + measured + " for configured " + falsePositiveRate);
+    assertTrue(filter.expectedFalsePositiveRate() < falsePositiveRate * 1.5, "estimated false positive rate " + filter.expectedFalsePositiveRate() + " for configured " + falsePositiveRate);
+  }
+}
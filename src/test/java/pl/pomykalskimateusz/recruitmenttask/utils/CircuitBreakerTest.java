@@ -0,0 +1,83 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+  static long SECOND = 1_000_000_000L;
+
+  @Test
+  void shouldOpenAfterConsecutiveFailuresAndCloseAfterSuccessfulProbe() {
+    // GIVEN
+    var now = new AtomicLong();
+    var circuitBreaker = new CircuitBreaker(3, Duration.ofSeconds(10), now::get);
+
+    // WHEN a success in between resets the failure count
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+
+    // THEN
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    circuitBreaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+
+    // only a single probe is let through once the open duration has passed
+    now.addAndGet(10 * SECOND);
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    circuitBreaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void shouldReopenWhenProbeFails() {
+    // GIVEN
+    var now = new AtomicLong();
+    var circuitBreaker = new CircuitBreaker(1, Duration.ofSeconds(10), now::get);
+    circuitBreaker.onFailure();
+    now.addAndGet(10 * SECOND);
+
+    // WHEN
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    circuitBreaker.onFailure();
+
+    // THEN the circuit should stay open for another open duration
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+    now.addAndGet(9 * SECOND);
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    now.addAndGet(SECOND);
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void shouldNotExtendOpenWindowWithFailuresArrivingWhileOpen() {
+    // GIVEN
+    var now = new AtomicLong();
+    var circuitBreaker = new CircuitBreaker(2, Duration.ofSeconds(10), now::get);
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+
+    // WHEN calls that were in flight when the circuit opened keep failing
+    for (int i = 0; i < 5; i++) {
+      now.addAndGet(SECOND);
+      circuitBreaker.onFailure();
+    }
+
+    // THEN the probe should still be let through once the original open duration has passed
+    now.addAndGet(5 * SECOND);
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+  }
+}
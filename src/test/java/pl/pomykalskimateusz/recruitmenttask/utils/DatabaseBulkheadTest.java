@@ -0,0 +1,108 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.api.Test;
+import pl.pomykalskimateusz.recruitmenttask.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatabaseBulkheadTest {
+  @Test
+  void shouldRejectCallsOnceAllPermitsAreTakenForAcquireTimeout() throws Exception {
+    // GIVEN both permits held by running calls
+    var bulkhead = new DatabaseBulkhead(2, Duration.ofMillis(100));
+    var running = new CountDownLatch(2);
+    var release = new CountDownLatch(1);
+    try (var executor = Executors.newFixedThreadPool(2)) {
+      for (int i = 0; i < 2; i++) {
+        executor.submit(() -> bulkhead.run(() -> {
+          running.countDown();
+          await(release);
+        }));
+      }
+      assertTrue(running.await(5, TimeUnit.SECONDS));
+
+      // WHEN
+      var start = System.nanoTime();
+      assertThrows(ServiceUnavailableException.class, () -> bulkhead.execute(() -> "rejected"));
+      var waitedMillis = (System.nanoTime() - start) / 1_000_000;
+
+      // THEN the call should have waited for the acquire timeout, not longer
+      assertEquals(0, bulkhead.availablePermits());
+      assertTrue(waitedMillis >= 100 && waitedMillis < 2_000, "waited " + waitedMillis + " ms");
+      release.countDown();
+    }
+    assertEquals(2, bulkhead.availablePermits());
+  }
+
+  @Test
+  void shouldLetWaitingCallInOnceAPermitIsReleased() throws Exception {
+    // GIVEN the only permit held by a running call
+    var bulkhead = new DatabaseBulkhead(1, Duration.ofSeconds(5));
+    var running = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    try (var executor = Executors.newFixedThreadPool(2)) {
+      executor.submit(() -> bulkhead.run(() -> {
+        running.countDown();
+        await(release);
+      }));
+      assertTrue(running.await(5, TimeUnit.SECONDS));
+
+      // WHEN another call waits and the permit is released
+      var waiting = executor.submit(() -> bulkhead.execute(() -> "executed"));
+      Thread.sleep(50);
+      release.countDown();
+
+      // THEN
+      assertEquals("executed", waiting.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, bulkhead.availablePermits());
+  }
+
+  @Test
+  void shouldReleasePermitWhenCallFails() {
+    // GIVEN
+    var bulkhead = new DatabaseBulkhead(1, Duration.ofMillis(100));
+
+    // WHEN
+    assertThrows(IllegalStateException.class, () -> bulkhead.run(() -> {
+      throw new IllegalStateException("query failed");
+    }));
+
+    // THEN
+    assertEquals(1, bulkhead.availablePermits());
+    assertEquals("executed", bulkhead.execute(() -> "executed"));
+  }
+
+  @Test
+  void shouldRejectInterruptedCallWithoutTakingPermit() {
+    // GIVEN
+    var bulkhead = new DatabaseBulkhead(1, Duration.ofSeconds(5));
+
+    // WHEN
+    Thread.currentThread().interrupt();
+    try {
+      assertThrows(ServiceUnavailableException.class, () -> bulkhead.execute(() -> "executed"));
+
+      // THEN the interrupt should be kept for the caller
+      assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+    assertEquals(1, bulkhead.availablePermits());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
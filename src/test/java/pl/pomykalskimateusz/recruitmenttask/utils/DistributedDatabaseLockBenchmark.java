@@ -0,0 +1,31 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.pomykalskimateusz.recruitmenttask.utils.DistributedDatabaseLock.LockKind;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class DistributedDatabaseLockBenchmark {
+  @Param({"SUMMER24", "summer-sale-2024-newsletter-subscribers-only"})
+  String code;
+
+  @Benchmark
+  public long lockKey() {
+    return DistributedDatabaseLock.lockKey(LockKind.COUPON_REGISTRATION, code);
+  }
+}
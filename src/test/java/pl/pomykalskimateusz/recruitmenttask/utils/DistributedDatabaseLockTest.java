@@ -0,0 +1,67 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.api.Test;
+import pl.pomykalskimateusz.recruitmenttask.utils.DistributedDatabaseLock.LockKind;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DistributedDatabaseLockTest {
+  static int GENERATED_CODES = 1_000_000;
+  static String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+  @Test
+  void shouldNotCollideAcrossLargeCodeSet() {
+    // GIVEN
+    var codes = generateCodes(GENERATED_CODES);
+
+    // WHEN
+    var legacyKeys = new HashSet<Long>();
+    var creationKeys = new HashSet<Long>();
+    var registrationKeys = new HashSet<Long>();
+    for (var code : codes) {
+      legacyKeys.add((long) ("coupon_registration" + code).hashCode());
+      creationKeys.add(DistributedDatabaseLock.lockKey(LockKind.COUPON_CREATION, code));
+      registrationKeys.add(DistributedDatabaseLock.lockKey(LockKind.COUPON_REGISTRATION, code));
+    }
+
+    // THEN
+    // about n^2 / 2^33 = 116 collisions are expected from 32-bit keys, none from 64-bit ones
+    int legacyCollisions = codes.size() - legacyKeys.size();
+    assertTrue(legacyCollisions > 0, "32-bit keys did not collide across " + codes.size() + " codes");
+    assertEquals(0, codes.size() - creationKeys.size(), "64-bit creation key collisions");
+    assertEquals(0, codes.size() - registrationKeys.size(), "64-bit registration key collisions");
+    creationKeys.retainAll(registrationKeys);
+    assertTrue(creationKeys.isEmpty());
+  }
+
+  @Test
+  void shouldIgnoreCodeCase() {
+    // GIVEN
+    var code = "Summer2024";
+
+    // WHEN & THEN
+    assertEquals(DistributedDatabaseLock.lockKey(LockKind.COUPON_REGISTRATION, code), DistributedDatabaseLock.lockKey(LockKind.COUPON_REGISTRATION, code.toUpperCase()));
+    assertNotEquals(DistributedDatabaseLock.lockKey(LockKind.COUPON_REGISTRATION, code), DistributedDatabaseLock.lockKey(LockKind.COUPON_CREATION, code));
+  }
+
+  private static Set<String> generateCodes(int count) {
+    var random = new Random(42);
+    var codes = new LinkedHashSet<String>();
+    while (codes.size() < count) {
+      var code = new StringBuilder();
+      int length = 3 + random.nextInt(28);
+      for (int i = 0; i < length; i++) {
+        code.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      }
+      codes.add(code.toString());
+    }
+    return codes;
+  }
+}
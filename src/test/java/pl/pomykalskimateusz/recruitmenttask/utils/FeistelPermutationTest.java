@@ -0,0 +1,43 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FeistelPermutationTest {
+  static byte[] KEY = "0123456789abcdef0123456789abcdef0123456789abcdef".getBytes();
+
+  @ParameterizedTest
+  @ValueSource(longs = {1, 2, 3, 17, 1000, 1024, 1025, 65_537})
+  void shouldMapEveryValueOfRangeToDistinctValueOfRange(long size) {
+    // GIVEN
+    var permutation = new FeistelPermutation(size, KEY);
+    var seen = new BitSet();
+
+    // WHEN & THEN
+    for (long value = 0; value < size; value++) {
+      var permuted = permutation.apply(value);
+      assertTrue(permuted >= 0 && permuted < size);
+      assertFalse(seen.get((int) permuted));
+      seen.set((int) permuted);
+    }
+    assertEquals(size, seen.cardinality());
+  }
+
+  @ParameterizedTest
+  @ValueSource(longs = {1L << 40, 1L << 62})
+  void shouldScrambleConsecutiveValues(long size) {
+    // GIVEN
+    var permutation = new FeistelPermutation(size, KEY);
+
+    // WHEN & THEN consecutive sequence values should not map to consecutive codes
+    assertNotEquals(permutation.apply(0) + 1, permutation.apply(1));
+    assertTrue(permutation.apply(size - 1) < size);
+  }
+}
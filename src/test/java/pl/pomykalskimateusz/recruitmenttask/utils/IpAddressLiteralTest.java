@@ -0,0 +1,40 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IpAddressLiteralTest {
+  @ParameterizedTest
+  @CsvSource({
+    "83.10.20.30, /83.10.20.30",
+    "0.0.0.0, /0.0.0.0",
+    "255.255.255.255, /255.255.255.255",
+    "::1, /0:0:0:0:0:0:0:1",
+    "::, /0:0:0:0:0:0:0:0",
+    "2001:4860:4860::8888, /2001:4860:4860:0:0:0:0:8888",
+    "2A00:F44:0:0:0:0:0:1, /2a00:f44:0:0:0:0:0:1",
+    "1::, /1:0:0:0:0:0:0:0",
+    "::ffff:1.2.3.4, /1.2.3.4",
+    "64:ff9b::192.0.2.33, /64:ff9b:0:0:0:0:c000:221"
+  })
+  void shouldParseIpLiterals(String value, String expected) {
+    // WHEN THEN
+    assertEquals(expected, IpAddressLiteral.parse(value).orElseThrow().toString());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "", "cafe", "beef", "dead.beef", "localhost", "example.com", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.-4", "01234.1.1.1",
+    "1..2.3", "1.2.3.4 ", " 1.2.3.4", ":::", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "1::2::3", ":1::", "1:", "12345::",
+    "::g", "fe80::1%eth0", "::1.2.3", "1:2:3:4:5:6:7:1.2.3.4", "[::1]"
+  })
+  void shouldRejectAnythingElse(String value) {
+    // WHEN THEN
+    assertEquals(Optional.empty(), IpAddressLiteral.parse(value));
+  }
+}
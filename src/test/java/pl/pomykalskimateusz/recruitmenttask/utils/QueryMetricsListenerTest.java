@@ -0,0 +1,23 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QueryMetricsListenerTest {
+  @ParameterizedTest
+  @CsvSource(delimiter = '|', value = {
+    "select \"public\".\"coupon\".\"id\" from \"public\".\"coupon\"|select",
+    "  WITH previous as (select 1) select 2|with",
+    "(select 1) union (select 2)|select",
+    "SELECT pg_advisory_xact_lock(?)|select",
+    "insert into coupon_usage values ('SECRET-CODE')|insert",
+    "vacuum coupon|other",
+    "'SECRET-CODE'|other"
+  })
+  void shouldTagQueriesByLeadingKeywordOnly(String sql, String statement) {
+    // WHEN / THEN
+    assertEquals(statement, QueryMetricsListener.statement(sql));
+  }
+}
@@ -0,0 +1,169 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponService;
+import pl.pomykalskimateusz.recruitmenttask.model.CreateCouponBody;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.pomykalskimateusz.recruitmenttask.Await.awaitTrue;
+
+@SpringBootTest(properties = {
+  "database.replica.enabled=true",
+  "database.replica.max-lag=300ms",
+  "database.replica.check-interval=50ms"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public class ReplicaDataSourceTest {
+  static Duration REPLICATION_TIMEOUT = Duration.ofSeconds(10);
+  static Network network = Network.newNetwork();
+
+  static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:13")
+    .withNetwork(network)
+    .withNetworkAliases("primary")
+    .withCommand("postgres", "-c", "fsync=off", "-c", "wal_level=replica", "-c", "max_wal_senders=4");
+
+  // streaming replica cloned from the primary, pg_basebackup -R leaves it following the primary
+  static GenericContainer<?> replica = new GenericContainer<>("postgres:13")
+    .withNetwork(network)
+    .withExposedPorts(5432)
+    .withEnv("PGPASSWORD", primary.getPassword())
+    .withCreateContainerCmdModifier(cmd -> cmd.withUser("postgres"))
+    .withCommand("bash", "-c", "pg_basebackup -h primary -U " + primary.getUsername() + " -D /tmp/replica -R -X stream"
+      + " && chmod 700 /tmp/replica && exec postgres -D /tmp/replica")
+    .waitingFor(Wait.forLogMessage(".*database system is ready to accept read only connections.*\\s", 1));
+
+  @Autowired
+  CouponService couponService;
+
+  @Autowired
+  CouponReadRepository couponReadRepository;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @DynamicPropertySource
+  static void configureProperties(DynamicPropertyRegistry registry) throws Exception {
+    if (!primary.isRunning()) {
+      primary.start();
+      primary.execInContainer("bash", "-c", "echo 'host replication all all md5' >> \"$PGDATA/pg_hba.conf\"");
+      primary.execInContainer("psql", "-U", primary.getUsername(), "-d", primary.getDatabaseName(), "-c", "select pg_reload_conf()");
+      replica.start();
+    }
+    registry.add("database_url", primary::getJdbcUrl);
+    registry.add("database_username", primary::getUsername);
+    registry.add("database_password", primary::getPassword);
+    registry.add("database.replica.urls", ReplicaDataSourceTest::replicaJdbcUrl);
+
+    registry.add("spring.liquibase.liquibase-schema", () -> "public");
+  }
+
+  @Test
+  void shouldServeOnlyReadOnlyTransactionsFromReplica() throws InterruptedException {
+    // WHEN THEN
+    awaitTrue(this::readOnlyServedByReplica, REPLICATION_TIMEOUT);
+    assertFalse(inRecovery(false));
+    assertFalse(inRecovery());
+  }
+
+  @Test
+  void shouldReadOwnWritesFromPrimary() throws InterruptedException {
+    // GIVEN
+    awaitTrue(this::readOnlyServedByReplica, REPLICATION_TIMEOUT);
+
+    // WHEN
+    couponService.createCoupon(new CreateCouponBody().code("replicated").countryCode("PL").usageLimit(10));
+
+    // THEN the coupon should be found for registrations right away and in listings once replayed
+    assertTrue(couponReadRepository.findCouponMetadata("REPLICATED").isPresent());
+    awaitTrue(() -> couponService.fetchCoupons().stream().anyMatch(coupon -> coupon.getCode().equals("replicated")), REPLICATION_TIMEOUT);
+  }
+
+  @Test
+  void shouldKeepReadOnlyMethodsJoiningReadWriteTransactionOnPrimary() throws InterruptedException {
+    // GIVEN
+    awaitTrue(this::readOnlyServedByReplica, REPLICATION_TIMEOUT);
+
+    // WHEN a read-only repository method runs inside a read-write transaction, like the usage statistics refresh
+    Boolean inRecovery = new TransactionTemplate(transactionManager).execute(status -> {
+      couponReadRepository.countDailyUsages(LocalDate.now());
+      return inRecovery();
+    });
+
+    // THEN
+    assertFalse(inRecovery);
+  }
+
+  @Test
+  void shouldFallBackToPrimaryWhileReplicaLags() throws Exception {
+    // GIVEN
+    awaitTrue(this::readOnlyServedByReplica, REPLICATION_TIMEOUT);
+    var fallbacks = meterRegistry.counter("database.replica.fallbacks").count();
+
+    // WHEN the replica stops replaying while the primary keeps writing
+    executeOnReplica("select pg_wal_replay_pause()");
+    try {
+      couponService.createCoupon(new CreateCouponBody().code("lagging").countryCode("PL").usageLimit(10));
+
+      // THEN
+      awaitTrue(() -> !readOnlyServedByReplica(), REPLICATION_TIMEOUT);
+      assertTrue(meterRegistry.counter("database.replica.fallbacks").count() > fallbacks);
+      assertTrue(couponService.fetchCoupons().stream().anyMatch(coupon -> coupon.getCode().equals("lagging")));
+    } finally {
+      executeOnReplica("select pg_wal_replay_resume()");
+    }
+    awaitTrue(this::readOnlyServedByReplica, REPLICATION_TIMEOUT);
+  }
+
+  private boolean readOnlyServedByReplica() {
+    return inRecovery(true);
+  }
+
+  private boolean inRecovery(boolean readOnly) {
+    var transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(readOnly);
+    Boolean inRecovery = transactionTemplate.execute(status -> inRecovery());
+    return Boolean.TRUE.equals(inRecovery);
+  }
+
+  private boolean inRecovery() {
+    return dslContext.fetchValue(DSL.field("pg_is_in_recovery()", Boolean.class));
+  }
+
+  private static String replicaJdbcUrl() {
+    return "jdbc:postgresql://" + replica.getHost() + ":" + replica.getMappedPort(5432) + "/" + primary.getDatabaseName();
+  }
+
+  private static void executeOnReplica(String sql) throws SQLException {
+    try (var connection = DriverManager.getConnection(replicaJdbcUrl(), primary.getUsername(), primary.getPassword());
+         var statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import pl.pomykalskimateusz.recruitmenttask.DatabaseContainer;
+import pl.pomykalskimateusz.recruitmenttask.coupon.CouponReadRepository;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(properties = {"database.slow-query.threshold=0ms", "database.slow-query.explain=true"})
+public class SlowQueryListenerTest extends DatabaseContainer {
+  @Autowired
+  SlowQueryLog slowQueryLog;
+
+  @Autowired
+  CouponReadRepository couponReadRepository;
+
+  @Autowired
+  DSLContext dslContext;
+
+  @AfterEach
+  void afterEach() {
+    slowQueryLog.clear();
+  }
+
+  @Test
+  void shouldCapturePlanOfSlowSelectOnly() throws InterruptedException {
+    // WHEN every statement counts as slow
+    dslContext.execute("SELECT pg_advisory_xact_lock(?)", 42L);
+
+    // THEN the select should get its plan, the plain sql statement should be kept without one
+    // (re-run while the single explainer is busy with statements of background jobs)
+    var deadline = System.nanoTime() + 5_000_000_000L;
+    while (slowQueryLog.snapshot().stream().noneMatch(it -> it.plan() != null && it.sql().contains("coupon_alias"))) {
+      assertTrue(System.nanoTime() < deadline, "no plan captured within 5s: " + slowQueryLog.snapshot());
+      couponReadRepository.findCouponUsageByCode("plan-code", UUID.randomUUID());
+      Thread.sleep(50);
+    }
+    var explained = slowQueryLog.snapshot().stream().filter(it -> it.plan() != null && it.sql().contains("coupon_alias")).findFirst().orElseThrow();
+    assertTrue(explained.plan().contains("Execution Time"), explained.plan());
+    assertTrue(explained.sql().contains("?"), explained.sql());
+    assertTrue(slowQueryLog.snapshot().stream().anyMatch(it -> it.sql().contains("pg_advisory_xact_lock") && it.plan() == null));
+  }
+}
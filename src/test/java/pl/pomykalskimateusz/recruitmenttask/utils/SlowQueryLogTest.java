@@ -0,0 +1,28 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SlowQueryLogTest {
+  @Test
+  void shouldKeepOnlyNewestEntriesNewestFirst() {
+    // GIVEN
+    var slowQueryLog = new SlowQueryLog(3);
+
+    // WHEN
+    for (int i = 1; i <= 5; i++) {
+      slowQueryLog.add(new SlowQueryLog.SlowQuery(Instant.now(), i, "select " + i, null));
+    }
+
+    // THEN
+    assertEquals(5, slowQueryLog.snapshot().get(0).durationMillis());
+    assertEquals(3, slowQueryLog.snapshot().size());
+    assertEquals(3, slowQueryLog.snapshot().get(2).durationMillis());
+    slowQueryLog.clear();
+    assertTrue(slowQueryLog.snapshot().isEmpty());
+  }
+}
@@ -0,0 +1,131 @@
+package pl.pomykalskimateusz.recruitmenttask.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimingWheelTest {
+  static long TICK = 1_000_000L;
+
+  @Test
+  void shouldRunTasksAtTheirDeadlineAcrossLevels() {
+    // GIVEN a wheel of 4 slots per level, so delays of 4, 16, 64 and 256 ticks start on levels 1 to 4
+    var now = new AtomicLong();
+    var fired = new ArrayList<Long>();
+    var timingWheel = new TimingWheel(Duration.ofNanos(TICK), 4, now::get, Runnable::run, null);
+    var delays = List.of(1L, 3L, 4L, 5L, 15L, 16L, 17L, 63L, 64L, 100L, 255L, 256L);
+    for (var delay : delays) {
+      timingWheel.schedule(Duration.ofNanos(delay * TICK), () -> fired.add(now.get() / TICK));
+    }
+
+    // WHEN time moves one tick at a time
+    for (int tick = 1; tick <= 300; tick++) {
+      now.set(tick * TICK);
+      timingWheel.advanceTo(now.get());
+    }
+
+    // THEN every task should run exactly on its deadline tick, never earlier
+    assertEquals(delays, fired);
+  }
+
+  @Test
+  void shouldRunEveryDueTaskWhenTimeJumps() {
+    // GIVEN
+    var now = new AtomicLong();
+    var fired = new ArrayList<Long>();
+    var timingWheel = new TimingWheel(Duration.ofNanos(TICK), 4, now::get, Runnable::run, null);
+    timingWheel.schedule(Duration.ofNanos(2 * TICK), () -> fired.add(2L));
+    timingWheel.schedule(Duration.ofNanos(40 * TICK), () -> fired.add(40L));
+    timingWheel.schedule(Duration.ofNanos(41 * TICK), () -> fired.add(41L));
+
+    // WHEN the wheel is advanced past several rotations at once
+    now.set(40 * TICK);
+    timingWheel.advanceTo(now.get());
+
+    // THEN
+    assertEquals(List.of(2L, 40L), fired);
+    now.set(41 * TICK);
+    timingWheel.advanceTo(now.get());
+    assertEquals(List.of(2L, 40L, 41L), fired);
+  }
+
+  @Test
+  void shouldRoundPartialTicksUp() {
+    // GIVEN a task scheduled in the middle of a tick
+    var now = new AtomicLong();
+    var fired = new ArrayList<Long>();
+    var timingWheel = new TimingWheel(Duration.ofNanos(TICK), 4, now::get, Runnable::run, null);
+    now.set(TICK / 2);
+    timingWheel.schedule(Duration.ofNanos(TICK), () -> fired.add(now.get()));
+
+    // WHEN the tick in which its delay ends has not finished yet
+    now.set(2 * TICK - 1);
+    timingWheel.advanceTo(now.get());
+
+    // THEN the task should not run before its full delay has passed
+    assertTrue(fired.isEmpty());
+    now.set(2 * TICK);
+    timingWheel.advanceTo(now.get());
+    assertEquals(List.of(2 * TICK), fired);
+  }
+
+  @Test
+  void shouldNotRunCancelledTasks() {
+    // GIVEN
+    var now = new AtomicLong();
+    var fired = new ArrayList<String>();
+    var timingWheel = new TimingWheel(Duration.ofNanos(TICK), 4, now::get, Runnable::run, null);
+    var nearTimeout = timingWheel.schedule(Duration.ofNanos(2 * TICK), () -> fired.add("near"));
+    var farTimeout = timingWheel.schedule(Duration.ofNanos(50 * TICK), () -> fired.add("far"));
+    timingWheel.schedule(Duration.ofNanos(50 * TICK), () -> fired.add("kept"));
+
+    // WHEN
+    nearTimeout.cancel();
+    farTimeout.cancel();
+    for (int tick = 1; tick <= 60; tick++) {
+      now.set(tick * TICK);
+      timingWheel.advanceTo(now.get());
+    }
+
+    // THEN
+    assertEquals(List.of("kept"), fired);
+  }
+
+  @Test
+  void shouldRunOverdueTasksRightAway() {
+    // GIVEN
+    var now = new AtomicLong();
+    var fired = new ArrayList<String>();
+    var timingWheel = new TimingWheel(Duration.ofNanos(TICK), 4, now::get, Runnable::run, null);
+
+    // WHEN
+    timingWheel.schedule(Duration.ofSeconds(-1), () -> fired.add("overdue"));
+
+    // THEN
+    assertEquals(List.of("overdue"), fired);
+  }
+
+  @Test
+  void shouldDriveItselfInRealTime() throws InterruptedException {
+    // GIVEN
+    var latch = new CountDownLatch(1);
+    try (var timingWheel = new TimingWheel("timing-wheel-test", Duration.ofMillis(5), 8, Runnable::run)) {
+      var start = System.nanoTime();
+
+      // WHEN
+      timingWheel.schedule(Duration.ofMillis(100), latch::countDown);
+
+      // THEN
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+  }
+}